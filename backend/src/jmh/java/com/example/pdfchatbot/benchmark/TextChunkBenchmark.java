@@ -0,0 +1,116 @@
+package com.example.pdfchatbot.benchmark;
+
+import com.example.pdfchatbot.service.TextChunkService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single-pass {@link TextChunkService} with the regex chunker it replaced.
+ * The {@code megabytes} counter is input throughput in MB/s; run with {@code -prof gc}
+ * (the default in the jmh profile) for allocation rate and bytes allocated per operation.
+ *
+ * <pre>
+ * mvn -Pjmh compile exec:exec
+ * mvn -Pjmh compile exec:exec -Djmh.args="TextChunkBenchmark -p sizeKb=256 -prof gc"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class TextChunkBenchmark {
+
+    @Param({"64", "1024", "8192"})
+    private int sizeKb;
+
+    private String document;
+    private double documentMegabytes;
+    private TextChunkService service;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        document = sampleDocument(sizeKb * 1024, 42);
+        documentMegabytes = document.length() / (1024.0 * 1024.0);
+        service = new TextChunkService();
+        if (!service.chunkText(document).equals(LegacyTextChunker.chunkText(document))) {
+            throw new IllegalStateException("Single-pass and regex chunkers disagree on the sample document");
+        }
+    }
+
+    @Benchmark
+    public List<String> singlePass(Throughput throughput) {
+        throughput.megabytes += documentMegabytes;
+        return service.chunkText(document);
+    }
+
+    @Benchmark
+    public List<String> regex(Throughput throughput) {
+        throughput.megabytes += documentMegabytes;
+        return LegacyTextChunker.chunkText(document);
+    }
+
+    /**
+     * Text shaped like PDFBox output: lines wrapped at ~80 columns, blank lines between
+     * paragraphs, occasional CRLF endings and runs of spaces, and some paragraphs long
+     * enough to take the sentence-splitting path.
+     */
+    static String sampleDocument(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(length + 1024);
+        while (text.length() < length) {
+            int sentences = random.nextInt(10) < 2 ? 20 + random.nextInt(20) : 1 + random.nextInt(6);
+            String newline = random.nextInt(10) == 0 ? "\r\n" : "\n";
+            int column = 0;
+            for (int s = 0; s < sentences; s++) {
+                int words = 4 + random.nextInt(18);
+                for (int w = 0; w < words; w++) {
+                    int wordLength = 1 + random.nextInt(10);
+                    for (int c = 0; c < wordLength; c++) {
+                        char letter = (char) ('a' + random.nextInt(26));
+                        text.append(w == 0 && c == 0 ? Character.toUpperCase(letter) : letter);
+                    }
+                    column += wordLength + 1;
+                    if (w == words - 1) {
+                        text.append(".!?".charAt(random.nextInt(10) < 8 ? 0 : 1 + random.nextInt(2)));
+                    }
+                    if (column > 80) {
+                        text.append(newline);
+                        column = 0;
+                    } else {
+                        text.append(random.nextInt(20) == 0 ? "  " : " ");
+                    }
+                }
+            }
+            text.append(newline).append(random.nextInt(4) == 0 ? " \t" : "").append(newline);
+        }
+        return text.toString();
+    }
+}
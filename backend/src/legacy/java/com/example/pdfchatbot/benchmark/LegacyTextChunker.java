@@ -0,0 +1,146 @@
+package com.example.pdfchatbot.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex-based chunker that TextChunkService used before the single-pass rewrite, kept
+ * as the benchmark baseline and as the reference for identical output in
+ * {@code TextChunkServiceTest}.
+ */
+public final class LegacyTextChunker {
+    private static final int CHUNK_SIZE = 500;
+    private static final int OVERLAP = 100;
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+
+    private LegacyTextChunker() {
+    }
+
+    public static List<String> chunkText(String text) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.trim().isEmpty()) {
+            return chunks;
+        }
+        Chunker chunker = new Chunker(chunks::add);
+        chunker.accept(text);
+        chunker.finish();
+        return chunks;
+    }
+
+    static final class Chunker {
+        private final Consumer<String> sink;
+        private final StringBuilder pending = new StringBuilder();
+        private final StringBuilder currentChunk = new StringBuilder(CHUNK_SIZE);
+        private boolean pendingCarriageReturn;
+
+        private Chunker(Consumer<String> sink) {
+            this.sink = sink;
+        }
+
+        public void accept(String text) {
+            if (text == null || text.isEmpty()) {
+                return;
+            }
+            String piece = pendingCarriageReturn ? "\r" + text : text;
+            // A trailing \r may be the first half of a \r\n split across pieces.
+            pendingCarriageReturn = piece.endsWith("\r");
+            if (pendingCarriageReturn) {
+                piece = piece.substring(0, piece.length() - 1);
+            }
+            pending.append(piece.replaceAll("\\r\\n", "\n").replaceAll("\\r", "\n"));
+
+            Matcher matcher = PARAGRAPH_BREAK.matcher(pending);
+            int lastStart = -1;
+            int lastEnd = -1;
+            while (matcher.find()) {
+                lastStart = matcher.start();
+                lastEnd = matcher.end();
+            }
+            if (lastStart < 0) {
+                return;
+            }
+            for (String paragraph : PARAGRAPH_BREAK.split(pending.substring(0, lastStart))) {
+                addParagraph(paragraph);
+            }
+            pending.delete(0, lastEnd);
+        }
+
+        public void finish() {
+            if (pendingCarriageReturn) {
+                pending.append('\n');
+                pendingCarriageReturn = false;
+            }
+            for (String paragraph : PARAGRAPH_BREAK.split(pending)) {
+                addParagraph(paragraph);
+            }
+            pending.setLength(0);
+            
+            // Add remaining chunk
+            if (currentChunk.length() > 0) {
+                sink.accept(currentChunk.toString());
+                currentChunk.setLength(0);
+            }
+        }
+
+        private void addParagraph(String paragraph) {
+            paragraph = paragraph.trim().replaceAll("\\s+", " ");
+            if (paragraph.isEmpty()) return;
+            
+            // If paragraph itself is very large, split it by sentences
+            if (paragraph.length() > CHUNK_SIZE * 2) {
+                // First, save current chunk if it exists
+                if (currentChunk.length() > 0) {
+                    sink.accept(currentChunk.toString());
+                    currentChunk.setLength(0);
+                }
+                
+                // Split large paragraph by sentences
+                String[] sentences = paragraph.split("[.!?]+\\s+");
+                for (String sentence : sentences) {
+                    sentence = sentence.trim();
+                    if (sentence.isEmpty()) continue;
+                    
+                    if (currentChunk.length() + sentence.length() + 1 > CHUNK_SIZE && currentChunk.length() > 0) {
+                        sink.accept(currentChunk.toString());
+                        // Keep overlap from end of previous chunk
+                        if (currentChunk.length() > OVERLAP) {
+                            String overlap = currentChunk.substring(currentChunk.length() - OVERLAP);
+                            currentChunk.setLength(0);
+                            currentChunk.append(overlap).append(" ");
+                        } else {
+                            currentChunk.setLength(0);
+                        }
+                    }
+                    if (currentChunk.length() > 0) {
+                        currentChunk.append(" ");
+                    }
+                    currentChunk.append(sentence);
+                }
+            } else {
+                // Normal paragraph processing
+                if (currentChunk.length() > 0 && 
+                    currentChunk.length() + paragraph.length() + 2 > CHUNK_SIZE) {
+                    sink.accept(currentChunk.toString());
+                    
+                    // Create overlap
+                    if (currentChunk.length() > OVERLAP) {
+                        String overlap = currentChunk.substring(currentChunk.length() - OVERLAP);
+                        currentChunk.setLength(0);
+                        currentChunk.append(overlap).append("\n\n").append(paragraph);
+                    } else {
+                        currentChunk.setLength(0);
+                        currentChunk.append(paragraph);
+                    }
+                } else {
+                    if (currentChunk.length() > 0) {
+                        currentChunk.append("\n\n");
+                    }
+                    currentChunk.append(paragraph);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.pdfchatbot.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ExecutionConfig {
+
+    /**
+     * One virtual thread per task. Used by chat.execution.mode=virtual so that a request
+     * waiting on the LLM parks a virtual thread instead of pinning a platform thread.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
@@ -1,21 +1,43 @@
 package com.example.pdfchatbot.controller;
 
 import com.example.pdfchatbot.model.ChatAnswer;
+import com.example.pdfchatbot.model.PreparedAnswer;
+import com.example.pdfchatbot.model.ReloadJob;
+import com.example.pdfchatbot.model.RequestDeadline;
+import com.example.pdfchatbot.service.AnswerCache;
+import com.example.pdfchatbot.service.BpeTokenizer;
 import com.example.pdfchatbot.service.CatalogChatService;
+import com.example.pdfchatbot.service.CatalogProductIndex;
 import com.example.pdfchatbot.service.CatalogVectorClient;
 import com.example.pdfchatbot.service.ChatHistoryService;
+import com.example.pdfchatbot.service.EmbeddingService;
+import com.example.pdfchatbot.service.LlmService;
+import com.example.pdfchatbot.service.LocalIntentModel;
+import com.example.pdfchatbot.service.OutboundCircuitBreakers;
+import com.example.pdfchatbot.service.OutboundConcurrencyLimiter;
+import com.example.pdfchatbot.service.OutboundHttpClients;
+import com.example.pdfchatbot.service.PromptAssembler;
+import com.example.pdfchatbot.service.ReloadJobService;
 import com.example.pdfchatbot.service.SimilaritySearchService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.http.MediaType;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import jakarta.servlet.http.HttpServletResponse;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -24,6 +46,9 @@ import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
 
 @RestController
 @RequestMapping("/api")
@@ -31,6 +56,9 @@ import java.util.Map;
 public class ChatController {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
+    private static final String SESSION_HEADER = "X-Session-Id";
+    private static final String SESSION_COOKIE = "chat_session";
+    private static final Pattern SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{8,128}");
     
     @Autowired
     private SimilaritySearchService similaritySearchService;
@@ -44,63 +72,241 @@ public class ChatController {
     @Autowired
     private CatalogVectorClient catalogVectorClient;
 
+    @Autowired
+    private EmbeddingService embeddingService;
+
+    @Autowired
+    private AnswerCache answerCache;
+
+    @Autowired
+    private LlmService llmService;
+
+    @Autowired
+    private OutboundConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private LocalIntentModel localIntentModel;
+
+    @Autowired
+    private ReloadJobService reloadJobService;
+
+    @Autowired
+    private BpeTokenizer tokenizer;
+
+    @Autowired
+    private CatalogProductIndex catalogProductIndex;
+
+    @Autowired
+    private PromptAssembler promptAssembler;
+
+    @Autowired
+    private OutboundHttpClients httpClients;
+
+    @Autowired
+    private OutboundCircuitBreakers circuitBreakers;
+
+    @Autowired
+    @Qualifier("virtualThreadExecutor")
+    private ExecutorService virtualThreadExecutor;
+
     @Value("${catalog.enabled:false}")
     private boolean catalogEnabled;
 
     @Value("${catalog.images.dir:../catalog_images}")
     private String catalogImagesDir;
+
+    @Value("${chat.execution.mode:blocking}")
+    private String executionMode;
+
+    @Value("${chat.deadline.ms:30000}")
+    private long deadlineMs;
     
     @PostMapping("/chat")
-    public ResponseEntity<Map<String, Object>> chat(@RequestBody Map<String, Object> req) {
+    public Mono<ResponseEntity<Map<String, Object>>> chat(@RequestBody Map<String, Object> req,
+                                                          @RequestHeader(value = SESSION_HEADER, required = false) String sessionHeader,
+                                                          @CookieValue(value = SESSION_COOKIE, required = false) String sessionCookie,
+                                                          HttpServletResponse response) {
+        RequestDeadline deadline = RequestDeadline.after(deadlineMs);
         Object rawQuestion = req.get("question");
         String question = rawQuestion instanceof String ? ((String) rawQuestion).trim() : "";
         boolean allowSpeculation = true;
         
         if (question == null || question.trim().isEmpty()) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("answer", "Please provide a question."));
+            return Mono.just(ResponseEntity.badRequest()
+                    .body(messageBody("Please provide a question.")));
         }
         
-        try {
-            List<ChatHistoryService.ChatEntry> recentHistory = chatHistoryService.getRecentEntries(10);
-            ChatAnswer result;
-            if (catalogEnabled) {
-                result = catalogChatService.answerQuestion(question, recentHistory);
-            } else {
-                result = similaritySearchService.answerQuestion(question, allowSpeculation, recentHistory);
+        String sessionId = resolveSession(sessionHeader, sessionCookie, response);
+        return answer(sessionId, question, allowSpeculation, deadline)
+                .map(result -> ResponseEntity.ok(buildResponse(result)))
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError()
+                        .body(messageBody("Error processing question: " + e.getMessage()))));
+    }
+    
+    /**
+     * Server-Sent Events variant of {@link #chat}: emits {@code token} events with answer
+     * text as the LLM produces it, then one {@code done} event carrying the full answer,
+     * images and guardrail metadata.
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Object>>> chatStream(@RequestBody Map<String, Object> req,
+                                                                 @RequestHeader(value = SESSION_HEADER, required = false) String sessionHeader,
+                                                                 @CookieValue(value = SESSION_COOKIE, required = false) String sessionCookie,
+                                                                 HttpServletResponse response) {
+        RequestDeadline deadline = RequestDeadline.after(deadlineMs);
+        Object rawQuestion = req.get("question");
+        String question = rawQuestion instanceof String ? ((String) rawQuestion).trim() : "";
+        if (question.isEmpty()) {
+            return Flux.just(sseEvent("error", Map.of("answer", "Please provide a question.")));
+        }
+        String sessionId = resolveSession(sessionHeader, sessionCookie, response);
+
+        boolean reactive = isReactiveMode();
+        List<ChatHistoryService.ChatEntry> recentHistory = chatHistoryService.getRecentEntries(sessionId, 10);
+        Mono<AnswerCache.Lookup> lookup = reactive
+                ? answerCache.lookupReactive(question, recentHistory)
+                : Mono.fromCallable(() -> answerCache.lookup(question, recentHistory));
+
+        Flux<ServerSentEvent<Map<String, Object>>> direct = Mono.fromSupplier(() -> lookupAnswer(sessionId, question))
+                .flatMapMany(result -> {
+                    recordAnswer(sessionId, question, result, null);
+                    return Flux.just(
+                            sseEvent("token", Map.of("text", result.getAnswer())),
+                            sseEvent("done", buildDonePayload(result)));
+                });
+        Flux<ServerSentEvent<Map<String, Object>>> events = direct.switchIfEmpty(lookup.flatMapMany(cached -> {
+            if (cached.isHit()) {
+                ChatAnswer result = cached.getAnswer();
+                recordAnswer(sessionId, question, result, cached);
+                return Flux.just(
+                        sseEvent("token", Map.of("text", result.getAnswer())),
+                        sseEvent("done", buildDonePayload(result)));
             }
-            String answer = result.getAnswer();
-
-            logQuestionAnswer(question, answer);
-            chatHistoryService.addEntry(question, answer);
-            logGuardrailDecision(question, result);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("answer", answer);
-            if (result.getImagePaths() != null && !result.getImagePaths().isEmpty()) {
-                response.put("images", buildImageUrls(result.getImagePaths()));
+
+            Mono<PreparedAnswer> preparation;
+            if (reactive) {
+                preparation = catalogEnabled
+                        ? catalogChatService.prepareAnswerReactive(question, recentHistory, deadline)
+                        : similaritySearchService.prepareAnswerReactive(question, true, recentHistory, deadline);
+            } else {
+                preparation = Mono.fromCallable(() -> catalogEnabled
+                        ? catalogChatService.prepareAnswer(question, recentHistory, deadline)
+                        : similaritySearchService.prepareAnswer(question, true, recentHistory, deadline));
             }
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError()
-                    .body(Map.of("answer", "Error processing question: " + e.getMessage()));
+
+            return preparation.flatMapMany(prepared -> {
+                Flux<String> tokens = prepared.hasDirectAnswer()
+                        ? Flux.just(prepared.getDirectAnswer())
+                        : llmService.streamAnswer(
+                                question,
+                                prepared.getContextChunks(),
+                                recentHistory,
+                                prepared.getIntent(),
+                                prepared.isSupported(),
+                                prepared.isAllowSpeculation(),
+                                deadline);
+
+                StringBuilder fullAnswer = new StringBuilder();
+                return tokens
+                        .doOnNext(fullAnswer::append)
+                        .map(token -> sseEvent("token", Map.of("text", token)))
+                        .concatWith(Mono.fromCallable(() -> {
+                            ChatAnswer result = prepared.toChatAnswer(fullAnswer.toString().trim());
+                            recordAnswer(sessionId, question, result, cached);
+                            return sseEvent("done", buildDonePayload(result));
+                        }));
+            });
+        }));
+
+        // Blocking and virtual modes do their classification and retrieval off the servlet thread.
+        if (!reactive) {
+            events = events.subscribeOn(isVirtualMode() ? virtualScheduler() : Schedulers.boundedElastic());
         }
+        return events.onErrorResume(e -> Flux.just(sseEvent("error", Map.of("answer", "Error processing question: " + e.getMessage()))));
     }
-    
-    @PostMapping("/reload")
-    public ResponseEntity<Map<String, String>> reloadDocuments() {
-        try {
-            similaritySearchService.reloadDocuments();
-            int chunkCount = similaritySearchService.getChunkCount();
-            return ResponseEntity.ok(Map.of(
-                "status", "Documents reindexed successfully",
-                "chunks", String.valueOf(chunkCount)
-            ));
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.internalServerError()
-                    .body(Map.of("status", "Error reindexing documents: " + e.getMessage()));
+
+    /**
+     * Model-number lookups go first: they are answered from memory, so they should not pay
+     * for the answer cache's question embedding.
+     */
+    private Mono<ChatAnswer> answer(String sessionId, String question, boolean allowSpeculation, RequestDeadline deadline) {
+        return Mono.fromSupplier(() -> lookupAnswer(sessionId, question))
+                .doOnNext(result -> recordAnswer(sessionId, question, result, null))
+                .switchIfEmpty(Mono.defer(() -> answerWithCache(sessionId, question, allowSpeculation, deadline)));
+    }
+
+    private ChatAnswer lookupAnswer(String sessionId, String question) {
+        if (!catalogEnabled) {
+            return null;
         }
+        PreparedAnswer prepared = catalogChatService.lookupAnswer(question,
+                chatHistoryService.getRecentEntries(sessionId, 10));
+        return prepared == null ? null : prepared.toChatAnswer(prepared.getDirectAnswer());
+    }
+
+    private Mono<ChatAnswer> answerWithCache(String sessionId, String question, boolean allowSpeculation,
+                                             RequestDeadline deadline) {
+        if (isReactiveMode()) {
+            List<ChatHistoryService.ChatEntry> recentHistory = chatHistoryService.getRecentEntries(sessionId, 10);
+            return answerCache.lookupReactive(question, recentHistory).flatMap(cached -> {
+                Mono<ChatAnswer> result;
+                if (cached.isHit()) {
+                    result = Mono.just(cached.getAnswer());
+                } else {
+                    result = catalogEnabled
+                            ? catalogChatService.answerQuestionReactive(question, recentHistory, deadline)
+                            : similaritySearchService.answerQuestionReactive(question, allowSpeculation, recentHistory, deadline);
+                }
+                return result.doOnNext(answer -> recordAnswer(sessionId, question, answer, cached));
+            });
+        }
+
+        Mono<ChatAnswer> blocking = Mono.fromCallable(() -> {
+            List<ChatHistoryService.ChatEntry> recentHistory = chatHistoryService.getRecentEntries(sessionId, 10);
+            AnswerCache.Lookup cached = answerCache.lookup(question, recentHistory);
+            ChatAnswer result;
+            if (cached.isHit()) {
+                result = cached.getAnswer();
+            } else {
+                if (catalogEnabled) {
+                    result = catalogChatService.answerQuestion(question, recentHistory, deadline);
+                } else {
+                    result = similaritySearchService.answerQuestion(question, allowSpeculation, recentHistory, deadline);
+                }
+            }
+            recordAnswer(sessionId, question, result, cached);
+            return result;
+        });
+        return isVirtualMode() ? blocking.subscribeOn(virtualScheduler()) : blocking;
+    }
+
+    private boolean isReactiveMode() {
+        return "reactive".equalsIgnoreCase(executionMode == null ? "" : executionMode.trim());
+    }
+
+    private boolean isVirtualMode() {
+        return "virtual".equalsIgnoreCase(executionMode == null ? "" : executionMode.trim());
+    }
+
+    private Scheduler virtualScheduler() {
+        return Schedulers.fromExecutorService(virtualThreadExecutor, "virtual");
+    }
+
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Object>> reloadDocuments() {
+        ReloadJob job = reloadJobService.submit();
+        return ResponseEntity.accepted().body(Map.of(
+            "jobId", job.getId(),
+            "status", job.getStatus().name(),
+            "statusUrl", "/api/reload/" + job.getId()
+        ));
+    }
+
+    @GetMapping("/reload/{id}")
+    public ResponseEntity<ReloadJob> reloadStatus(@PathVariable("id") String id) {
+        return reloadJobService.get(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
     
     @GetMapping("/status")
@@ -112,6 +318,21 @@ public class ChatController {
         status.put("lastIndexError", similaritySearchService.getLastIndexError());
         status.put("lastIndexedAt", similaritySearchService.getLastIndexedAt());
         status.put("catalogEnabled", catalogEnabled);
+        status.put("embeddingCache", embeddingService.getCacheStats());
+        status.put("embeddingBatching", embeddingService.getBatchingStats());
+        status.put("answerCache", answerCache.getStats());
+        status.put("outbound", concurrencyLimiter.getStats());
+        status.put("httpPools", httpClients.getStats());
+        status.put("circuits", circuitBreakers.getStats());
+        status.put("intentModel", localIntentModel.getStats());
+        status.put("tokenizer", tokenizer.getStats());
+        status.put("lexicalIndex", similaritySearchService.getLexicalStats());
+        status.put("chatHistory", chatHistoryService.getStats());
+        status.put("prompt", promptAssembler.getStats());
+        status.put("llm", llmService.getStats());
+        status.put("coalescing", Map.of(
+                "chat", catalogEnabled ? catalogChatService.getCoalescingStats() : similaritySearchService.getCoalescingStats(),
+                "embedding", embeddingService.getCoalescingStats()));
 
         if (catalogEnabled) {
             Map<String, Object> catalogStatus = catalogVectorClient.status();
@@ -120,6 +341,7 @@ public class ChatController {
             if (catalogStatus.containsKey("products")) {
                 status.put("catalogProducts", catalogStatus.get("products"));
             }
+            status.put("catalogLookup", catalogProductIndex.getStats());
         } else {
             status.put("ready", chunksLoaded > 0);
         }
@@ -156,6 +378,68 @@ public class ChatController {
     }
 
 
+    /**
+     * Chat history is kept per session: the {@code X-Session-Id} header if the client sends
+     * one, otherwise the {@code chat_session} cookie, which is issued on first use.
+     */
+    private String resolveSession(String header, String cookie, HttpServletResponse response) {
+        if (header != null && SESSION_ID.matcher(header).matches()) {
+            return header;
+        }
+        if (cookie != null && SESSION_ID.matcher(cookie).matches()) {
+            return cookie;
+        }
+        String sessionId = UUID.randomUUID().toString();
+        response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(SESSION_COOKIE, sessionId)
+                .path("/api")
+                .httpOnly(true)
+                .sameSite("Lax")
+                .build()
+                .toString());
+        return sessionId;
+    }
+
+    private void recordAnswer(String sessionId, String question, ChatAnswer result, AnswerCache.Lookup cached) {
+        logQuestionAnswer(question, result.getAnswer());
+        chatHistoryService.addEntry(sessionId, question, result.getAnswer());
+        logGuardrailDecision(question, result);
+        // Lookup answers (no cache lookup) are cheaper to recompute than to cache.
+        if (cached != null && !cached.isHit() && result.isSupported()) {
+            answerCache.store(cached, result);
+        }
+    }
+
+    private Map<String, Object> buildResponse(ChatAnswer result) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("answer", result.getAnswer());
+        if (result.getImagePaths() != null && !result.getImagePaths().isEmpty()) {
+            response.put("images", buildImageUrls(result.getImagePaths()));
+        }
+        return response;
+    }
+
+    private Map<String, Object> buildDonePayload(ChatAnswer result) {
+        Map<String, Object> payload = buildResponse(result);
+        payload.put("intent", String.valueOf(result.getIntent()));
+        payload.put("supported", result.isSupported());
+        payload.put("speculative", result.isSpeculativeAnswer());
+        payload.put("retrieval", String.valueOf(result.getRetrievalMethod()));
+        return payload;
+    }
+
+    private Map<String, Object> messageBody(String answer) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("answer", answer);
+        return body;
+    }
+
+    private ServerSentEvent<Map<String, Object>> sseEvent(String name, Map<String, Object> data) {
+        return ServerSentEvent.<Map<String, Object>>builder()
+                .event(name)
+                .data(data)
+                .build();
+    }
+
     private void logQuestionAnswer(String question, String answer) {
         String safeQuestion = truncate(question, 500);
         String safeAnswer = truncate(answer, 1000);
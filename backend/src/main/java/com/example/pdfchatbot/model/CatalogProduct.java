@@ -87,8 +87,9 @@ public class CatalogProduct {
         return notes;
     }
 
-    public void setNotes(String notes) {
-        this.notes = notes;
+    @JsonSetter("notes")
+    public void setNotes(Object notes) {
+        this.notes = normalizeValue(notes);
     }
 
     public String getSourcePdf() {
@@ -132,6 +133,15 @@ public class CatalogProduct {
                     .reduce((a, b) -> a + ", " + b)
                     .orElse(null);
         }
+        if (value instanceof java.util.Map) {
+            // e.g. {"repeat": "75mm x 50mm", "finished_width": "110 inches"}
+            java.util.Map<?, ?> map = (java.util.Map<?, ?>) value;
+            return map.entrySet().stream()
+                    .filter(entry -> entry.getValue() != null && !entry.getValue().toString().isBlank())
+                    .map(entry -> entry.getKey().toString().replace('_', ' ') + ": " + entry.getValue().toString().trim())
+                    .reduce((a, b) -> a + ", " + b)
+                    .orElse(null);
+        }
         String text = value.toString().trim();
         return text.isEmpty() ? null : text;
     }
@@ -0,0 +1,92 @@
+package com.example.pdfchatbot.model;
+
+import com.example.pdfchatbot.service.ChatHistoryService;
+
+import java.util.List;
+
+/**
+ * Everything decided before generation: intent, retrieved context and guardrail flags.
+ * When {@code directAnswer} is set the answer is already known and no LLM call is needed.
+ */
+public class PreparedAnswer {
+    private final String question;
+    private final List<String> contextChunks;
+    private final List<ChatHistoryService.ChatEntry> history;
+    private final QueryIntent intent;
+    private final boolean supported;
+    private final boolean allowSpeculation;
+    private final boolean speculativeAnswer;
+    private final Object retrievalMethod;
+    private final List<String> imagePaths;
+    private final String directAnswer;
+
+    public PreparedAnswer(String question,
+                          List<String> contextChunks,
+                          List<ChatHistoryService.ChatEntry> history,
+                          QueryIntent intent,
+                          boolean supported,
+                          boolean allowSpeculation,
+                          boolean speculativeAnswer,
+                          Object retrievalMethod,
+                          List<String> imagePaths,
+                          String directAnswer) {
+        this.question = question;
+        this.contextChunks = contextChunks == null ? List.of() : contextChunks;
+        this.history = history;
+        this.intent = intent;
+        this.supported = supported;
+        this.allowSpeculation = allowSpeculation;
+        this.speculativeAnswer = speculativeAnswer;
+        this.retrievalMethod = retrievalMethod;
+        this.imagePaths = imagePaths == null ? List.of() : imagePaths;
+        this.directAnswer = directAnswer;
+    }
+
+    public String getQuestion() {
+        return question;
+    }
+
+    public List<String> getContextChunks() {
+        return contextChunks;
+    }
+
+    public List<ChatHistoryService.ChatEntry> getHistory() {
+        return history;
+    }
+
+    public QueryIntent getIntent() {
+        return intent;
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    public boolean isAllowSpeculation() {
+        return allowSpeculation;
+    }
+
+    public boolean isSpeculativeAnswer() {
+        return speculativeAnswer;
+    }
+
+    public Object getRetrievalMethod() {
+        return retrievalMethod;
+    }
+
+    public List<String> getImagePaths() {
+        return imagePaths;
+    }
+
+    public String getDirectAnswer() {
+        return directAnswer;
+    }
+
+    public boolean hasDirectAnswer() {
+        return directAnswer != null;
+    }
+
+    public ChatAnswer toChatAnswer(String answer) {
+        return new ChatAnswer(answer, intent, supported, speculativeAnswer, retrievalMethod, imagePaths);
+    }
+}
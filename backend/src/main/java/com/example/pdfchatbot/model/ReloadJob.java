@@ -0,0 +1,113 @@
+package com.example.pdfchatbot.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A background reindex run and its progress. Counters are updated by the ingest stages
+ * while the job runs and read by {@code GET /api/reload/{id}}.
+ */
+public class ReloadJob {
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    private final String id;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile Status status = Status.QUEUED;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile int chunksIndexed;
+    private final AtomicInteger filesTotal = new AtomicInteger();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicInteger chunksProduced = new AtomicInteger();
+    private final AtomicInteger chunksEmbedded = new AtomicInteger();
+
+    public ReloadJob(String id) {
+        this.id = id;
+    }
+
+    public void markRunning() {
+        startedAt = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    public void markSucceeded(int chunks) {
+        chunksIndexed = chunks;
+        finishedAt = System.currentTimeMillis();
+        status = Status.SUCCEEDED;
+    }
+
+    public void markFailed(String message) {
+        error = message;
+        finishedAt = System.currentTimeMillis();
+        status = Status.FAILED;
+    }
+
+    public void addFilesTotal(int count) {
+        filesTotal.addAndGet(count);
+    }
+
+    public void fileDone() {
+        filesDone.incrementAndGet();
+    }
+
+    public void addChunksProduced(int count) {
+        chunksProduced.addAndGet(count);
+    }
+
+    public void addChunksEmbedded(int count) {
+        chunksEmbedded.addAndGet(count);
+    }
+
+    public boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public int getChunksIndexed() {
+        return chunksIndexed;
+    }
+
+    public int getFilesTotal() {
+        return filesTotal.get();
+    }
+
+    public int getFilesDone() {
+        return filesDone.get();
+    }
+
+    public int getChunksProduced() {
+        return chunksProduced.get();
+    }
+
+    public int getChunksEmbedded() {
+        return chunksEmbedded.get();
+    }
+}
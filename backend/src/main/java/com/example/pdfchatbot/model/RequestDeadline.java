@@ -0,0 +1,53 @@
+package com.example.pdfchatbot.model;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget for one chat request, started when the request arrives. It is handed to each
+ * stage - intent, retrieval, generation - so later stages only get what the earlier ones
+ * left. {@link #none()} never expires.
+ */
+public final class RequestDeadline {
+    private static final RequestDeadline NONE = new RequestDeadline(0, false);
+
+    private final long deadlineNanos;
+    private final boolean bounded;
+
+    private RequestDeadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * A deadline {@code millis} from now; zero or less means no deadline.
+     */
+    public static RequestDeadline after(long millis) {
+        if (millis <= 0) {
+            return NONE;
+        }
+        return new RequestDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis), true);
+    }
+
+    public static RequestDeadline none() {
+        return NONE;
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    public long remainingMillis() {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * {@code timeoutMs} shortened to the remaining budget, and at least 1ms so an expired
+     * deadline still yields a usable (immediately firing) timeout.
+     */
+    public long cap(long timeoutMs) {
+        return Math.max(1, Math.min(timeoutMs, remainingMillis()));
+    }
+}
@@ -6,11 +6,21 @@ public class RetrievalResult {
     private final List<String> documents;
     private final List<Double> scores;
     private final RetrievalMethod method;
+    private final boolean grounded;
 
     public RetrievalResult(List<String> documents, List<Double> scores, RetrievalMethod method) {
+        this(documents, scores, method, false);
+    }
+
+    /**
+     * @param grounded for fused results, whose scores are ranks rather than similarities:
+     *                 whether one of the fused lists cleared its own confidence threshold
+     */
+    public RetrievalResult(List<String> documents, List<Double> scores, RetrievalMethod method, boolean grounded) {
         this.documents = documents;
         this.scores = scores;
         this.method = method;
+        this.grounded = grounded;
     }
 
     public List<String> getDocuments() {
@@ -25,8 +35,15 @@ public class RetrievalResult {
         return method;
     }
 
+    public boolean isGrounded() {
+        return grounded;
+    }
+
     public enum RetrievalMethod {
         FAISS,
+        HNSW,
+        BM25,
+        HYBRID,
         NONE
     }
 }
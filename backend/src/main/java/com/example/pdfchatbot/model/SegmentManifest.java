@@ -0,0 +1,168 @@
+package com.example.pdfchatbot.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SegmentManifest {
+    public static final int FORMAT_VERSION = 1;
+
+    private int version = FORMAT_VERSION;
+    private String model;
+    private String chunking;
+    private int dimension;
+    private int chunkCount;
+    private long createdAt;
+    private List<DocumentEntry> documents = new ArrayList<>();
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getChunking() {
+        return chunking;
+    }
+
+    public void setChunking(String chunking) {
+        this.chunking = chunking;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public void setDimension(int dimension) {
+        this.dimension = dimension;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public void setChunkCount(int chunkCount) {
+        this.chunkCount = chunkCount;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public List<DocumentEntry> getDocuments() {
+        return documents;
+    }
+
+    public void setDocuments(List<DocumentEntry> documents) {
+        this.documents = documents == null ? new ArrayList<>() : documents;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class DocumentEntry {
+        private String path;
+        private long size;
+        private long lastModified;
+        private String sha256;
+        private int firstChunk;
+        private int chunkCount;
+
+        public DocumentEntry() {
+        }
+
+        public DocumentEntry(String path, long size, long lastModified, String sha256, int firstChunk, int chunkCount) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+            this.firstChunk = firstChunk;
+            this.chunkCount = chunkCount;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public void setSha256(String sha256) {
+            this.sha256 = sha256;
+        }
+
+        public int getFirstChunk() {
+            return firstChunk;
+        }
+
+        public void setFirstChunk(int firstChunk) {
+            this.firstChunk = firstChunk;
+        }
+
+        public int getChunkCount() {
+            return chunkCount;
+        }
+
+        public void setChunkCount(int chunkCount) {
+            this.chunkCount = chunkCount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DocumentEntry)) {
+                return false;
+            }
+            DocumentEntry other = (DocumentEntry) o;
+            return size == other.size
+                    && lastModified == other.lastModified
+                    && firstChunk == other.firstChunk
+                    && chunkCount == other.chunkCount
+                    && Objects.equals(path, other.path)
+                    && Objects.equals(sha256, other.sha256);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, lastModified, sha256, firstChunk, chunkCount);
+        }
+    }
+}
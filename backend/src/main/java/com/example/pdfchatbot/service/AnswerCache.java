@@ -0,0 +1,318 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.ChatAnswer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answer cache in front of the chat pipeline. Tier one matches the normalized question
+ * exactly; tier two matches near-duplicates whose query embedding has cosine similarity
+ * of at least {@code chat.cache.similarityThreshold} with a cached question and which name
+ * the same model numbers and figures. Both tiers only match answers given after the same
+ * conversation history, since follow-up questions are answered from it. Entries
+ * expire after a TTL, are evicted LRU beyond {@code chat.cache.maxEntries}, and are all
+ * dropped when the index is reloaded. Tier two scans an immutable {@link Snapshot} of the
+ * cached embeddings, packed into one array and republished whenever the entries change, so
+ * semantic lookups take no lock and do not block stores or each other.
+ */
+@Service
+public class AnswerCache {
+    private static final Logger logger = LoggerFactory.getLogger(AnswerCache.class);
+
+    @Autowired
+    private EmbeddingService embeddingService;
+
+    @Autowired
+    private QueryIntentClassifier intentClassifier;
+
+    @Value("${chat.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.cache.maxEntries:500}")
+    private int maxEntries;
+
+    @Value("${chat.cache.ttlSeconds:3600}")
+    private long ttlSeconds;
+
+    @Value("${chat.cache.semantic.enabled:true}")
+    private boolean semanticEnabled;
+
+    @Value("${chat.cache.similarityThreshold:0.95}")
+    private double similarityThreshold;
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong semanticHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long generation;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    private final Map<List<Object>, Entry> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Entry> eldest) {
+            return size() > Math.max(1, maxEntries);
+        }
+    };
+
+    /**
+     * Looks up a question asked after {@code history}, which must be the history the answer
+     * is generated from. A miss carries the normalized key and embedding so that
+     * {@link #store} does not have to recompute them.
+     */
+    public Lookup lookup(String question, List<ChatHistoryService.ChatEntry> history) {
+        return lookupReactive(question, history).block();
+    }
+
+    public Mono<Lookup> lookupReactive(String question, List<ChatHistoryService.ChatEntry> history) {
+        if (!enabled || question == null || question.isBlank()) {
+            return Mono.just(Lookup.BYPASS);
+        }
+        // Answers to questions about the conversation itself depend on who is asking.
+        if (intentClassifier.isConversationReference(question)) {
+            return Mono.just(Lookup.BYPASS);
+        }
+
+        String key = normalize(question);
+        List<String> conversation = ChatHistoryService.contentKey(history);
+        List<Object> entryKey = List.of(key, conversation);
+        long lookupGeneration;
+        synchronized (entries) {
+            lookupGeneration = generation;
+            Entry exact = entries.get(entryKey);
+            if (exact != null && !isExpired(exact, System.currentTimeMillis())) {
+                exactHits.incrementAndGet();
+                logger.info("[chat_cache] hit=exact question={}", key);
+                return Mono.just(new Lookup(key, conversation, null, lookupGeneration, exact.answer));
+            }
+            if (exact != null) {
+                entries.remove(entryKey);
+                publishSnapshot();
+            }
+        }
+
+        if (!semanticEnabled) {
+            misses.incrementAndGet();
+            return Mono.just(new Lookup(key, conversation, null, lookupGeneration, null));
+        }
+        return embeddingService.embedVectorsReactive(List.of(question), 1)
+                .map(vectors -> vectors.isEmpty() ? new float[0] : HnswIndex.normalize(vectors.get(0)))
+                .onErrorResume(e -> {
+                    logger.debug("Semantic answer cache skipped: {}", e.getMessage());
+                    return Mono.just(new float[0]);
+                })
+                .map(embedding -> semanticLookup(key, conversation,
+                        embedding.length == 0 ? null : embedding, lookupGeneration));
+    }
+
+    private Lookup semanticLookup(String key, List<String> conversation, float[] embedding, long lookupGeneration) {
+        Snapshot current = snapshot;
+        if (embedding != null && current.generation == lookupGeneration && embedding.length == current.dimension) {
+            long now = System.currentTimeMillis();
+            List<String> identifiers = identifiers(key);
+            Entry best = null;
+            double bestScore = similarityThreshold;
+            for (int i = 0; i < current.entries.length; i++) {
+                Entry entry = current.entries[i];
+                // Expired entries are skipped here and dropped on the next store.
+                if (isExpired(entry, now)) {
+                    continue;
+                }
+                // "price of MA6-001" and "price of MA6-002" embed almost identically.
+                if (!entry.identifiers.equals(identifiers) || !entry.conversation.equals(conversation)) {
+                    continue;
+                }
+                double score = dot(current.matrix, i * current.dimension, embedding);
+                if (score >= bestScore) {
+                    bestScore = score;
+                    best = current.entries[i];
+                }
+            }
+            if (best != null && snapshot.generation == lookupGeneration) {
+                semanticHits.incrementAndGet();
+                logger.info("[chat_cache] hit=semantic question={} matched={} similarity={}",
+                        key, best.key, String.format(Locale.ROOT, "%.4f", bestScore));
+                return new Lookup(key, conversation, embedding, lookupGeneration, best.answer);
+            }
+        }
+
+        misses.incrementAndGet();
+        return new Lookup(key, conversation, embedding, lookupGeneration, null);
+    }
+
+    /**
+     * Stores an answer for a missed lookup, unless the index was reloaded in the meantime.
+     */
+    public void store(Lookup lookup, ChatAnswer answer) {
+        if (!enabled || lookup == null || lookup.key == null || answer == null) {
+            return;
+        }
+        ChatAnswer copy = new ChatAnswer(
+                answer.getAnswer(),
+                answer.getIntent(),
+                answer.isSupported(),
+                answer.isSpeculativeAnswer(),
+                answer.getRetrievalMethod(),
+                List.copyOf(answer.getImagePaths())
+        );
+        synchronized (entries) {
+            if (generation != lookup.generation) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(entry -> isExpired(entry, now));
+            entries.put(List.of(lookup.key, lookup.conversation),
+                    new Entry(lookup.key, lookup.conversation, lookup.embedding, copy, now));
+            publishSnapshot();
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+            publishSnapshot();
+        }
+        logger.info("[chat_cache] invalidated");
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("exactHits", exactHits.get());
+        stats.put("semanticHits", semanticHits.get());
+        stats.put("misses", misses.get());
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+        }
+        return stats;
+    }
+
+    static String normalize(String question) {
+        return question.toLowerCase(Locale.ROOT)
+                .replaceAll("[^\\p{L}\\p{N}-]+", " ")
+                .trim();
+    }
+
+    /**
+     * Tokens of a normalized question that contain a digit: model numbers, sizes, quantities.
+     */
+    static List<String> identifiers(String normalized) {
+        return Arrays.stream(normalized.split(" "))
+                .filter(token -> token.chars().anyMatch(Character::isDigit))
+                .distinct()
+                .sorted()
+                .toList();
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return ttlSeconds > 0 && now - entry.createdAt > ttlSeconds * 1000;
+    }
+
+    /**
+     * Rebuilds the semantic tier's snapshot from the current entries. Called with the
+     * {@code entries} lock held, so snapshots are published in mutation order.
+     */
+    private void publishSnapshot() {
+        List<Entry> embedded = new ArrayList<>(entries.size());
+        int dimension = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.embedding == null || entry.embedding.length == 0) {
+                continue;
+            }
+            if (dimension == 0) {
+                dimension = entry.embedding.length;
+            }
+            if (entry.embedding.length == dimension) {
+                embedded.add(entry);
+            }
+        }
+        float[] matrix = new float[embedded.size() * dimension];
+        for (int i = 0; i < embedded.size(); i++) {
+            System.arraycopy(embedded.get(i).embedding, 0, matrix, i * dimension, dimension);
+        }
+        snapshot = new Snapshot(generation, embedded.toArray(new Entry[0]), matrix, dimension);
+    }
+
+    private static double dot(float[] matrix, int offset, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < b.length; i++) {
+            sum += matrix[offset + i] * b[i];
+        }
+        return sum;
+    }
+
+    public static final class Lookup {
+        private static final Lookup BYPASS = new Lookup(null, null, null, -1, null);
+
+        private final String key;
+        private final List<String> conversation;
+        private final float[] embedding;
+        private final long generation;
+        private final ChatAnswer answer;
+
+        private Lookup(String key, List<String> conversation, float[] embedding, long generation, ChatAnswer answer) {
+            this.key = key;
+            this.conversation = conversation;
+            this.embedding = embedding;
+            this.generation = generation;
+            this.answer = answer;
+        }
+
+        public boolean isHit() {
+            return answer != null;
+        }
+
+        public ChatAnswer getAnswer() {
+            return answer;
+        }
+    }
+
+    /**
+     * Immutable view of the entries that have an embedding, with the embeddings laid out
+     * row by row in {@code matrix}.
+     */
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(0, new Entry[0], new float[0], 0);
+
+        private final long generation;
+        private final Entry[] entries;
+        private final float[] matrix;
+        private final int dimension;
+
+        private Snapshot(long generation, Entry[] entries, float[] matrix, int dimension) {
+            this.generation = generation;
+            this.entries = entries;
+            this.matrix = matrix;
+            this.dimension = dimension;
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final List<String> conversation;
+        private final List<String> identifiers;
+        private final float[] embedding;
+        private final ChatAnswer answer;
+        private final long createdAt;
+
+        private Entry(String key, List<String> conversation, float[] embedding, ChatAnswer answer, long createdAt) {
+            this.key = key;
+            this.conversation = conversation;
+            this.identifiers = identifiers(key);
+            this.embedding = embedding;
+            this.answer = answer;
+            this.createdAt = createdAt;
+        }
+    }
+}
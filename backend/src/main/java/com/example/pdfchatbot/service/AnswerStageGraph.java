@@ -0,0 +1,135 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.QueryIntent;
+import com.example.pdfchatbot.model.RequestDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the independent pre-generation stages of a chat request - intent classification,
+ * conversation-reference detection and retrieval - concurrently, and joins them before
+ * prompt construction. Each stage has its own timeout and a fallback: classification falls
+ * back to the regex heuristics, retrieval to the caller's empty result, so one slow
+ * dependency degrades the answer instead of stalling it. Stage timeouts are further cut to
+ * whatever is left of the request's {@link RequestDeadline}.
+ */
+@Service
+public class AnswerStageGraph {
+    private static final Logger logger = LoggerFactory.getLogger(AnswerStageGraph.class);
+
+    @Autowired
+    private QueryIntentClassifier intentClassifier;
+
+    @Autowired
+    @Qualifier("virtualThreadExecutor")
+    private ExecutorService executor;
+
+    @Value("${chat.stage.classify.timeoutMs:3000}")
+    private long classifyTimeoutMs;
+
+    @Value("${chat.stage.retrieval.timeoutMs:5000}")
+    private long retrievalTimeoutMs;
+
+    @Value("${chat.stage.conversationRef.timeoutMs:200}")
+    private long conversationRefTimeoutMs;
+
+    /**
+     * Blocking join: the stages run on virtual threads and the caller waits for all three.
+     * A stage that times out is interrupted, which also disposes a WebClient call it is
+     * blocked on, so abandoned work does not keep running or holding connections.
+     */
+    public <R> Result<R> run(String question, RequestDeadline deadline, Supplier<R> retrieval, R retrievalFallback) {
+        long start = System.nanoTime();
+        CompletableFuture<QueryIntent> intent = stage("classify",
+                () -> intentClassifier.classify(question),
+                () -> intentClassifier.classifyWithPatterns(question),
+                deadline.cap(classifyTimeoutMs));
+        CompletableFuture<Boolean> conversationRef = stage("conversationRef",
+                () -> intentClassifier.isConversationReference(question),
+                () -> false,
+                deadline.cap(conversationRefTimeoutMs));
+        CompletableFuture<R> retrieved = stage("retrieval", retrieval, () -> retrievalFallback,
+                deadline.cap(retrievalTimeoutMs));
+
+        CompletableFuture.allOf(intent, conversationRef, retrieved).join();
+        logger.debug("[stages] joined in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return new Result<>(intent.join(), conversationRef.join(), retrieved.join());
+    }
+
+    /**
+     * Non-blocking join with the same timeouts and fallbacks as {@link #run}.
+     */
+    public <R> Mono<Result<R>> runReactive(String question, RequestDeadline deadline, Mono<R> retrieval, R retrievalFallback) {
+        long classifyTimeout = deadline.cap(classifyTimeoutMs);
+        long retrievalTimeout = deadline.cap(retrievalTimeoutMs);
+        Mono<QueryIntent> intent = intentClassifier.classifyReactive(question)
+                .timeout(Duration.ofMillis(classifyTimeout), Mono.fromSupplier(() -> {
+                    logger.warn("[stages] classify timed out after {}ms; using heuristics", classifyTimeout);
+                    return intentClassifier.classifyWithPatterns(question);
+                }));
+        Mono<Boolean> conversationRef = Mono.fromSupplier(() -> intentClassifier.isConversationReference(question));
+        Mono<R> retrieved = retrieval
+                .timeout(Duration.ofMillis(retrievalTimeout), Mono.fromSupplier(() -> {
+                    logger.warn("[stages] retrieval timed out after {}ms", retrievalTimeout);
+                    return retrievalFallback;
+                }))
+                .onErrorReturn(retrievalFallback);
+
+        return Mono.zip(intent, conversationRef, retrieved)
+                .map(tuple -> new Result<>(tuple.getT1(), tuple.getT2(), tuple.getT3()));
+    }
+
+    private <T> CompletableFuture<T> stage(String name, Supplier<T> work, Supplier<T> fallback, long timeoutMs) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(work.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result
+                .orTimeout(Math.max(1, timeoutMs), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    task.cancel(true);
+                    logger.warn("[stages] {} failed or timed out after {}ms: {}", name, timeoutMs, e.toString());
+                    return fallback.get();
+                });
+    }
+
+    public static final class Result<R> {
+        private final QueryIntent intent;
+        private final boolean conversationRef;
+        private final R retrieval;
+
+        private Result(QueryIntent intent, boolean conversationRef, R retrieval) {
+            this.intent = intent;
+            this.conversationRef = conversationRef;
+            this.retrieval = retrieval;
+        }
+
+        public QueryIntent getIntent() {
+            return intent;
+        }
+
+        public boolean isConversationRef() {
+            return conversationRef;
+        }
+
+        public R getRetrieval() {
+            return retrieval;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.pdfchatbot.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Inverted index over chunks scored with Okapi BM25. Each term maps to a postings list of
+ * (document gap, term frequency) pairs, varint-encoded into one shared byte array, so the
+ * index is a few bytes per posting. Built once by a {@link Builder}, then shared read-only.
+ *
+ * <p>Terms are lowercased runs of letters and digits. Runs joined by {@code - _ . /} are also
+ * indexed as one term, so a model number like {@code MA6-001} matches exactly as well as by
+ * its parts.
+ */
+public class Bm25Index {
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "how", "in", "is", "it",
+            "of", "on", "or", "that", "the", "this", "to", "was", "what", "when", "where", "which",
+            "who", "why", "with");
+    // Terms in nearly every document (idf below this) barely move scores but cost a full postings
+    // scan; they are skipped when another query term is more selective.
+    private static final float MIN_IDF = 0.05f;
+
+    private final List<String> documents;
+    private final Map<String, Integer> termIds;
+    private final int[] documentFrequencies;
+    private final int[] postingOffsets;
+    private final byte[] postings;
+    private final int[] documentLengths;
+    private final float averageLength;
+    private final float k1;
+    private final float b;
+
+    private Bm25Index(List<String> documents, Map<String, Integer> termIds, int[] documentFrequencies,
+                      int[] postingOffsets, byte[] postings, int[] documentLengths, float k1, float b) {
+        this.documents = documents;
+        this.termIds = termIds;
+        this.documentFrequencies = documentFrequencies;
+        this.postingOffsets = postingOffsets;
+        this.postings = postings;
+        this.documentLengths = documentLengths;
+        long total = 0;
+        for (int length : documentLengths) {
+            total += length;
+        }
+        this.averageLength = documentLengths.length == 0 ? 0f : Math.max(1f, (float) total / documentLengths.length);
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    public static Builder builder(float k1, float b) {
+        return new Builder(k1, b);
+    }
+
+    public int size() {
+        return documentLengths.length;
+    }
+
+    public int termCount() {
+        return documentFrequencies.length;
+    }
+
+    public int postingsBytes() {
+        return postings.length;
+    }
+
+    public String document(int id) {
+        return documents.get(id);
+    }
+
+    /**
+     * Top {@code k} documents by BM25, best first. Documents matching no query term are not returned.
+     */
+    public List<Hit> search(String query, int k) {
+        int n = size();
+        if (n == 0 || k <= 0 || query == null) {
+            return List.of();
+        }
+        List<String> terms = new ArrayList<>();
+        analyze(query, term -> {
+            if (!terms.contains(term)) {
+                terms.add(term);
+            }
+        });
+
+        int[] ids = new int[terms.size()];
+        float[] idfs = new float[terms.size()];
+        float maxIdf = 0f;
+        for (int t = 0; t < ids.length; t++) {
+            Integer id = termIds.get(terms.get(t));
+            ids[t] = id == null ? -1 : id;
+            if (id != null) {
+                int df = documentFrequencies[id];
+                idfs[t] = (float) Math.log(1 + (n - df + 0.5) / (df + 0.5));
+                maxIdf = Math.max(maxIdf, idfs[t]);
+            }
+        }
+
+        float[] scores = new float[n];
+        int[] matched = new int[Math.min(n, 64)];
+        int matchedCount = 0;
+        for (int t = 0; t < ids.length; t++) {
+            int id = ids[t];
+            float idf = idfs[t];
+            if (id < 0 || (idf < MIN_IDF && maxIdf >= MIN_IDF)) {
+                continue;
+            }
+            int position = postingOffsets[id];
+            int end = postingOffsets[id + 1];
+            int document = 0;
+            while (position < end) {
+                int gap = 0;
+                int shift = 0;
+                byte next;
+                do {
+                    next = postings[position++];
+                    gap |= (next & 0x7F) << shift;
+                    shift += 7;
+                } while (next < 0);
+                int tf = 0;
+                shift = 0;
+                do {
+                    next = postings[position++];
+                    tf |= (next & 0x7F) << shift;
+                    shift += 7;
+                } while (next < 0);
+                document += gap;
+
+                if (scores[document] == 0f) {
+                    if (matchedCount == matched.length) {
+                        matched = Arrays.copyOf(matched, Math.min(n, matchedCount * 2));
+                    }
+                    matched[matchedCount++] = document;
+                }
+                float norm = k1 * (1 - b + b * documentLengths[document] / averageLength);
+                scores[document] += idf * tf * (k1 + 1) / (tf + norm);
+            }
+        }
+
+        // Partial selection: keep the best k in a small sorted array.
+        int limit = Math.min(k, matchedCount);
+        int[] best = new int[limit];
+        int filled = 0;
+        for (int i = 0; i < matchedCount; i++) {
+            int document = matched[i];
+            float score = scores[document];
+            if (filled == limit && score <= scores[best[filled - 1]]) {
+                continue;
+            }
+            int at = filled == limit ? limit - 1 : filled++;
+            while (at > 0 && scores[best[at - 1]] < score) {
+                best[at] = best[at - 1];
+                at--;
+            }
+            best[at] = document;
+        }
+        List<Hit> hits = new ArrayList<>(filled);
+        for (int i = 0; i < filled; i++) {
+            hits.add(new Hit(best[i], scores[best[i]]));
+        }
+        return hits;
+    }
+
+    static void analyze(CharSequence text, Consumer<String> sink) {
+        StringBuilder part = new StringBuilder();
+        StringBuilder compound = new StringBuilder();
+        int parts = 0;
+        int n = text.length();
+        for (int i = 0; i <= n; i++) {
+            char c = i < n ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                part.append(Character.toLowerCase(c));
+                continue;
+            }
+            if (part.length() > 0) {
+                String term = part.toString();
+                if (!STOPWORDS.contains(term)) {
+                    sink.accept(term);
+                }
+                compound.append(term);
+                parts++;
+                part.setLength(0);
+                if (isConnector(c) && i + 1 < n && Character.isLetterOrDigit(text.charAt(i + 1))) {
+                    compound.append(c);
+                    continue;
+                }
+            }
+            if (parts > 1) {
+                sink.accept(compound.toString());
+            }
+            compound.setLength(0);
+            parts = 0;
+        }
+    }
+
+    private static boolean isConnector(char c) {
+        return c == '-' || c == '_' || c == '.' || c == '/';
+    }
+
+    public static final class Hit {
+        private final int id;
+        private final float score;
+
+        private Hit(int id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * Collects documents in id order. Postings are gathered per term as int pairs and
+     * encoded into the shared byte array by {@link #build}.
+     */
+    public static final class Builder {
+        private final float k1;
+        private final float b;
+        private final Map<String, Integer> termIds = new HashMap<>();
+        private final List<int[]> termPostings = new ArrayList<>();
+        private int[] postingCounts = new int[1024];
+        private int[] documentLengths = new int[1024];
+        private int documents;
+
+        private Builder(float k1, float b) {
+            this.k1 = k1;
+            this.b = b;
+        }
+
+        public void add(String document) {
+            Map<String, int[]> frequencies = new HashMap<>();
+            int[] length = {0};
+            analyze(document == null ? "" : document, term -> {
+                frequencies.computeIfAbsent(term, t -> new int[1])[0]++;
+                length[0]++;
+            });
+            for (Map.Entry<String, int[]> entry : frequencies.entrySet()) {
+                int id = termIds.computeIfAbsent(entry.getKey(), t -> {
+                    termPostings.add(new int[4]);
+                    return termPostings.size() - 1;
+                });
+                if (id == postingCounts.length) {
+                    postingCounts = Arrays.copyOf(postingCounts, id * 2);
+                }
+                int[] list = termPostings.get(id);
+                int count = postingCounts[id];
+                if (count + 2 > list.length) {
+                    list = Arrays.copyOf(list, list.length * 2);
+                    termPostings.set(id, list);
+                }
+                list[count] = documents;
+                list[count + 1] = entry.getValue()[0];
+                postingCounts[id] = count + 2;
+            }
+            if (documents == documentLengths.length) {
+                documentLengths = Arrays.copyOf(documentLengths, documents * 2);
+            }
+            documentLengths[documents++] = length[0];
+        }
+
+        /**
+         * Encodes the postings. {@code texts} must hold the added documents in the same order;
+         * search results are resolved against it.
+         */
+        public Bm25Index build(List<String> texts) {
+            if (texts.size() != documents) {
+                throw new IllegalArgumentException("Index has " + documents + " documents for " + texts.size() + " texts");
+            }
+            int terms = termPostings.size();
+            int[] frequencies = new int[terms];
+            int[] offsets = new int[terms + 1];
+            byte[] bytes = new byte[Math.max(16, documents * 8)];
+            int used = 0;
+            for (int id = 0; id < terms; id++) {
+                int[] list = termPostings.get(id);
+                int count = postingCounts[id];
+                offsets[id] = used;
+                frequencies[id] = count / 2;
+                int previous = 0;
+                for (int i = 0; i < count; i += 2) {
+                    if (used + 10 > bytes.length) {
+                        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    }
+                    used = writeVarint(bytes, used, list[i] - previous);
+                    used = writeVarint(bytes, used, list[i + 1]);
+                    previous = list[i];
+                }
+                termPostings.set(id, null);
+            }
+            offsets[terms] = used;
+            return new Bm25Index(texts, termIds, frequencies, offsets, Arrays.copyOf(bytes, used),
+                    Arrays.copyOf(documentLengths, documents), k1, b);
+        }
+
+        private static int writeVarint(byte[] bytes, int position, int value) {
+            while ((value & ~0x7F) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+            return position;
+        }
+    }
+}
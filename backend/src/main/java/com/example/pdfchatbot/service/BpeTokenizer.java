@@ -0,0 +1,410 @@
+package com.example.pdfchatbot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process cl100k_base byte-pair encoder, loaded from a tiktoken vocab file
+ * ({@code <base64 token bytes> <rank>} per line). Token ids match OpenAI's tiktoken for
+ * ordinary text; special tokens are not recognized.
+ *
+ * <p>Ranks live in an open-addressing table over one shared byte pool, so lookups hash the
+ * UTF-8 bytes of a piece in place without building keys. Most pieces are whole vocabulary
+ * entries and resolve with a single lookup; the rest are merged once and cached.
+ */
+@Service
+public class BpeTokenizer {
+    private static final Logger logger = LoggerFactory.getLogger(BpeTokenizer.class);
+
+    // cl100k_base pre-tokenizer (tiktoken's pattern, with Unicode \s as in the Rust regex crate).
+    private static final Pattern PIECES = Pattern.compile(
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}"
+                    + "| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+",
+            Pattern.UNICODE_CHARACTER_CLASS);
+    private static final int[] EMPTY = new int[0];
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Value("${tokenizer.vocabFile:cl100k_base.tiktoken}")
+    private String vocabFile;
+
+    @Value("${tokenizer.cacheSize:100000}")
+    private int cacheSize;
+
+    private byte[] pool;
+    private int[] offsets;
+    private int[] ranks;
+    private int[] table;
+    private int mask;
+    private int vocabularySize;
+
+    private final Map<String, int[]> mergeCache = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    @PostConstruct
+    public void initialize() {
+        if (vocabFile == null || vocabFile.isBlank()) {
+            return;
+        }
+        String location = vocabFile.trim();
+        Resource resource = resourceLoader.getResource(location.contains(":") ? location : "file:" + location);
+        if (!resource.exists()) {
+            logger.info("Tokenizer vocab {} not found; token counting is unavailable", location);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.US_ASCII))) {
+            load(reader);
+            logger.info("Loaded {} BPE ranks from {} in {}ms", vocabularySize, location, System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            vocabularySize = 0;
+            logger.warn("Failed to load tokenizer vocab {}: {}", location, e.getMessage());
+        }
+    }
+
+    public boolean isAvailable() {
+        return vocabularySize > 0;
+    }
+
+    public int countTokens(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        requireAvailable();
+        Matcher matcher = PIECES.matcher(text);
+        byte[] scratch = new byte[64];
+        int count = 0;
+        while (matcher.find()) {
+            scratch = utf8(text, matcher.start(), matcher.end(), scratch);
+            count += pieceCount(text, matcher.start(), matcher.end(), scratch);
+        }
+        return count;
+    }
+
+    public int[] encode(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return EMPTY;
+        }
+        requireAvailable();
+        Matcher matcher = PIECES.matcher(text);
+        byte[] scratch = new byte[64];
+        int[] tokens = new int[Math.max(16, text.length() / 3)];
+        int count = 0;
+        while (matcher.find()) {
+            scratch = utf8(text, matcher.start(), matcher.end(), scratch);
+            int[] piece = pieceTokens(text, matcher.start(), matcher.end(), scratch);
+            if (count + piece.length > tokens.length) {
+                tokens = Arrays.copyOf(tokens, Math.max(tokens.length * 2, count + piece.length));
+            }
+            System.arraycopy(piece, 0, tokens, count, piece.length);
+            count += piece.length;
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    /**
+     * Returns the char offset at which the trailing pieces of {@code text} holding at most
+     * {@code tokens} tokens begin. Offsets fall on pre-tokenizer boundaries, so the suffix
+     * never splits a word. Returns {@code text.length()} if even the last piece is too long.
+     */
+    public int suffixStart(CharSequence text, int tokens) {
+        if (text == null || text.length() == 0 || tokens <= 0) {
+            return text == null ? 0 : text.length();
+        }
+        requireAvailable();
+        Matcher matcher = PIECES.matcher(text);
+        byte[] scratch = new byte[64];
+        int[] starts = new int[32];
+        int[] counts = new int[32];
+        int pieces = 0;
+        while (matcher.find()) {
+            if (pieces == starts.length) {
+                starts = Arrays.copyOf(starts, pieces * 2);
+                counts = Arrays.copyOf(counts, pieces * 2);
+            }
+            scratch = utf8(text, matcher.start(), matcher.end(), scratch);
+            starts[pieces] = matcher.start();
+            counts[pieces] = pieceCount(text, matcher.start(), matcher.end(), scratch);
+            pieces++;
+        }
+        int start = text.length();
+        int total = 0;
+        for (int i = pieces - 1; i >= 0; i--) {
+            total += counts[i];
+            if (total > tokens) {
+                break;
+            }
+            start = starts[i];
+        }
+        return start;
+    }
+
+    /**
+     * Returns the char offset at which the leading pieces of {@code text} holding at most
+     * {@code tokens} tokens end. Always covers at least the first piece, so callers that
+     * split text into windows make progress.
+     */
+    public int prefixEnd(CharSequence text, int tokens) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        requireAvailable();
+        Matcher matcher = PIECES.matcher(text);
+        byte[] scratch = new byte[64];
+        int end = 0;
+        int total = 0;
+        while (matcher.find()) {
+            scratch = utf8(text, matcher.start(), matcher.end(), scratch);
+            total += pieceCount(text, matcher.start(), matcher.end(), scratch);
+            if (total > tokens && end > 0) {
+                break;
+            }
+            end = matcher.end();
+        }
+        return end;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("available", isAvailable());
+        stats.put("vocabulary", vocabularySize);
+        stats.put("cachedPieces", mergeCache.size());
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("cacheMisses", cacheMisses.get());
+        return stats;
+    }
+
+    private void requireAvailable() {
+        if (!isAvailable()) {
+            throw new IllegalStateException("Tokenizer vocab not loaded: " + vocabFile);
+        }
+    }
+
+    private void load(BufferedReader reader) throws IOException {
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] bytes = new byte[1 << 20];
+        int[] entryOffsets = new int[1 << 17];
+        int[] entryRanks = new int[1 << 17];
+        int entries = 0;
+        int used = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            byte[] token = decoder.decode(line.substring(0, space));
+            if (entries + 1 >= entryOffsets.length) {
+                entryOffsets = Arrays.copyOf(entryOffsets, entryOffsets.length * 2);
+                entryRanks = Arrays.copyOf(entryRanks, entryRanks.length * 2);
+            }
+            if (used + token.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + token.length));
+            }
+            System.arraycopy(token, 0, bytes, used, token.length);
+            entryOffsets[entries] = used;
+            entryRanks[entries] = Integer.parseInt(line.substring(space + 1).trim());
+            used += token.length;
+            entries++;
+        }
+        entryOffsets[entries] = used;
+
+        int capacity = Integer.highestOneBit(Math.max(16, entries * 2)) << 1;
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < entries; i++) {
+            int slot = hash(bytes, entryOffsets[i], entryOffsets[i + 1]) & (capacity - 1);
+            while (slots[slot] >= 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slots[slot] = i;
+        }
+        pool = bytes;
+        offsets = Arrays.copyOf(entryOffsets, entries + 1);
+        ranks = Arrays.copyOf(entryRanks, entries);
+        table = slots;
+        mask = capacity - 1;
+        vocabularySize = entries;
+    }
+
+    private int rank(byte[] bytes, int from, int to) {
+        int length = to - from;
+        int slot = hash(bytes, from, to) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry < 0) {
+                return -1;
+            }
+            int offset = offsets[entry];
+            if (offsets[entry + 1] - offset == length
+                    && Arrays.equals(pool, offset, offset + length, bytes, from, to)) {
+                return ranks[entry];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int pieceCount(CharSequence text, int start, int end, byte[] utf8) {
+        int length = utf8Length(text, start, end);
+        return rank(utf8, 0, length) >= 0 ? 1 : mergedTokens(text, start, end, utf8, length).length;
+    }
+
+    private int[] pieceTokens(CharSequence text, int start, int end, byte[] utf8) {
+        int length = utf8Length(text, start, end);
+        int whole = rank(utf8, 0, length);
+        return whole >= 0 ? new int[] {whole} : mergedTokens(text, start, end, utf8, length);
+    }
+
+    private int[] mergedTokens(CharSequence text, int start, int end, byte[] utf8, int length) {
+        String key = text.subSequence(start, end).toString();
+        int[] cached = mergeCache.get(key);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+        cacheMisses.incrementAndGet();
+        int[] tokens = merge(utf8, length);
+        if (mergeCache.size() >= cacheSize) {
+            mergeCache.clear();
+        }
+        mergeCache.put(key, tokens);
+        return tokens;
+    }
+
+    /**
+     * tiktoken's byte-pair merge: repeatedly join the adjacent pair whose bytes have the
+     * lowest rank until no joined pair is in the vocabulary.
+     */
+    private int[] merge(byte[] bytes, int length) {
+        // starts[i] is where part i begins; pairRanks[i] is the rank of parts i and i+1 joined.
+        int[] starts = new int[length + 1];
+        int[] pairRanks = new int[length + 1];
+        for (int i = 0; i <= length; i++) {
+            starts[i] = i;
+        }
+        int parts = length + 1;
+        for (int i = 0; i < parts - 2; i++) {
+            pairRanks[i] = rankOrMax(bytes, starts[i], starts[i + 2]);
+        }
+        pairRanks[parts - 2] = Integer.MAX_VALUE;
+        pairRanks[parts - 1] = Integer.MAX_VALUE;
+
+        while (parts > 2) {
+            int best = Integer.MAX_VALUE;
+            int at = -1;
+            for (int i = 0; i < parts - 2; i++) {
+                if (pairRanks[i] < best) {
+                    best = pairRanks[i];
+                    at = i;
+                }
+            }
+            if (at < 0) {
+                break;
+            }
+            System.arraycopy(starts, at + 2, starts, at + 1, parts - at - 2);
+            System.arraycopy(pairRanks, at + 2, pairRanks, at + 1, parts - at - 2);
+            parts--;
+            pairRanks[at] = at + 2 < parts ? rankOrMax(bytes, starts[at], starts[at + 2]) : Integer.MAX_VALUE;
+            if (at > 0) {
+                pairRanks[at - 1] = rankOrMax(bytes, starts[at - 1], starts[at + 1]);
+            }
+        }
+
+        int[] tokens = new int[parts - 1];
+        for (int i = 0; i < parts - 1; i++) {
+            tokens[i] = rank(bytes, starts[i], starts[i + 1]);
+        }
+        return tokens;
+    }
+
+    private int rankOrMax(byte[] bytes, int from, int to) {
+        int rank = rank(bytes, from, to);
+        return rank < 0 ? Integer.MAX_VALUE : rank;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int utf8Length(CharSequence text, int start, int end) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the UTF-8 bytes of {@code text[start, end)} into {@code buffer}, growing it if
+     * needed. Unpaired surrogates become U+FFFD, as tiktoken does.
+     */
+    private static byte[] utf8(CharSequence text, int start, int end, byte[] buffer) {
+        int needed = (end - start) * 3;
+        if (buffer.length < needed) {
+            buffer = new byte[Math.max(needed, buffer.length * 2)];
+        }
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[n++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[n++] = (byte) (0xC0 | (c >> 6));
+                buffer[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, text.charAt(++i));
+                    buffer[n++] = (byte) (0xF0 | (cp >> 18));
+                    buffer[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buffer[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buffer[n++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    buffer[n++] = (byte) 0xEF;
+                    buffer[n++] = (byte) 0xBF;
+                    buffer[n++] = (byte) 0xBD;
+                }
+            } else {
+                buffer[n++] = (byte) (0xE0 | (c >> 12));
+                buffer[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return buffer;
+    }
+}
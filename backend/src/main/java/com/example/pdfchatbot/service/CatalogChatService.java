@@ -3,13 +3,17 @@ package com.example.pdfchatbot.service;
 import com.example.pdfchatbot.model.CatalogProduct;
 import com.example.pdfchatbot.model.CatalogSearchResult;
 import com.example.pdfchatbot.model.ChatAnswer;
+import com.example.pdfchatbot.model.PreparedAnswer;
 import com.example.pdfchatbot.model.QueryIntent;
+import com.example.pdfchatbot.model.RequestDeadline;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class CatalogChatService {
@@ -17,10 +21,16 @@ public class CatalogChatService {
     private CatalogVectorClient vectorClient;
 
     @Autowired
-    private QueryIntentClassifier intentClassifier;
+    private LlmService llmService;
 
     @Autowired
-    private LlmService llmService;
+    private AnswerStageGraph stageGraph;
+
+    @Autowired
+    private CatalogProductIndex productIndex;
+
+    @Autowired
+    private OutboundCircuitBreakers circuitBreakers;
 
     @Value("${catalog.vector.topK:5}")
     private int topK;
@@ -28,36 +38,222 @@ public class CatalogChatService {
     @Value("${catalog.confidence.minScore:0.2}")
     private double minScore;
 
+    @Value("${chat.coalescing.enabled:true}")
+    private boolean coalescingEnabled;
+
+    private final SingleFlight<List<Object>, ChatAnswer> answerFlights = new SingleFlight<>();
+
+    /**
+     * Concurrent calls with the same normalized question and conversation share one
+     * classification, retrieval and LLM call (see {@link SingleFlight}).
+     */
     public ChatAnswer answerQuestion(String question,
-                                     List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history) {
-        QueryIntent intent = intentClassifier.classify(question);
-        boolean conversationRef = intentClassifier.isConversationReference(question);
+                                     List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                     RequestDeadline deadline) {
+        if (!coalescingEnabled) {
+            return answerQuestionOnce(question, history, deadline);
+        }
+        return answerFlights.call(coalescingKey(question, history),
+                () -> answerQuestionOnce(question, history, deadline));
+    }
+
+    private ChatAnswer answerQuestionOnce(String question,
+                                         List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                         RequestDeadline deadline) {
+        PreparedAnswer prepared = prepareAnswer(question, history, deadline);
+        if (prepared.hasDirectAnswer()) {
+            return prepared.toChatAnswer(prepared.getDirectAnswer());
+        }
+
+        String answer = llmService.generateAnswer(
+                question,
+                prepared.getContextChunks(),
+                history,
+                prepared.getIntent(),
+                prepared.isSupported(),
+                prepared.isAllowSpeculation(),
+                deadline
+        );
+
+        return prepared.toChatAnswer(answer);
+    }
+
+    public PreparedAnswer prepareAnswer(String question,
+                                        List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                        RequestDeadline deadline) {
+        if (!circuitBreakers.isCallPermitted(OutboundConcurrencyLimiter.CATALOG_VECTOR)) {
+            return unavailableAnswer(question, history);
+        }
+        AnswerStageGraph.Result<List<CatalogSearchResult>> stages =
+                stageGraph.run(question, deadline, () -> vectorClient.query(question, topK), List.of());
+        return assemble(question, history, stages);
+    }
+
+    /**
+     * Non-blocking variant of {@link #answerQuestion}.
+     */
+    public Mono<ChatAnswer> answerQuestionReactive(String question,
+                                                   List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                                   RequestDeadline deadline) {
+        if (!coalescingEnabled) {
+            return answerQuestionReactiveOnce(question, history, deadline);
+        }
+        return answerFlights.run(coalescingKey(question, history),
+                () -> answerQuestionReactiveOnce(question, history, deadline));
+    }
+
+    private Mono<ChatAnswer> answerQuestionReactiveOnce(String question,
+                                                        List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                                        RequestDeadline deadline) {
+        return prepareAnswerReactive(question, history, deadline).flatMap(prepared -> {
+            if (prepared.hasDirectAnswer()) {
+                return Mono.just(prepared.toChatAnswer(prepared.getDirectAnswer()));
+            }
+            return llmService.generateAnswerReactive(
+                    question,
+                    prepared.getContextChunks(),
+                    history,
+                    prepared.getIntent(),
+                    prepared.isSupported(),
+                    prepared.isAllowSpeculation(),
+                    deadline
+            ).map(prepared::toChatAnswer);
+        });
+    }
+
+    public Mono<PreparedAnswer> prepareAnswerReactive(String question,
+                                                      List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                                      RequestDeadline deadline) {
+        if (!circuitBreakers.isCallPermitted(OutboundConcurrencyLimiter.CATALOG_VECTOR)) {
+            return Mono.just(unavailableAnswer(question, history));
+        }
+        return stageGraph.runReactive(question, deadline, vectorClient.queryReactive(question, topK), List.<CatalogSearchResult>of())
+                .map(stages -> assemble(question, history, stages));
+    }
 
-        List<CatalogSearchResult> results = vectorClient.query(question, topK);
+    public Map<String, Object> getCoalescingStats() {
+        return answerFlights.getStats();
+    }
+
+    private List<Object> coalescingKey(String question,
+                                       List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history) {
+        return List.of(AnswerCache.normalize(question), ChatHistoryService.contentKey(history));
+    }
+
+    private PreparedAnswer assemble(String question,
+                                    List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                    AnswerStageGraph.Result<List<CatalogSearchResult>> stages) {
+        QueryIntent intent = stages.getIntent();
+        List<CatalogSearchResult> results = stages.getRetrieval();
+        boolean conversationRef = stages.isConversationRef();
         boolean supported = hasSupport(results) || (conversationRef && history != null && !history.isEmpty());
 
         List<String> contextChunks = buildContext(results);
         List<String> imagePaths = collectImagePaths(results);
 
-        String answer = llmService.generateAnswer(
+        return new PreparedAnswer(
                 question,
                 contextChunks,
                 history,
                 intent,
                 supported,
-                true
-        );
-
-        return new ChatAnswer(
-                answer,
-                intent,
-                supported,
+                true,
                 intent != QueryIntent.FACT,
                 "FAISS",
-                imagePaths
+                imagePaths,
+                null
+        );
+    }
+
+    /**
+     * Answers "what color is MA6-001"-style questions straight from the product index, with
+     * no classification, vector query or LLM call. Returns {@code null} when the question is
+     * not a single-attribute question about one known product with a stored value; callers
+     * then take the normal path. Cheap enough to try before the answer cache.
+     */
+    public PreparedAnswer lookupAnswer(String question,
+                                       List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history) {
+        CatalogProductIndex.Match match = productIndex.lookup(question);
+        if (match == null) {
+            return null;
+        }
+        List<CatalogProduct> products = match.getProducts();
+        CatalogProduct product = products.get(0);
+        String subject = describe(product, match.getKey());
+        String value = CatalogProductIndex.value(product, match.getAttribute()).trim();
+
+        String answer;
+        switch (match.getAttribute()) {
+            case COLORS:
+                answer = subject + " is available in: " + value + ".";
+                break;
+            case SOURCE:
+                answer = subject + " is listed in " + value + ".";
+                break;
+            default:
+                String label = match.getAttribute().getLabel();
+                answer = Character.toUpperCase(label.charAt(0)) + label.substring(1)
+                        + " for " + subject + ": " + value + ".";
+        }
+
+        List<String> imagePaths = new ArrayList<>();
+        for (CatalogProduct candidate : products) {
+            String imagePath = candidate.getImagePath();
+            if (imagePath != null && !imagePath.isBlank() && !imagePaths.contains(imagePath.trim())) {
+                imagePaths.add(imagePath.trim());
+            }
+        }
+
+        return new PreparedAnswer(
+                question,
+                List.of(),
+                history,
+                QueryIntent.FACT,
+                true,
+                false,
+                false,
+                "LOOKUP",
+                imagePaths,
+                answer
         );
     }
 
+    /**
+     * Answer used while the catalog vector service's circuit is open: no stages and no LLM
+     * call, so the request returns at once instead of waiting on a dependency known to be down.
+     * Model-number lookups ({@link #lookupAnswer}) are tried before this and keep working.
+     */
+    private PreparedAnswer unavailableAnswer(String question,
+                                             List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history) {
+        return new PreparedAnswer(
+                question,
+                List.of(),
+                history,
+                QueryIntent.FACT,
+                false,
+                false,
+                false,
+                "UNAVAILABLE",
+                List.of(),
+                "Product search is temporarily unavailable, so I can't look this up right now. "
+                        + "Questions about a specific model number (for example its dimensions or colors) "
+                        + "still work; otherwise please try again in a moment."
+        );
+    }
+
+    private String describe(CatalogProduct product, String key) {
+        String model = product.getModelNumber();
+        String name = product.getProductName();
+        boolean byModel = model != null && CatalogProductIndex.normalize(model).equals(key);
+        if (!byModel) {
+            return name == null ? key : name.trim();
+        }
+        if (name == null || name.isBlank() || CatalogProductIndex.normalize(name).equals(key)) {
+            return model.trim();
+        }
+        return model.trim() + " (" + name.trim() + ")";
+    }
+
     private boolean hasSupport(List<CatalogSearchResult> results) {
         if (results == null || results.isEmpty()) {
             return false;
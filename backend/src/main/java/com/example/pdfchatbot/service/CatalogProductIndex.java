@@ -0,0 +1,463 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.CatalogProduct;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory lookup over the catalog's {@code *_products.json} files, built once at startup.
+ * Model numbers and product names are keyed by their uppercase letters and digits only, so
+ * {@code fb 512-01}, {@code FB512-01} and {@code FB51201} are the same key. Keys resolve
+ * through a hash map; a question is scanned for keys with a character trie, walking from
+ * each word start, so finding the model a question names costs one pass over the question.
+ */
+@Service
+public class CatalogProductIndex {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogProductIndex.class);
+    private static final int ALPHABET = 36;
+    private static final int MIN_KEY_LENGTH = 3;
+    private static final int MAX_QUESTION_WORDS = 14;
+
+    private static final Map<String, Attribute> ATTRIBUTE_WORDS = Map.ofEntries(
+            Map.entry("material", Attribute.MATERIALS),
+            Map.entry("materials", Attribute.MATERIALS),
+            Map.entry("fabric", Attribute.MATERIALS),
+            Map.entry("composition", Attribute.MATERIALS),
+            Map.entry("color", Attribute.COLORS),
+            Map.entry("colors", Attribute.COLORS),
+            Map.entry("colour", Attribute.COLORS),
+            Map.entry("colours", Attribute.COLORS),
+            Map.entry("dimension", Attribute.DIMENSIONS),
+            Map.entry("dimensions", Attribute.DIMENSIONS),
+            Map.entry("size", Attribute.DIMENSIONS),
+            Map.entry("sizes", Attribute.DIMENSIONS),
+            Map.entry("measurements", Attribute.DIMENSIONS),
+            Map.entry("notes", Attribute.NOTES),
+            Map.entry("opacity", Attribute.NOTES),
+            Map.entry("page", Attribute.SOURCE),
+            Map.entry("source", Attribute.SOURCE));
+
+    // Words that ask for more than a stored value: left to retrieval and the LLM.
+    private static final Set<String> OPEN_ENDED_WORDS = Set.of(
+            "compare", "comparison", "difference", "different", "versus", "vs", "better", "best",
+            "recommend", "recommendation", "should", "would", "will", "future", "why", "similar",
+            "alternative", "alternatives", "cheaper", "price", "cost");
+
+    // Words that may sit next to an attribute word when that attribute is what is being asked.
+    private static final Set<String> SUBJECT_BEFORE = Set.of(
+            "what", "whats", "which", "s", "the", "its", "their", "is", "are", "list", "show", "give",
+            "me", "tell", "about", "all", "available", "exact", "overall", "product");
+    private static final Set<String> SUBJECT_AFTER = Set.of(
+            "of", "for", "is", "are", "does", "do", "on", "please");
+
+    public enum Attribute {
+        MATERIALS("materials"),
+        COLORS("colors"),
+        DIMENSIONS("dimensions"),
+        NOTES("notes"),
+        SOURCE("source");
+
+        private final String label;
+
+        Attribute(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    @Value("${catalog.enabled:false}")
+    private boolean catalogEnabled;
+
+    @Value("${catalog.lookup.enabled:true}")
+    private boolean lookupEnabled;
+
+    @Value("${catalog.products.dir:..}")
+    private String productsDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    @PostConstruct
+    public void initialize() {
+        if (!catalogEnabled || !lookupEnabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<CatalogProduct> products = loadProducts(Paths.get(productsDir));
+        snapshot = Snapshot.build(products);
+        logger.info("Catalog lookup ready: products={} keys={} trieNodes={} took={}ms",
+                products.size(), snapshot.keys.size(), snapshot.nodes, System.currentTimeMillis() - start);
+    }
+
+    public boolean isAvailable() {
+        return !snapshot.keys.isEmpty();
+    }
+
+    /**
+     * Resolves a question naming exactly one known model (or one product name when no model
+     * is named) and asking for exactly one stored attribute as its subject. Returns
+     * {@code null} for anything else, including questions whose matching products have no
+     * value for that attribute or disagree on it.
+     */
+    public Match lookup(String question) {
+        Snapshot current = snapshot;
+        if (current.keys.isEmpty() || question == null || question.isBlank()) {
+            return null;
+        }
+        lookups.incrementAndGet();
+
+        String[] words = question.toLowerCase(Locale.ROOT).split("[^a-z0-9]+");
+        Attribute attribute = null;
+        int attributeAt = -1;
+        int wordCount = 0;
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            if (word.isEmpty()) {
+                continue;
+            }
+            wordCount++;
+            if (OPEN_ENDED_WORDS.contains(word)) {
+                return null;
+            }
+            Attribute candidate = ATTRIBUTE_WORDS.get(word);
+            if (candidate != null) {
+                if (attributeAt >= 0) {
+                    return null;
+                }
+                attribute = candidate;
+                attributeAt = i;
+            }
+        }
+        if (attribute == null || wordCount > MAX_QUESTION_WORDS) {
+            return null;
+        }
+
+        List<Integer> matched = current.scan(question);
+        Integer modelKey = null;
+        Integer nameKey = null;
+        for (int key : matched) {
+            if (current.modelKeys.get(key)) {
+                if (modelKey != null && modelKey != key) {
+                    return null;
+                }
+                modelKey = key;
+            } else if (nameKey == null || nameKey == key) {
+                nameKey = key;
+            } else {
+                nameKey = -1;
+            }
+        }
+        Integer key = modelKey != null ? modelKey : nameKey;
+        if (key == null || key < 0) {
+            return null;
+        }
+
+        String matchedKey = current.keys.get(key);
+        if (!isSubject(words, attributeAt, matchedKey)) {
+            return null;
+        }
+
+        List<CatalogProduct> products = current.products.get(key);
+        Set<String> values = new HashSet<>();
+        for (CatalogProduct product : products) {
+            String value = value(product, attribute);
+            if (value == null || value.isBlank()) {
+                // Nothing stored to answer from: the normal path may still find it in the text.
+                return null;
+            }
+            values.add(value.trim());
+        }
+        if (values.size() != 1) {
+            return null;
+        }
+        hits.incrementAndGet();
+        return new Match(matchedKey, products, attribute);
+    }
+
+    public static String value(CatalogProduct product, Attribute attribute) {
+        switch (attribute) {
+            case MATERIALS:
+                return product.getMaterials();
+            case COLORS:
+                return product.getColors();
+            case DIMENSIONS:
+                return product.getDimensions();
+            case NOTES:
+                return product.getNotes();
+            case SOURCE:
+                return product.getSourcePdf() == null ? null
+                        : product.getSourcePdf() + " (page " + product.getSourcePage() + ")";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * True when the attribute word at {@code index} is what the question asks for rather than
+     * a qualifier: "what size is MA6-001" or "MA6-001 dimensions", but not "what size motor
+     * do I need for MA6-001" (the word modifies another noun) or "is MA6-001 available in
+     * white color" (the question names a value). Words that are part of the matched model or
+     * name count as the product itself.
+     */
+    private static boolean isSubject(String[] words, int index, String key) {
+        String before = neighbour(words, index, -1);
+        String after = neighbour(words, index, 1);
+        boolean beforeOk = before == null || SUBJECT_BEFORE.contains(before) || partOfKey(before, key);
+        boolean afterOk = after == null || SUBJECT_AFTER.contains(after) || partOfKey(after, key);
+        return beforeOk && afterOk;
+    }
+
+    private static String neighbour(String[] words, int index, int step) {
+        for (int i = index + step; i >= 0 && i < words.length; i += step) {
+            if (!words[i].isEmpty()) {
+                return words[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean partOfKey(String word, String key) {
+        return key.contains(normalize(word));
+    }
+
+    public Map<String, Object> getStats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("products", current.productCount);
+        stats.put("keys", current.keys.size());
+        stats.put("trieNodes", current.nodes);
+        stats.put("lookups", lookups.get());
+        stats.put("hits", hits.get());
+        return stats;
+    }
+
+    private List<CatalogProduct> loadProducts(Path dir) {
+        List<CatalogProduct> products = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            logger.info("Catalog products directory {} not found; catalog lookup is unavailable", dir.toAbsolutePath());
+            return products;
+        }
+        // catalog_products.json repeats the per-PDF files, so products are de-duplicated.
+        Set<String> seen = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*_products.json")) {
+            for (Path file : files) {
+                try {
+                    List<CatalogProduct> loaded = objectMapper.readValue(file.toFile(), new TypeReference<List<CatalogProduct>>() {});
+                    for (CatalogProduct product : loaded) {
+                        if (product != null && seen.add(product.getModelNumber() + "|" + product.getProductName()
+                                + "|" + product.getSourcePdf() + "|" + product.getSourcePage())) {
+                            products.add(product);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Skipping catalog products file {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to list catalog products in {}: {}", dir, e.getMessage());
+        }
+        return products;
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            int symbol = symbol(text.charAt(i));
+            if (symbol >= 0) {
+                key.append(Character.toUpperCase(text.charAt(i)));
+            }
+        }
+        return key.toString();
+    }
+
+    private static int symbol(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return 10 + c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return 10 + c - 'a';
+        }
+        return -1;
+    }
+
+    public static final class Match {
+        private final String key;
+        private final List<CatalogProduct> products;
+        private final Attribute attribute;
+
+        private Match(String key, List<CatalogProduct> products, Attribute attribute) {
+            this.key = key;
+            this.products = products;
+            this.attribute = attribute;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public List<CatalogProduct> getProducts() {
+            return products;
+        }
+
+        public Attribute getAttribute() {
+            return attribute;
+        }
+    }
+
+    /**
+     * Immutable key table plus trie. Trie node {@code n} keeps its children in
+     * {@code next[n * 36 .. n * 36 + 35]} (0 = none) and the key ending there in
+     * {@code terminal[n]} (-1 = none).
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = build(List.of());
+
+        final List<String> keys = new ArrayList<>();
+        final List<List<CatalogProduct>> products = new ArrayList<>();
+        final BitSet modelKeys = new BitSet();
+        int productCount;
+        int[] next = new int[ALPHABET * 64];
+        int[] terminal = new int[64];
+        int nodes = 1;
+
+        static Snapshot build(List<CatalogProduct> catalog) {
+            Snapshot snapshot = new Snapshot();
+            Arrays.fill(snapshot.terminal, -1);
+            Map<String, Integer> keyIds = new HashMap<>();
+            for (CatalogProduct product : catalog) {
+                snapshot.add(keyIds, normalize(product.getModelNumber()), product, true);
+                snapshot.add(keyIds, normalize(product.getProductName()), product, false);
+            }
+            snapshot.productCount = catalog.size();
+            return snapshot;
+        }
+
+        private void add(Map<String, Integer> keyIds, String key, CatalogProduct product, boolean model) {
+            if (key.length() < MIN_KEY_LENGTH) {
+                return;
+            }
+            Integer id = keyIds.get(key);
+            if (id == null) {
+                id = keys.size();
+                keyIds.put(key, id);
+                keys.add(key);
+                products.add(new ArrayList<>());
+                insert(key, id);
+            }
+            // A key that is some product's model number stays a model key.
+            if (model) {
+                modelKeys.set(id);
+            }
+            List<CatalogProduct> list = products.get(id);
+            if (!list.contains(product)) {
+                list.add(product);
+            }
+        }
+
+        private void insert(String key, int id) {
+            int node = 0;
+            for (int i = 0; i < key.length(); i++) {
+                int slot = node * ALPHABET + symbol(key.charAt(i));
+                if (next[slot] == 0) {
+                    if (nodes == terminal.length) {
+                        next = Arrays.copyOf(next, next.length * 2);
+                        terminal = Arrays.copyOf(terminal, terminal.length * 2);
+                        Arrays.fill(terminal, nodes, terminal.length, -1);
+                    }
+                    next[slot] = nodes++;
+                }
+                node = next[slot];
+            }
+            terminal[node] = id;
+        }
+
+        /**
+         * Keys found in {@code question}, each the longest match starting at a word start and
+         * ending at a word end. Separators between words are ignored, so {@code FB 512-01}
+         * matches {@code FB51201}.
+         */
+        List<Integer> scan(String question) {
+            int n = question.length();
+            int[] symbols = new int[n];
+            boolean[] wordStart = new boolean[n];
+            boolean[] wordEnd = new boolean[n];
+            int count = 0;
+            boolean previousWasSymbol = false;
+            for (int i = 0; i < n; i++) {
+                int symbol = symbol(question.charAt(i));
+                if (symbol < 0) {
+                    if (previousWasSymbol) {
+                        wordEnd[count - 1] = true;
+                    }
+                    previousWasSymbol = false;
+                    continue;
+                }
+                wordStart[count] = !previousWasSymbol;
+                symbols[count++] = symbol;
+                previousWasSymbol = true;
+            }
+            if (count > 0) {
+                wordEnd[count - 1] = true;
+            }
+
+            List<Integer> found = new ArrayList<>(2);
+            for (int start = 0; start < count; start++) {
+                if (!wordStart[start]) {
+                    continue;
+                }
+                int node = 0;
+                int longest = -1;
+                int longestEnd = start;
+                for (int i = start; i < count; i++) {
+                    node = next[node * ALPHABET + symbols[i]];
+                    if (node == 0) {
+                        break;
+                    }
+                    if (terminal[node] >= 0 && wordEnd[i]) {
+                        longest = terminal[node];
+                        longestEnd = i;
+                    }
+                }
+                if (longest >= 0) {
+                    found.add(longest);
+                    // Skip words inside the match, so a name does not also match its own tail.
+                    start = longestEnd;
+                }
+            }
+            return found;
+        }
+    }
+}
@@ -5,13 +5,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
+import jakarta.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -21,39 +22,80 @@ import java.util.Map;
 public class CatalogVectorClient {
     private static final Logger logger = LoggerFactory.getLogger(CatalogVectorClient.class);
 
-    private final WebClient webClient;
+    private WebClient webClient;
     private final ObjectMapper objectMapper;
 
+    @Autowired
+    private OutboundConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private OutboundHttpClients httpClients;
+
+    @Autowired
+    private OutboundCircuitBreakers circuitBreakers;
+
     @Value("${catalog.vector.url:http://localhost:9000}")
     private String vectorUrl;
 
-    @Value("${catalog.vector.timeoutMs:10000}")
-    private long timeoutMs;
-
     public CatalogVectorClient() {
-        ExchangeStrategies strategies = ExchangeStrategies.builder()
-                .codecs(config -> config.defaultCodecs().maxInMemorySize(4 * 1024 * 1024))
-                .build();
-        this.webClient = WebClient.builder()
-                .exchangeStrategies(strategies)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
         this.objectMapper = new ObjectMapper();
     }
 
+    @PostConstruct
+    public void initializeClient() {
+        this.webClient = httpClients.webClient(OutboundConcurrencyLimiter.CATALOG_VECTOR, vectorUrl, 4 * 1024 * 1024);
+    }
+
+    /**
+     * Returns an empty result straight away while the sidecar's circuit is open, without
+     * waiting for a concurrency permit.
+     */
     public List<CatalogSearchResult> query(String question, int topK) {
-        try {
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("query", question);
-            payload.put("top_k", topK);
+        if (!circuitBreakers.isCallPermitted(OutboundConcurrencyLimiter.CATALOG_VECTOR)) {
+            return List.of();
+        }
+        return concurrencyLimiter.call(OutboundConcurrencyLimiter.CATALOG_VECTOR, () -> queryReactive(question, topK).block());
+    }
 
-            String response = webClient.post()
+    public Mono<List<CatalogSearchResult>> queryReactive(String question, int topK) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("query", question);
+        payload.put("top_k", topK);
+
+        return Mono.defer(() -> {
+            OutboundCircuitBreakers.Permit permit = circuitBreakers.tryAcquire(OutboundConcurrencyLimiter.CATALOG_VECTOR);
+            if (permit == null) {
+                logger.debug("Catalog vector query skipped: circuit open");
+                return Mono.<String>empty();
+            }
+            long start = System.nanoTime();
+            return webClient.post()
                     .uri(vectorUrl + "/query")
                     .bodyValue(payload)
                     .retrieve()
                     .bodyToMono(String.class)
-                    .block();
+                    .doFinally(signal -> {
+                        long elapsed = System.nanoTime() - start;
+                        if (signal == SignalType.ON_COMPLETE) {
+                            circuitBreakers.onSuccess(permit, elapsed);
+                        } else if (signal == SignalType.CANCEL) {
+                            // Client disconnects cancel as well as stage timeouts; only slow cancellations count.
+                            circuitBreakers.onCancel(permit, elapsed);
+                        } else {
+                            circuitBreakers.onFailure(permit, elapsed);
+                        }
+                    });
+        })
+                .map(this::parseQueryResponse)
+                .defaultIfEmpty(List.of())
+                .onErrorResume(e -> {
+                    logger.warn("Catalog vector query failed: {}", e.getMessage());
+                    return Mono.just(List.of());
+                });
+    }
 
+    private List<CatalogSearchResult> parseQueryResponse(String response) {
+        try {
             JsonNode json = objectMapper.readTree(response);
             JsonNode results = json.get("results");
             if (results == null || !results.isArray()) {
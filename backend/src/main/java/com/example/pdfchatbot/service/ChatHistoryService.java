@@ -1,58 +1,366 @@
 package com.example.pdfchatbot.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Chat history per session. Each session keeps its last {@code chat.history.maxEntries}
+ * exchanges in a fixed-size ring buffer guarded by the session's own lock, so requests from
+ * different sessions never contend. Sessions idle for longer than
+ * {@code chat.history.ttlMinutes} are dropped, and at most {@code chat.history.maxSessions}
+ * are kept (least recently used go first), which bounds memory to maxSessions fixed-size
+ * rings.
+ *
+ * <p>Once a session has more than {@code chat.history.summarize.afterTurns} turns that are not
+ * yet summarized, all but the last {@code chat.history.summarize.keepTurns} are folded into a
+ * rolling summary by a low-priority background worker. Readers get the summary (as a
+ * {@link ChatEntry#isSummary() summary entry}) followed by the turns after it, so prompt size
+ * stays roughly constant however long the session runs. Turns that leave the ring before the
+ * worker gets to them wait in a per-session backlog of at most
+ * {@code chat.history.summarize.maxBacklogTurns}; only beyond that (e.g. while the LLM is down)
+ * are the oldest dropped unsummarized, which is counted and logged.
+ */
 @Service
 public class ChatHistoryService {
-    private final List<ChatEntry> history = Collections.synchronizedList(new ArrayList<>());
+    private static final Logger logger = LoggerFactory.getLogger(ChatHistoryService.class);
+    private static final long SWEEP_INTERVAL_MS = 60_000;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
+    // Orders session accesses for LRU eviction; unlike millisecond timestamps it never ties.
+    private final AtomicLong accessClock = new AtomicLong();
+    private final AtomicLong evictedSessions = new AtomicLong();
+    private final AtomicLong summaries = new AtomicLong();
+    private final AtomicLong summaryFailures = new AtomicLong();
+    private final AtomicLong unsummarizedDropped = new AtomicLong();
+
+    // One low-priority thread, so summarizing never competes with request handling for long.
+    private final ThreadPoolExecutor summarizer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(256), runnable -> {
+        Thread thread = new Thread(runnable, "history-summarizer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    @Autowired
+    private LlmService llmService;
 
     @Value("${chat.history.maxEntries:10}")
     private int maxEntries;
 
-    public void addEntry(String question, String answer) {
-        history.add(new ChatEntry(
-                Instant.now().toEpochMilli(),
-                question,
-                answer
-        ));
-        trimToMaxEntries();
+    @Value("${chat.history.ttlMinutes:30}")
+    private long ttlMinutes;
+
+    @Value("${chat.history.maxSessions:10000}")
+    private int maxSessions;
+
+    @Value("${chat.history.summarize.enabled:true}")
+    private boolean summarizeEnabled;
+
+    @Value("${chat.history.summarize.afterTurns:8}")
+    private int summarizeAfterTurns;
+
+    @Value("${chat.history.summarize.keepTurns:4}")
+    private int keepTurns;
+
+    @Value("${chat.history.summarize.maxBacklogTurns:64}")
+    private int maxBacklogTurns;
+
+    @PreDestroy
+    public void shutdown() {
+        summarizer.shutdownNow();
     }
 
-    public List<ChatEntry> getHistory() {
-        synchronized (history) {
-            return new ArrayList<>(history);
+    public void addEntry(String sessionId, String question, String answer) {
+        if (sessionId == null || maxEntries <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ChatEntry entry = new ChatEntry(Instant.now().toEpochMilli(), question, answer);
+        // Added inside compute, which excludes the sweep's removals for this key, so the turn
+        // cannot land in a session that is being evicted.
+        Session session = sessions.compute(sessionId, (id, existing) -> {
+            Session target = existing == null || isExpired(existing, now)
+                    ? new Session(ringCapacity(), summarizeEnabled ? Math.max(0, maxBacklogTurns) : 0)
+                    : existing;
+            target.add(entry, now, accessClock.incrementAndGet());
+            return target;
+        });
+        scheduleSummary(session);
+        sweepIfNeeded(now);
+    }
+
+    public List<ChatEntry> getHistory(String sessionId) {
+        return getRecentEntries(sessionId, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The session's rolling summary, if any, followed by at most {@code limit} of the most
+     * recent turns not yet folded into it.
+     */
+    public List<ChatEntry> getRecentEntries(String sessionId, int limit) {
+        if (sessionId == null || limit <= 0) {
+            return List.of();
+        }
+        Session session = sessions.get(sessionId);
+        long now = System.currentTimeMillis();
+        if (session == null || isExpired(session, now)) {
+            return List.of();
         }
+        return session.recent(limit, now, accessClock.incrementAndGet());
     }
 
-    public List<ChatEntry> getRecentEntries(int limit) {
-        if (limit <= 0) {
+    /**
+     * The text of {@code history} as a value-comparable key: requests whose keys are equal
+     * send the LLM the same conversation.
+     */
+    public static List<String> contentKey(List<ChatEntry> history) {
+        if (history == null || history.isEmpty()) {
             return List.of();
         }
-        synchronized (history) {
-            int size = history.size();
-            int fromIndex = Math.max(size - limit, 0);
-            return new ArrayList<>(history.subList(fromIndex, size));
+        List<String> key = new ArrayList<>(history.size() * 2);
+        for (ChatEntry entry : history) {
+            key.add(entry.isSummary() ? "summary" : String.valueOf(entry.getQuestion()));
+            key.add(String.valueOf(entry.getAnswer()));
+        }
+        return key;
+    }
+
+    public void clear(String sessionId) {
+        if (sessionId != null) {
+            sessions.remove(sessionId);
         }
     }
 
     public void clear() {
-        history.clear();
+        sessions.clear();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", sessions.size());
+        stats.put("maxSessions", maxSessions);
+        stats.put("evictedSessions", evictedSessions.get());
+        stats.put("summaries", summaries.get());
+        stats.put("summaryFailures", summaryFailures.get());
+        stats.put("unsummarizedDropped", unsummarizedDropped.get());
+        stats.put("summariesQueued", summarizer.getQueue().size());
+        return stats;
+    }
+
+    private int ringCapacity() {
+        // Room for a full fold; turns pushed out before it runs go to the session's backlog.
+        return summarizeEnabled ? Math.max(maxEntries, summarizeAfterTurns + 2) : maxEntries;
+    }
+
+    private void scheduleSummary(Session session) {
+        if (!summarizeEnabled || !session.claimSummary(summarizeAfterTurns)) {
+            return;
+        }
+        try {
+            summarizer.execute(() -> summarize(session));
+        } catch (RejectedExecutionException e) {
+            // Queue full; the next turn of this session tries again.
+            session.releaseSummary();
+        }
+    }
+
+    private void summarize(Session session) {
+        Session.Fold fold = session.fold(Math.max(0, keepTurns));
+        try {
+            if (fold.droppedThrough > fold.droppedFrom) {
+                unsummarizedDropped.addAndGet(fold.droppedThrough - fold.droppedFrom);
+                logger.warn("[history_summary] turns {}..{} left the backlog before they were summarized",
+                        fold.droppedFrom + 1, fold.droppedThrough);
+            }
+            if (fold.turns.isEmpty()) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            String summary = llmService.summarizeConversation(fold.previousSummary, fold.turns);
+            session.applySummary(summary, fold.through);
+            summaries.incrementAndGet();
+            logger.info("[history_summary] turns={} chars={} took={}ms",
+                    fold.turns.size(), summary.length(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            summaryFailures.incrementAndGet();
+            logger.warn("History summarization failed: {}", e.getMessage());
+        } finally {
+            session.releaseSummary();
+        }
     }
 
-    private void trimToMaxEntries() {
-        if (maxEntries <= 0) {
-            history.clear();
+    private boolean isExpired(Session session, long now) {
+        return ttlMinutes > 0 && now - session.lastAccess > ttlMinutes * 60_000;
+    }
+
+    /**
+     * Drops idle sessions at most once a minute, or right away when over the session cap.
+     * Only the thread that wins the timestamp update sweeps. Each removal re-checks the session
+     * in {@code computeIfPresent}, so one that {@link #addEntry} touched meanwhile is kept.
+     */
+    private void sweepIfNeeded(long now) {
+        long last = lastSweep.get();
+        boolean overCap = sessions.size() > Math.max(1, maxSessions);
+        if ((!overCap && now - last < SWEEP_INTERVAL_MS) || !lastSweep.compareAndSet(last, now)) {
             return;
         }
-        synchronized (history) {
-            while (history.size() > maxEntries) {
-                history.remove(0);
+        for (String id : sessions.keySet()) {
+            sessions.computeIfPresent(id, (key, session) -> {
+                if (!isExpired(session, now)) {
+                    return session;
+                }
+                evictedSessions.incrementAndGet();
+                return null;
+            });
+        }
+
+        int excess = sessions.size() - Math.max(1, maxSessions);
+        if (excess <= 0) {
+            return;
+        }
+        // Evict the least recently used tenth beyond the cap as well, so a burst of new
+        // sessions does not trigger a full sweep on every request.
+        int toEvict = Math.min(sessions.size(), excess + Math.max(1, maxSessions) / 10);
+        List<Map.Entry<String, Long>> byAccess = new ArrayList<>(sessions.size());
+        sessions.forEach((id, session) -> byAccess.add(Map.entry(id, session.accessOrder)));
+        byAccess.sort(Map.Entry.comparingByValue());
+        for (int i = 0; i < Math.min(toEvict, byAccess.size()); i++) {
+            long rankedAccess = byAccess.get(i).getValue();
+            sessions.computeIfPresent(byAccess.get(i).getKey(), (key, session) -> {
+                if (session.accessOrder != rankedAccess) {
+                    return session;
+                }
+                evictedSessions.incrementAndGet();
+                return null;
+            });
+        }
+    }
+
+    private static final class Session {
+        private final ChatEntry[] ring;
+        // Turns ever added; turn k (1-based) lives in ring[(k - 1) % ring.length].
+        private long added;
+        // Unsummarized turns pushed out of the ring, oldest first, ending just before the ring.
+        private final List<ChatEntry> backlog = new ArrayList<>();
+        private final int maxBacklog;
+        // Lost turns (before the backlog and not summarized) already reported by a fold.
+        private long reportedThrough;
+        private long summarizedThrough;
+        private String summary;
+        private long summaryTimestamp;
+        private boolean summarizing;
+        private volatile long lastAccess;
+        private volatile long accessOrder;
+
+        private Session(int capacity, int maxBacklog) {
+            this.ring = new ChatEntry[capacity];
+            this.maxBacklog = maxBacklog;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        private synchronized void add(ChatEntry entry, long now, long order) {
+            int slot = (int) (added % ring.length);
+            // The turn being overwritten is added - ring.length (0-based).
+            if (maxBacklog > 0 && added >= ring.length && added - ring.length >= summarizedThrough) {
+                backlog.add(ring[slot]);
+                if (backlog.size() > maxBacklog) {
+                    // Lost unless a summary already in flight covers it; the next fold reports it.
+                    backlog.remove(0);
+                }
+            }
+            ring[slot] = entry;
+            added++;
+            lastAccess = now;
+            accessOrder = order;
+        }
+
+        private synchronized List<ChatEntry> recent(int limit, long now, long order) {
+            long oldest = Math.max(summarizedThrough, added - ring.length);
+            int count = (int) Math.min(limit, added - oldest);
+            List<ChatEntry> entries = new ArrayList<>(count + 1);
+            if (summary != null) {
+                entries.add(new ChatEntry(summaryTimestamp, null, summary, true));
+            }
+            for (long k = added - count; k < added; k++) {
+                entries.add(ring[(int) (k % ring.length)]);
+            }
+            lastAccess = now;
+            accessOrder = order;
+            return entries;
+        }
+
+        private synchronized boolean claimSummary(int afterTurns) {
+            if (summarizing || added - summarizedThrough <= afterTurns) {
+                return false;
+            }
+            summarizing = true;
+            return true;
+        }
+
+        private synchronized void releaseSummary() {
+            summarizing = false;
+        }
+
+        private synchronized Fold fold(int keep) {
+            long through = added - keep;
+            long ringStart = Math.max(0, added - ring.length);
+            long backlogStart = ringStart - backlog.size();
+            long from = Math.max(summarizedThrough, backlogStart);
+            List<ChatEntry> turns = new ArrayList<>();
+            for (long k = from; k < through; k++) {
+                turns.add(k < ringStart ? backlog.get((int) (k - backlogStart)) : ring[(int) (k % ring.length)]);
+            }
+            long droppedFrom = Math.max(reportedThrough, summarizedThrough);
+            reportedThrough = Math.max(droppedFrom, backlogStart);
+            return new Fold(summary, turns, through, droppedFrom, reportedThrough);
+        }
+
+        private synchronized void applySummary(String text, long through) {
+            if (through > summarizedThrough) {
+                summary = text;
+                summaryTimestamp = System.currentTimeMillis();
+                summarizedThrough = through;
+                long ringStart = Math.max(0, added - ring.length);
+                long folded = Math.min(backlog.size(), through - (ringStart - backlog.size()));
+                if (folded > 0) {
+                    backlog.subList(0, (int) folded).clear();
+                }
+            }
+        }
+
+        private static final class Fold {
+            private final String previousSummary;
+            private final List<ChatEntry> turns;
+            private final long through;
+            // Turns [droppedFrom, droppedThrough) (0-based) were lost before this fold.
+            private final long droppedFrom;
+            private final long droppedThrough;
+
+            private Fold(String previousSummary, List<ChatEntry> turns, long through,
+                         long droppedFrom, long droppedThrough) {
+                this.previousSummary = previousSummary;
+                this.turns = turns;
+                this.through = through;
+                this.droppedFrom = droppedFrom;
+                this.droppedThrough = droppedThrough;
             }
         }
     }
@@ -61,11 +369,17 @@ public class ChatHistoryService {
         private final long timestamp;
         private final String question;
         private final String answer;
+        private final boolean summary;
 
         public ChatEntry(long timestamp, String question, String answer) {
+            this(timestamp, question, answer, false);
+        }
+
+        private ChatEntry(long timestamp, String question, String answer, boolean summary) {
             this.timestamp = timestamp;
             this.question = question;
             this.answer = answer;
+            this.summary = summary;
         }
 
         public long getTimestamp() {
@@ -79,5 +393,12 @@ public class ChatHistoryService {
         public String getAnswer() {
             return answer;
         }
+
+        /**
+         * True for the rolling summary of earlier turns; its text is in {@link #getAnswer()}.
+         */
+        public boolean isSummary() {
+            return summary;
+        }
     }
 }
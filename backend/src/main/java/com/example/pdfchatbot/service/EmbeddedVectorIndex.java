@@ -0,0 +1,120 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.RetrievalResult;
+import com.example.pdfchatbot.model.RetrievalResult.RetrievalMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process replacement for the PDF FAISS sidecar. Chunks are embedded through
+ * {@link EmbeddingService} and searched with an {@link HnswIndex}, so a question costs
+ * one embeddings call instead of two HTTP hops. Enabled with {@code pdf.vector.engine=embedded};
+ * {@link PdfIngestService} builds and persists the index, and {@link SimilaritySearchService}
+ * publishes the resulting {@link Generation} together with the lexical index.
+ */
+@Service
+public class EmbeddedVectorIndex {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedVectorIndex.class);
+
+    @Autowired
+    private EmbeddingService embeddingService;
+
+    @Autowired
+    private OutboundConcurrencyLimiter concurrencyLimiter;
+
+    @Value("${pdf.vector.batchSize:128}")
+    private int batchSize;
+
+    @Value("${pdf.vector.hnsw.m:16}")
+    private int maxConnections;
+
+    @Value("${pdf.vector.hnsw.efConstruction:100}")
+    private int efConstruction;
+
+    @Value("${pdf.vector.hnsw.efSearch:64}")
+    private int efSearch;
+
+    /**
+     * Empty index with the configured graph parameters, for callers that add vectors as they arrive.
+     */
+    public HnswIndex newIndex(int dimension) {
+        return new HnswIndex(dimension, maxConnections, efConstruction, 0);
+    }
+
+    /**
+     * Pairs a fully built index with its chunk texts. Nothing is visible to queries until the
+     * caller publishes the generation.
+     */
+    public Generation generation(HnswIndex index, List<String> chunks) {
+        if (index.size() != chunks.size()) {
+            throw new IllegalArgumentException("Index has " + index.size() + " vectors for " + chunks.size() + " chunks");
+        }
+        return new Generation(index, chunks);
+    }
+
+    public List<float[]> embedChunks(List<String> chunks) {
+        List<float[]> vectors = embeddingService.embedVectors(chunks, batchSize);
+        for (float[] vector : vectors) {
+            HnswIndex.normalize(vector);
+        }
+        return vectors;
+    }
+
+    public RetrievalResult query(Generation generation, String question, int topK) {
+        return concurrencyLimiter.call(OutboundConcurrencyLimiter.EMBEDDING, () -> queryReactive(generation, question, topK).block());
+    }
+
+    public Mono<RetrievalResult> queryReactive(Generation generation, String question, int topK) {
+        if (generation.index == null || question == null || question.isBlank()) {
+            return Mono.just(new RetrievalResult(List.of(), List.of(), RetrievalMethod.NONE));
+        }
+        return embeddingService.embedVectorsReactive(List.of(question), 1)
+                .map(embedded -> search(generation, embedded, topK))
+                .onErrorResume(e -> {
+                    logger.warn("Embedded vector query failed: {}", e.getMessage());
+                    return Mono.just(new RetrievalResult(List.of(), List.of(), RetrievalMethod.NONE));
+                });
+    }
+
+    private RetrievalResult search(Generation generation, List<float[]> embedded, int topK) {
+        if (embedded.isEmpty()) {
+            return new RetrievalResult(List.of(), List.of(), RetrievalMethod.NONE);
+        }
+        float[] queryVector = HnswIndex.normalize(embedded.get(0));
+        List<HnswIndex.Candidate> hits = generation.index.search(queryVector, topK, efSearch);
+
+        List<String> documents = new ArrayList<>(hits.size());
+        List<Double> scores = new ArrayList<>(hits.size());
+        for (HnswIndex.Candidate hit : hits) {
+            documents.add(generation.chunks.get(hit.getId()));
+            scores.add((double) hit.getScore());
+        }
+        return new RetrievalResult(documents, scores, RetrievalMethod.HNSW);
+    }
+
+    /**
+     * An HNSW index and the chunk texts its ids refer to.
+     */
+    public static final class Generation {
+        public static final Generation EMPTY = new Generation(null, List.of());
+
+        private final HnswIndex index;
+        private final List<String> chunks;
+
+        private Generation(HnswIndex index, List<String> chunks) {
+            this.index = index;
+            this.chunks = chunks;
+        }
+
+        public List<String> chunks() {
+            return chunks;
+        }
+    }
+}
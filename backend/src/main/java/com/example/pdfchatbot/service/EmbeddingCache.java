@@ -0,0 +1,473 @@
+package com.example.pdfchatbot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Two-tier cache of embedding vectors keyed by (model, SHA-256 of the input text).
+ * Tier one is a bounded in-heap LRU; tier two is an append-only log per model on disk
+ * whose offsets are indexed in memory, so vectors survive restarts and /api/reload.
+ * Each log is capped at {@code embedding.cache.disk.maxMb} and compacted to its newest
+ * records when it passes the cap. Appends run on the bounded-elastic scheduler; {@link #get}
+ * may read the disk tier and so must not be called on an event-loop thread.
+ * Log record layout: 32-byte digest, int dimension, dimension float32 values (little-endian).
+ */
+@Service
+public class EmbeddingCache {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingCache.class);
+    private static final int DIGEST_BYTES = 32;
+
+    @Autowired
+    private PdfService pdfService;
+
+    @Value("${embedding.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${embedding.cache.maxEntries:10000}")
+    private int maxEntries;
+
+    @Value("${embedding.cache.disk.enabled:true}")
+    private boolean diskEnabled;
+
+    @Value("${embedding.cache.disk.maxMb:512}")
+    private long diskMaxMb;
+
+    @Value("${embedding.cache.dir:}")
+    private String cacheDir;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final Map<String, float[]> memory = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+            return size() > Math.max(1, maxEntries);
+        }
+    };
+
+    private final Map<String, DiskLog> diskLogs = new HashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns a copy of the cached vector, or null on a miss in both tiers.
+     */
+    public float[] get(String model, String text) {
+        if (!enabled) {
+            return null;
+        }
+        byte[] digest = digest(text);
+        String key = model + ":" + HexFormat.of().formatHex(digest);
+        float[] cached;
+        synchronized (memory) {
+            cached = memory.get(key);
+        }
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            return cached.clone();
+        }
+
+        DiskLog log = diskLog(model);
+        if (log != null) {
+            float[] stored = log.read(digest);
+            if (stored != null) {
+                diskHits.incrementAndGet();
+                synchronized (memory) {
+                    memory.put(key, stored);
+                }
+                return stored.clone();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String model, String text, float[] vector) {
+        if (!enabled || vector == null || vector.length == 0) {
+            return;
+        }
+        byte[] digest = digest(text);
+        String key = model + ":" + HexFormat.of().formatHex(digest);
+        float[] copy = vector.clone();
+        synchronized (memory) {
+            memory.put(key, copy);
+        }
+        if (diskEnabled) {
+            Mono.fromRunnable(() -> {
+                        DiskLog log = diskLog(model);
+                        if (log != null) {
+                            log.append(digest, copy);
+                        }
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .subscribe(null, e -> logger.warn("Embedding cache write failed: {}", e.getMessage()));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long memHits = memoryHits.get();
+        long dHits = diskHits.get();
+        long miss = misses.get();
+        long total = memHits + dHits + miss;
+        stats.put("memoryHits", memHits);
+        stats.put("diskHits", dHits);
+        stats.put("misses", miss);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) (memHits + dHits) / total);
+        synchronized (memory) {
+            stats.put("memoryEntries", memory.size());
+        }
+        long diskEntries = 0;
+        long diskBytes = 0;
+        synchronized (diskLogs) {
+            for (DiskLog log : diskLogs.values()) {
+                if (log != null) {
+                    diskEntries += log.size();
+                    diskBytes += log.bytes();
+                }
+            }
+        }
+        stats.put("diskEntries", diskEntries);
+        stats.put("diskBytes", diskBytes);
+        stats.put("diskMaxBytes", diskMaxMb * 1024 * 1024);
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (diskLogs) {
+            for (DiskLog log : diskLogs.values()) {
+                if (log != null) {
+                    log.close();
+                }
+            }
+            diskLogs.clear();
+        }
+    }
+
+    private DiskLog diskLog(String model) {
+        if (!diskEnabled) {
+            return null;
+        }
+        synchronized (diskLogs) {
+            DiskLog log = diskLogs.get(model);
+            if (log == null && !diskLogs.containsKey(model)) {
+                try {
+                    Path root = resolveRoot();
+                    Files.createDirectories(root);
+                    String fileName = model.replaceAll("[^A-Za-z0-9._-]", "_") + ".log";
+                    log = new DiskLog(root.resolve(fileName), diskMaxMb * 1024 * 1024);
+                    logger.info("Embedding cache for {} opened with {} vectors", model, log.size());
+                } catch (IOException e) {
+                    logger.warn("Embedding disk cache unavailable for {}: {}", model, e.getMessage());
+                }
+                // A null entry remembers the failure so we don't retry on every call.
+                diskLogs.put(model, log);
+            }
+            return log;
+        }
+    }
+
+    private Path resolveRoot() {
+        if (cacheDir != null && !cacheDir.isBlank()) {
+            return Paths.get(cacheDir.trim()).toAbsolutePath().normalize();
+        }
+        return Paths.get(pdfService.getPdfDirectory()).toAbsolutePath().normalize().resolveSibling("embedding_cache");
+    }
+
+    private static byte[] digest(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * One model's log file. Offsets are kept in an {@link OffsetTable} keyed by the first eight
+     * digest bytes; reads check the full digest stored in the record. Once the file grows past
+     * {@code maxBytes} it is compacted to its newest records, at most half the cap.
+     */
+    private static final class DiskLog {
+        private static final int HEADER_BYTES = DIGEST_BYTES + Integer.BYTES;
+
+        private final Path file;
+        private final long maxBytes;
+        // Positional reads share the channel; appends and compaction replace state under the write lock.
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private FileChannel channel;
+        private OffsetTable offsets;
+        private long end;
+
+        private DiskLog(Path file, long maxBytes) throws IOException {
+            this.file = file;
+            this.maxBytes = Math.max(HEADER_BYTES, maxBytes);
+            this.channel = open(file);
+            scan();
+            if (end > this.maxBytes) {
+                compact();
+            }
+        }
+
+        private static FileChannel open(Path file) throws IOException {
+            return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        private void scan() throws IOException {
+            OffsetTable table = new OffsetTable();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long position = 0;
+            long size = channel.size();
+            while (position + HEADER_BYTES <= size) {
+                header.clear();
+                readFully(header, position);
+                int dimension = header.getInt(DIGEST_BYTES);
+                long recordEnd = position + HEADER_BYTES + (long) dimension * Float.BYTES;
+                if (dimension <= 0 || recordEnd > size) {
+                    break;
+                }
+                table.put(header.getLong(0), position);
+                position = recordEnd;
+            }
+            if (position < size) {
+                // Drop a torn trailing record left by a crash mid-append.
+                channel.truncate(position);
+            }
+            offsets = table;
+            end = position;
+        }
+
+        private int size() {
+            lock.readLock().lock();
+            try {
+                return offsets.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private long bytes() {
+            lock.readLock().lock();
+            try {
+                return end;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private float[] read(byte[] digest) {
+            lock.readLock().lock();
+            try {
+                long position = offsets.get(prefix(digest));
+                if (position < 0) {
+                    return null;
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(header, position);
+                if (!Arrays.equals(header.array(), 0, DIGEST_BYTES, digest, 0, DIGEST_BYTES)) {
+                    return null;
+                }
+                int dimension = header.getInt(DIGEST_BYTES);
+                ByteBuffer body = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(body, position + HEADER_BYTES);
+                body.flip();
+                float[] vector = new float[dimension];
+                body.asFloatBuffer().get(vector);
+                return vector;
+            } catch (IOException e) {
+                logger.warn("Embedding cache read failed: {}", e.getMessage());
+                return null;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void append(byte[] digest, float[] vector) {
+            ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + vector.length * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            record.put(digest).putInt(vector.length);
+            for (float value : vector) {
+                record.putFloat(value);
+            }
+            record.flip();
+            lock.writeLock().lock();
+            try {
+                long key = prefix(digest);
+                if (offsets.get(key) >= 0) {
+                    return;
+                }
+                long position = end;
+                while (record.hasRemaining()) {
+                    position += channel.write(record, position);
+                }
+                offsets.put(key, end);
+                end = position;
+                if (end > maxBytes) {
+                    compact();
+                }
+            } catch (IOException e) {
+                logger.warn("Embedding cache write failed: {}", e.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Rewrites the log keeping the newest records that fit in half of {@code maxBytes}, then
+         * swaps it in with an atomic rename. Caller holds the write lock (or is the constructor).
+         */
+        private void compact() throws IOException {
+            long keepBytes = maxBytes / 2;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long from = 0;
+            while (from < end && end - from > keepBytes) {
+                header.clear();
+                readFully(header, from);
+                from += HEADER_BYTES + (long) header.getInt(DIGEST_BYTES) * Float.BYTES;
+            }
+            Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long copied = 0;
+                while (copied < end - from) {
+                    copied += channel.transferTo(from + copied, end - from - copied, out);
+                }
+                out.force(true);
+            }
+            long before = end;
+            channel.close();
+            try {
+                Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // Reopens the old file if the rename failed.
+                channel = open(file);
+                scan();
+            }
+            logger.info("Embedding cache {} compacted from {} to {} bytes ({} vectors)",
+                    file.getFileName(), before, end, offsets.size());
+        }
+
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new IOException("Unexpected end of embedding cache file");
+                }
+            }
+        }
+
+        private static long prefix(byte[] digest) {
+            return ByteBuffer.wrap(digest, 0, Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        }
+
+        private void close() {
+            lock.writeLock().lock();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Closing embedding cache failed: {}", e.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Open-addressing map from a digest prefix to a file offset, two longs per slot instead of
+     * a boxed entry with a hex string key. Digests are uniformly distributed, so the prefix is
+     * used as its own hash. Not thread-safe; guarded by the owning log's lock.
+     */
+    static final class OffsetTable {
+        private long[] keys = new long[1024];
+        private long[] positions = emptyPositions(1024);
+        private int size;
+
+        long get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = (int) (key ^ (key >>> 32)) & mask; ; slot = (slot + 1) & mask) {
+                if (positions[slot] < 0) {
+                    return -1;
+                }
+                if (keys[slot] == key) {
+                    return positions[slot];
+                }
+            }
+        }
+
+        void put(long key, long position) {
+            if ((size + 1) * 4L > keys.length * 3L) {
+                grow();
+            }
+            if (insert(keys, positions, key, position)) {
+                size++;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] newKeys = new long[keys.length * 2];
+            long[] newPositions = emptyPositions(newKeys.length);
+            for (int i = 0; i < keys.length; i++) {
+                if (positions[i] >= 0) {
+                    insert(newKeys, newPositions, keys[i], positions[i]);
+                }
+            }
+            keys = newKeys;
+            positions = newPositions;
+        }
+
+        private static boolean insert(long[] keys, long[] positions, long key, long position) {
+            int mask = keys.length - 1;
+            for (int slot = (int) (key ^ (key >>> 32)) & mask; ; slot = (slot + 1) & mask) {
+                if (positions[slot] < 0) {
+                    keys[slot] = key;
+                    positions[slot] = position;
+                    return true;
+                }
+                if (keys[slot] == key) {
+                    positions[slot] = position;
+                    return false;
+                }
+            }
+        }
+
+        private static long[] emptyPositions(int length) {
+            long[] positions = new long[length];
+            Arrays.fill(positions, -1L);
+            return positions;
+        }
+    }
+}
@@ -2,23 +2,39 @@ package com.example.pdfchatbot.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import jakarta.annotation.PostConstruct;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 @Service
 public class EmbeddingService {
-    private final WebClient webClient;
+    private WebClient webClient;
     private final ObjectMapper objectMapper;
 
+    @Autowired
+    private EmbeddingCache embeddingCache;
+
+    @Autowired
+    private OutboundConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private OutboundHttpClients httpClients;
+
+    private final SingleFlight<String, float[]> queryFlights = new SingleFlight<>();
+
     @Value("${embedding.api.key:}")
     private String embeddingApiKey;
 
@@ -34,17 +50,29 @@ public class EmbeddingService {
     @Value("${llm.api.key:}")
     private String llmApiKey;
 
+    @Value("${embedding.batch.enabled:true}")
+    private boolean batchingEnabled;
+
+    @Value("${embedding.batch.windowMs:3}")
+    private long batchWindowMs;
+
+    @Value("${embedding.batch.maxItems:32}")
+    private int batchMaxItems;
+
+    private MicroBatcher<String, float[]> queryBatcher;
+
     public EmbeddingService() {
-        ExchangeStrategies strategies = ExchangeStrategies.builder()
-                .codecs(config -> config.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
-                .build();
-        this.webClient = WebClient.builder()
-                .exchangeStrategies(strategies)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
         this.objectMapper = new ObjectMapper();
     }
 
+    @PostConstruct
+    public void initializeClient() {
+        this.webClient = httpClients.webClient(OutboundConcurrencyLimiter.EMBEDDING, embeddingApiUrl, 10 * 1024 * 1024);
+        if (batchingEnabled) {
+            this.queryBatcher = new MicroBatcher<>("embedding-batch", batchWindowMs, batchMaxItems, this::requestEmbeddings);
+        }
+    }
+
     public List<Double> embedText(String text) {
         List<List<Double>> embeddings = embedTexts(List.of(text));
         if (embeddings.isEmpty()) {
@@ -53,51 +81,188 @@ public class EmbeddingService {
         return embeddings.get(0);
     }
 
+    /**
+     * Embeds texts in batches of {@code batchSize} and returns float32 vectors in input order.
+     * Vectors found in {@link EmbeddingCache} are not requested again, and duplicate inputs
+     * are sent once. A single uncached text - the query path - joins an identical request
+     * already in flight rather than sending its own. Returned arrays are owned by the caller.
+     */
+    public List<float[]> embedVectors(List<String> texts, int batchSize) {
+        return concurrencyLimiter.call(OutboundConcurrencyLimiter.EMBEDDING, () -> embedVectorsReactive(texts, batchSize).block());
+    }
+
+    public Mono<List<float[]>> embedVectorsReactive(List<String> texts, int batchSize) {
+        float[][] results = new float[texts.size()][];
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        if (!embeddingCache.isEnabled()) {
+            for (int i = 0; i < texts.size(); i++) {
+                missing.computeIfAbsent(texts.get(i), k -> new ArrayList<>()).add(i);
+            }
+            return embedMissing(results, missing, batchSize);
+        }
+        // A cache lookup can read the disk tier, so it runs off the event loop.
+        return Mono.fromCallable(() -> {
+                    for (int i = 0; i < texts.size(); i++) {
+                        String text = texts.get(i);
+                        float[] cached = embeddingCache.get(embeddingModel, text);
+                        if (cached != null) {
+                            results[i] = cached;
+                        } else {
+                            missing.computeIfAbsent(text, k -> new ArrayList<>()).add(i);
+                        }
+                    }
+                    return missing;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(pending -> embedMissing(results, pending, batchSize));
+    }
+
+    private Mono<List<float[]>> embedMissing(float[][] results, Map<String, List<Integer>> missing, int batchSize) {
+        if (missing.isEmpty()) {
+            return Mono.just(Arrays.asList(results));
+        }
+
+        List<String> pending = new ArrayList<>(missing.keySet());
+        if (pending.size() == 1) {
+            String text = pending.get(0);
+            return queryFlights.run(embeddingModel + "\u0000" + text, () -> requestEmbedding(text))
+                    .map(vector -> {
+                        // The vector may be shared with coalesced callers, so each slot gets its own copy.
+                        for (int slot : missing.get(text)) {
+                            results[slot] = vector.clone();
+                        }
+                        return Arrays.asList(results);
+                    });
+        }
+
+        List<List<String>> batches = new ArrayList<>();
+        int step = Math.max(1, batchSize);
+        for (int start = 0; start < pending.size(); start += step) {
+            batches.add(pending.subList(start, Math.min(start + step, pending.size())));
+        }
+
+        return Flux.fromIterable(batches)
+                .concatMap(batch -> requestEmbeddings(batch).doOnNext(embeddings -> {
+                    if (embeddings.size() != batch.size()) {
+                        throw new IllegalStateException("Embedding API returned " + embeddings.size() + " vectors for " + batch.size() + " inputs");
+                    }
+                    for (int j = 0; j < batch.size(); j++) {
+                        String text = batch.get(j);
+                        float[] vector = embeddings.get(j);
+                        embeddingCache.put(embeddingModel, text, vector);
+                        List<Integer> slots = missing.get(text);
+                        for (int k = 0; k < slots.size(); k++) {
+                            results[slots.get(k)] = k == 0 ? vector : vector.clone();
+                        }
+                    }
+                }))
+                .then(Mono.fromSupplier(() -> Arrays.asList(results)));
+    }
+
     public List<List<Double>> embedTexts(List<String> texts) {
+        List<float[]> vectors = embedVectors(texts, Math.max(1, texts.size()));
+        List<List<Double>> embeddings = new ArrayList<>(vectors.size());
+        for (float[] vector : vectors) {
+            List<Double> values = new ArrayList<>(vector.length);
+            for (float value : vector) {
+                values.add((double) value);
+            }
+            embeddings.add(values);
+        }
+        return embeddings;
+    }
+
+    public Map<String, Object> getCacheStats() {
+        return embeddingCache.getStats();
+    }
+
+    public Map<String, Object> getCoalescingStats() {
+        return queryFlights.getStats();
+    }
+
+    public Map<String, Object> getBatchingStats() {
+        return queryBatcher == null ? Map.of("enabled", false) : queryBatcher.getStats();
+    }
+
+    /**
+     * Embeds one query text. With batching on, texts from concurrent requests that arrive
+     * within {@code embedding.batch.windowMs} share one API call.
+     */
+    private Mono<float[]> requestEmbedding(String text) {
+        Mono<float[]> vector;
+        if (queryBatcher != null) {
+            vector = queryBatcher.submit(text);
+        } else {
+            vector = requestEmbeddings(List.of(text)).map(embeddings -> {
+                if (embeddings.size() != 1) {
+                    throw new IllegalStateException("Embedding API returned " + embeddings.size() + " vectors for 1 input");
+                }
+                return embeddings.get(0);
+            });
+        }
+        return vector.doOnNext(embedding -> embeddingCache.put(embeddingModel, text, embedding));
+    }
+
+    private Mono<List<float[]>> requestEmbeddings(List<String> texts) {
         if (!embeddingEnabled) {
-            throw new IllegalStateException("Embeddings are disabled. Set embedding.enabled=true to enable embeddings.");
+            return Mono.error(new IllegalStateException("Embeddings are disabled. Set embedding.enabled=true to enable embeddings."));
         }
 
         String apiKeyValue = resolveApiKey();
         if (apiKeyValue.isEmpty()) {
-            throw new IllegalStateException("Embedding API key is missing. Set embedding.api.key or LLM_API_KEY.");
+            return Mono.error(new IllegalStateException("Embedding API key is missing. Set embedding.api.key or LLM_API_KEY."));
         }
 
-        try {
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", embeddingModel);
-            requestBody.put("input", texts);
-
-            String response = webClient.post()
-                    .uri(embeddingApiUrl)
-                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKeyValue)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", embeddingModel);
+        requestBody.put("input", texts);
 
+        return webClient.post()
+                .uri(embeddingApiUrl)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKeyValue)
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(response -> parseEmbeddings(response, texts.size()))
+                .onErrorMap(e -> new RuntimeException("Error generating embeddings: " + e.getMessage(), e));
+    }
+
+    private List<float[]> parseEmbeddings(String response, int expected) {
+        try {
             JsonNode jsonResponse = objectMapper.readTree(response);
             JsonNode data = jsonResponse.get("data");
             if (data == null || !data.isArray()) {
                 return List.of();
             }
 
-            List<List<Double>> embeddings = new ArrayList<>();
+            List<float[]> embeddings = new ArrayList<>();
+            List<Integer> order = new ArrayList<>();
             for (JsonNode item : data) {
                 JsonNode embedding = item.get("embedding");
                 if (embedding == null || !embedding.isArray()) {
                     continue;
                 }
-                List<Double> vector = new ArrayList<>(embedding.size());
-                for (JsonNode value : embedding) {
-                    vector.add(value.asDouble());
+                float[] vector = new float[embedding.size()];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = (float) embedding.get(i).asDouble();
                 }
                 embeddings.add(vector);
+                order.add(item.path("index").asInt(order.size()));
             }
 
-            return embeddings;
+            // The API tags each vector with its input position; keep results in input order.
+            List<float[]> ordered = new ArrayList<>(embeddings);
+            if (ordered.size() == expected) {
+                for (int i = 0; i < embeddings.size(); i++) {
+                    int index = order.get(i);
+                    if (index >= 0 && index < ordered.size()) {
+                        ordered.set(index, embeddings.get(i));
+                    }
+                }
+            }
+            return ordered;
         } catch (Exception e) {
-            throw new RuntimeException("Error generating embeddings: " + e.getMessage(), e);
+            throw new RuntimeException("Error parsing embeddings response: " + e.getMessage(), e);
         }
     }
 
@@ -0,0 +1,390 @@
+package com.example.pdfchatbot.service;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Hierarchical Navigable Small World graph over L2-normalized float vectors.
+ * Similarity is the inner product, which matches the sidecar's IndexFlatIP scores.
+ * Not thread-safe for writers: build it fully, then share it read-only.
+ */
+public class HnswIndex {
+    private static final int GRAPH_FORMAT_VERSION = 1;
+
+    private final int dimension;
+    private final int maxConnections;
+    private final int maxConnectionsLayer0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    private float[][] vectors;
+    private int[][][] links;
+    private int[] linkCounts0;
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int dimension, int maxConnections, int efConstruction, int expectedSize) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension must be positive");
+        }
+        this.dimension = dimension;
+        this.maxConnections = Math.max(2, maxConnections);
+        this.maxConnectionsLayer0 = this.maxConnections * 2;
+        this.efConstruction = Math.max(this.maxConnections, efConstruction);
+        this.levelMultiplier = 1.0 / Math.log(this.maxConnections);
+        this.random = new SplittableRandom(42);
+        int capacity = Math.max(16, expectedSize);
+        this.vectors = new float[capacity][];
+        this.links = new int[capacity][][];
+        this.linkCounts0 = new int[capacity];
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a vector and returns its id. Ids are assigned sequentially from zero.
+     * The vector is expected to be L2-normalized already.
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+        }
+        int id = size;
+        ensureCapacity(id + 1);
+        int level = randomLevel();
+        vectors[id] = vector;
+        int[][] nodeLinks = new int[level + 1][];
+        nodeLinks[0] = new int[maxConnectionsLayer0];
+        for (int l = 1; l <= level; l++) {
+            nodeLinks[l] = new int[maxConnections + 1];
+        }
+        links[id] = nodeLinks;
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return id;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(vector, current, efConstruction, l);
+            int limit = l == 0 ? maxConnectionsLayer0 : maxConnections;
+            List<Candidate> selected = selectNeighbors(candidates, limit);
+            for (Candidate neighbor : selected) {
+                appendLink(id, l, neighbor.id);
+                connectBack(neighbor.id, id, l);
+            }
+            current = candidates.get(0).id;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = id;
+        }
+        return id;
+    }
+
+    /**
+     * Returns up to {@code k} nearest ids ordered by descending similarity.
+     */
+    public List<Candidate> search(float[] query, int k, int ef) {
+        if (entryPoint < 0 || k <= 0) {
+            return List.of();
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, current, l);
+        }
+        List<Candidate> found = searchLayer(query, current, Math.max(ef, k), 0);
+        return found.size() > k ? new ArrayList<>(found.subList(0, k)) : found;
+    }
+
+    /**
+     * Writes the graph topology (not the vectors) so it can be reopened without rebuilding.
+     */
+    public void writeGraph(DataOutput out) throws IOException {
+        out.writeInt(GRAPH_FORMAT_VERSION);
+        out.writeInt(dimension);
+        out.writeInt(maxConnections);
+        out.writeInt(efConstruction);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int node = 0; node < size; node++) {
+            int levels = links[node].length;
+            out.writeInt(levels);
+            for (int l = 0; l < levels; l++) {
+                int count = linkCount(node, l);
+                out.writeInt(count);
+                int[] row = links[node][l];
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(row[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores a graph written by {@link #writeGraph} over the given vectors, whose ids
+     * must match the ones used when the graph was built.
+     */
+    public static HnswIndex readGraph(ByteBuffer in, float[][] vectors) {
+        int version = in.getInt();
+        if (version != GRAPH_FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported HNSW graph format version " + version);
+        }
+        int dimension = in.getInt();
+        int maxConnections = in.getInt();
+        int efConstruction = in.getInt();
+        int size = in.getInt();
+        if (size != vectors.length) {
+            throw new IllegalStateException("HNSW graph has " + size + " nodes but " + vectors.length + " vectors were supplied");
+        }
+        HnswIndex index = new HnswIndex(dimension, maxConnections, efConstruction, size);
+        index.entryPoint = in.getInt();
+        index.maxLevel = in.getInt();
+        for (int node = 0; node < size; node++) {
+            int levels = in.getInt();
+            int[][] nodeLinks = new int[levels][];
+            nodeLinks[0] = new int[index.maxConnectionsLayer0];
+            for (int l = 1; l < levels; l++) {
+                nodeLinks[l] = new int[index.maxConnections + 1];
+            }
+            index.links[node] = nodeLinks;
+            index.vectors[node] = vectors[node];
+            for (int l = 0; l < levels; l++) {
+                int count = in.getInt();
+                int[] row = nodeLinks[l];
+                for (int i = 0; i < count; i++) {
+                    row[i] = in.getInt();
+                }
+                index.setLinkCount(node, l, count);
+            }
+        }
+        index.size = size;
+        return index;
+    }
+
+    public static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inv;
+        }
+        return vector;
+    }
+
+    private int randomLevel() {
+        double r = random.nextDouble();
+        return (int) (-Math.log(Math.max(r, 1e-12)) * levelMultiplier);
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float best = dot(query, vectors[current]);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbors = links[current][level];
+            int count = linkCount(current, level);
+            for (int i = 0; i < count; i++) {
+                int candidate = neighbors[i];
+                float score = dot(query, vectors[candidate]);
+                if (score > best) {
+                    best = score;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one layer; returns candidates sorted by descending similarity.
+     */
+    private List<Candidate> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.score).reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.score));
+
+        Candidate first = new Candidate(start, dot(query, vectors[start]));
+        visited.set(start);
+        frontier.add(first);
+        results.add(first);
+
+        while (!frontier.isEmpty()) {
+            Candidate closest = frontier.poll();
+            if (results.size() >= ef && closest.score < results.peek().score) {
+                break;
+            }
+            int[] neighbors = links[closest.id][level];
+            int count = linkCount(closest.id, level);
+            for (int i = 0; i < count; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float score = dot(query, vectors[neighbor]);
+                if (results.size() < ef || score > results.peek().score) {
+                    Candidate candidate = new Candidate(neighbor, score);
+                    frontier.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble((Candidate c) -> c.score).reversed());
+        return sorted;
+    }
+
+    /**
+     * Neighbour selection heuristic from the HNSW paper: keep a candidate only if it is
+     * closer to the base node than to every neighbour already kept, then top up with
+     * the best of the discarded ones so sparse regions stay connected.
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> candidates, int limit) {
+        if (candidates.size() <= limit) {
+            return candidates;
+        }
+        List<Candidate> selected = new ArrayList<>(limit);
+        List<Candidate> discarded = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= limit) {
+                break;
+            }
+            boolean keep = true;
+            for (Candidate chosen : selected) {
+                if (dot(vectors[candidate.id], vectors[chosen.id]) > candidate.score) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected.add(candidate);
+            } else {
+                discarded.add(candidate);
+            }
+        }
+        for (int i = 0; i < discarded.size() && selected.size() < limit; i++) {
+            selected.add(discarded.get(i));
+        }
+        return selected;
+    }
+
+    private void connectBack(int node, int newNeighbor, int level) {
+        int limit = level == 0 ? maxConnectionsLayer0 : maxConnections;
+        int count = linkCount(node, level);
+        if (count < limit) {
+            appendLink(node, level, newNeighbor);
+            return;
+        }
+        // Over capacity: swap out the weakest existing link if the new one is stronger.
+        int[] current = links[node][level];
+        int weakest = -1;
+        float weakestScore = dot(vectors[node], vectors[newNeighbor]);
+        for (int i = 0; i < count; i++) {
+            float score = dot(vectors[node], vectors[current[i]]);
+            if (score < weakestScore) {
+                weakestScore = score;
+                weakest = i;
+            }
+        }
+        if (weakest >= 0) {
+            current[weakest] = newNeighbor;
+        }
+    }
+
+    private void appendLink(int node, int level, int neighbor) {
+        int count = linkCount(node, level);
+        links[node][level][count] = neighbor;
+        setLinkCount(node, level, count + 1);
+    }
+
+    // Layer 0 counts live in a flat array; upper layers store the count in the last slot.
+    private int linkCount(int node, int level) {
+        if (level == 0) {
+            return linkCounts0[node];
+        }
+        int[] row = links[node][level];
+        return row[row.length - 1];
+    }
+
+    private void setLinkCount(int node, int level, int count) {
+        if (level == 0) {
+            linkCounts0[node] = count;
+        } else {
+            int[] row = links[node][level];
+            row[row.length - 1] = count;
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= vectors.length) {
+            return;
+        }
+        int capacity = Math.max(required, vectors.length + (vectors.length >> 1));
+        vectors = Arrays.copyOf(vectors, capacity);
+        links = Arrays.copyOf(links, capacity);
+        linkCounts0 = Arrays.copyOf(linkCounts0, capacity);
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    public static final class Candidate {
+        private final int id;
+        private final float score;
+
+        Candidate(int id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+}
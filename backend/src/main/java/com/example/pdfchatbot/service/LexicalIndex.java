@@ -0,0 +1,81 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.RetrievalResult;
+import com.example.pdfchatbot.model.RetrievalResult.RetrievalMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds and queries the {@link Bm25Index} over the PDF chunks. Rebuilt on every reload next to
+ * the vector index and published with it by {@link SimilaritySearchService}; queries are
+ * answered in-process, so lexical retrieval keeps working when the vector sidecar or the
+ * embeddings API does not.
+ */
+@Service
+public class LexicalIndex {
+    private static final Logger logger = LoggerFactory.getLogger(LexicalIndex.class);
+
+    @Value("${rag.bm25.k1:1.2}")
+    private float k1;
+
+    @Value("${rag.bm25.b:0.75}")
+    private float b;
+
+    public Bm25Index.Builder newBuilder() {
+        return Bm25Index.builder(k1, b);
+    }
+
+    /**
+     * Indexes {@code chunks} in id order.
+     */
+    public Bm25Index build(List<String> chunks) {
+        long start = System.currentTimeMillis();
+        Bm25Index.Builder builder = newBuilder();
+        for (String chunk : chunks) {
+            builder.add(chunk);
+        }
+        return build(builder, chunks, start);
+    }
+
+    /**
+     * Finishes a builder that was fed {@code chunks} as they streamed in, starting at {@code startMillis}.
+     */
+    public Bm25Index build(Bm25Index.Builder builder, List<String> chunks, long startMillis) {
+        Bm25Index index = builder.build(chunks);
+        logger.info("BM25 index ready: documents={} terms={} postingsBytes={} took={}ms",
+                index.size(), index.termCount(), index.postingsBytes(), System.currentTimeMillis() - startMillis);
+        return index;
+    }
+
+    public RetrievalResult query(Bm25Index index, String question, int topK) {
+        if (index == null || question == null || question.isBlank()) {
+            return new RetrievalResult(List.of(), List.of(), RetrievalMethod.NONE);
+        }
+        List<Bm25Index.Hit> hits = index.search(question, topK);
+        if (hits.isEmpty()) {
+            return new RetrievalResult(List.of(), List.of(), RetrievalMethod.NONE);
+        }
+        List<String> documents = new ArrayList<>(hits.size());
+        List<Double> scores = new ArrayList<>(hits.size());
+        for (Bm25Index.Hit hit : hits) {
+            documents.add(index.document(hit.getId()));
+            scores.add((double) hit.getScore());
+        }
+        return new RetrievalResult(documents, scores, RetrievalMethod.BM25);
+    }
+
+    public Map<String, Object> getStats(Bm25Index index) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("documents", index == null ? 0 : index.size());
+        stats.put("terms", index == null ? 0 : index.termCount());
+        stats.put("postingsBytes", index == null ? 0 : index.postingsBytes());
+        return stats;
+    }
+}
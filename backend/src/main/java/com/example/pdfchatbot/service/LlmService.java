@@ -1,28 +1,49 @@
 package com.example.pdfchatbot.service;
 
 import com.example.pdfchatbot.model.QueryIntent;
+import com.example.pdfchatbot.model.RequestDeadline;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class LlmService {
     
     private static final Logger logger = LoggerFactory.getLogger(LlmService.class);
-    private final WebClient webClient;
+    private WebClient webClient;
     private final ObjectMapper objectMapper;
     
+    @Autowired
+    private OutboundConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private OutboundHttpClients httpClients;
+
+    @Autowired
+    private PromptAssembler promptAssembler;
+    
     @Value("${llm.api.key:}")
     private String apiKey;
     
@@ -34,116 +55,183 @@ public class LlmService {
     
     @Value("${llm.enabled:true}")
     private boolean enabled;
+
+    @Value("${chat.deadline.minGenerationMs:1000}")
+    private long minGenerationMs;
+
+    @Value("${llm.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${llm.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${llm.hedge.minSamples:20}")
+    private int hedgeMinSamples;
+
+    @Value("${llm.hedge.initialDelayMs:3000}")
+    private long hedgeInitialDelayMs;
+
+    @Value("${llm.hedge.minDelayMs:500}")
+    private long hedgeMinDelayMs;
+
+    @Value("${llm.hedge.maxRatio:0.1}")
+    private double hedgeMaxRatio;
+
+    @Value("${llm.hedge.maxTokens:1024}")
+    private int hedgeMaxTokens;
+
+    private final LatencyWindow headerLatencies = new LatencyWindow(256);
+    private final AtomicLong hedgeableRequests = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong deadlineFallbacks = new AtomicLong();
     
     public LlmService() {
-        ExchangeStrategies strategies = ExchangeStrategies.builder()
-                .codecs(config -> config.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
-                .build();
-        this.webClient = WebClient.builder()
-                .exchangeStrategies(strategies)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
         this.objectMapper = new ObjectMapper();
     }
+
+    @PostConstruct
+    public void initializeClient() {
+        this.webClient = httpClients.webClient(OutboundConcurrencyLimiter.LLM, resolveApiUrl(), 10 * 1024 * 1024);
+    }
     
     public String generateAnswer(String question,
                                  List<String> contextChunks,
                                  List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
                                  QueryIntent intent,
                                  boolean supported,
-                                 boolean allowSpeculation) {
+                                 boolean allowSpeculation,
+                                 RequestDeadline deadline) {
+        return concurrencyLimiter.call(OutboundConcurrencyLimiter.LLM, () ->
+                generateAnswerReactive(question, contextChunks, history, intent, supported, allowSpeculation, deadline).block());
+    }
+
+    /**
+     * Generates the answer within what is left of {@code deadline}, falling back to the
+     * extractive answer when too little time remains or the deadline passes mid-call. With
+     * {@code llm.hedge.enabled} a second identical request is sent if the first has not
+     * received response headers within the running {@code llm.hedge.percentile} of that time;
+     * the first answer wins and the other request is cancelled. Requests allowing more than
+     * {@code llm.hedge.maxTokens} are not hedged, since their latency is dominated by output
+     * length rather than by a slow upstream.
+     */
+    public Mono<String> generateAnswerReactive(String question,
+                                               List<String> contextChunks,
+                                               List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                               QueryIntent intent,
+                                               boolean supported,
+                                               boolean allowSpeculation,
+                                               RequestDeadline deadline) {
         if (!enabled || apiKey == null || apiKey.trim().isEmpty()) {
             // Fallback to simple text extraction if LLM is not configured
-            return generateFallbackAnswer(question, contextChunks);
+            return Mono.fromSupplier(() -> generateFallbackAnswer(question, contextChunks));
         }
-        
-        try {
-            // Build the prompt with Role → Rules → Data → Task
-            StringBuilder context = new StringBuilder();
-            context.append("Role:\n");
-            context.append("- You are a helpful assistant that answers using PDF context and conversation history.\n\n");
-
-            context.append("Rules:\n");
-            context.append("- Never fabricate facts not present in the PDFs or conversation.\n");
-            context.append("- If the user asks about the conversation, use the history even if the PDFs don't mention it.\n");
-            if (!allowSpeculation) {
-                context.append("- If the question is speculative or future-oriented and not supported, say it is not in the knowledge base and provide a cautious inference if possible.\n");
-            } else {
-                context.append("- If the question is speculative, you may answer but label it as speculative.\n");
+
+        return Mono.defer(() -> {
+            long budgetMs = deadline.remainingMillis();
+            if (budgetMs < minGenerationMs) {
+                deadlineFallbacks.incrementAndGet();
+                logger.info("[llm_skipped] reason=deadline remainingMs={}", budgetMs);
+                return Mono.fromSupplier(() -> generateFallbackAnswer(question, contextChunks));
             }
-            if (!supported) {
-                context.append("- Retrieved context does not confidently support a direct answer; be explicit about limits.\n");
+            Map<String, Object> requestBody = buildRequestBody(question, contextChunks, history, intent, supported, allowSpeculation);
+            boolean hedge = hedgeEnabled && maxTokens(requestBody) <= hedgeMaxTokens;
+            Mono<String> completion = hedge ? completeHedged(requestBody) : complete(requestBody);
+            if (deadline.isBounded()) {
+                completion = completion.timeout(Duration.ofMillis(budgetMs));
             }
-            context.append("\n");
-
-            context.append("Data:\n");
-            context.append("PDF Context:\n");
-            for (int i = 0; i < contextChunks.size() && i < 5; i++) {
-                context.append("[Document ").append(i + 1).append("]\n");
-                context.append(contextChunks.get(i));
-                context.append("\n");
+            return completion;
+        }).onErrorResume(e -> {
+            if (e instanceof TimeoutException) {
+                deadlineFallbacks.incrementAndGet();
+                logger.warn("LLM call overran the request deadline; using extractive answer");
+            } else {
+                System.err.println("Error calling LLM API: " + e.getMessage());
             }
+            // Fallback to simple answer generation
+            return Mono.fromSupplier(() -> generateFallbackAnswer(question, contextChunks));
+        });
+    }
 
-            if (history != null && !history.isEmpty()) {
-                context.append("\nConversation History:\n");
-                for (com.example.pdfchatbot.service.ChatHistoryService.ChatEntry entry : history) {
-                    if (entry.getQuestion() != null && !entry.getQuestion().isBlank()) {
-                        context.append("User: ").append(entry.getQuestion().trim()).append("\n");
-                    }
-                    if (entry.getAnswer() != null && !entry.getAnswer().isBlank()) {
-                        context.append("Assistant: ").append(entry.getAnswer().trim()).append("\n");
-                    }
-                }
-            }
+    private Mono<String> complete(Map<String, Object> requestBody) {
+        return complete(requestBody, true);
+    }
 
-            context.append("\nTask:\n");
-            context.append("Answer the question below using the data above.\n");
-            context.append("Question: ").append(question).append("\n");
-            context.append("Answer:");
-
-            logger.info("[llm_prompt] {}", context.toString());
-            
-            // Build the request
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            
-            Map<String, String> systemMessage = new HashMap<>();
-            systemMessage.put("role", "system");
-            if (!allowSpeculation) {
-                systemMessage.put("content", "Answer only using the provided context. If unsupported or futuristic, say it is not in the knowledge base and provide a cautious inference if possible.");
-            } else if (intent == QueryIntent.FUTURISTIC || intent == QueryIntent.MIXED) {
-                systemMessage.put("content", "Answer using the provided context. If you speculate, clearly label it as speculative.");
-            } else {
-                systemMessage.put("content", "Answer using the provided context from PDF documents and conversation history.");
-            }
-            logger.info("[llm_system] {}", systemMessage.get("content"));
-            
-            Map<String, String> userMessage = new HashMap<>();
-            userMessage.put("role", "user");
-            userMessage.put("content", context.toString());
-            
-            List<Map<String, String>> messages = List.of(systemMessage, userMessage);
-            requestBody.put("messages", messages);
-            requestBody.put("temperature", 0.7);
-            requestBody.put("max_tokens", 500);
-            
-            // Make the API call
-            String apiKeyValue = (apiKey != null && !apiKey.isEmpty()) ? apiKey : "";
-            String apiUrlValue = (apiUrl != null && !apiUrl.isEmpty()) ? apiUrl : "https://api.openai.com/v1/chat/completions";
-            
-            if (apiKeyValue.isEmpty()) {
-                return generateFallbackAnswer(question, contextChunks);
-            }
-            
-            String response = webClient.post()
-                    .uri(apiUrlValue)
-                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKeyValue)
+    /**
+     * @param recordCancelled whether a cancellation before headers records the elapsed time as
+     *                        a lower-bound sample; off for hedges, which are cancelled because
+     *                        the primary answered, however briefly they have been running
+     */
+    private Mono<String> complete(Map<String, Object> requestBody, boolean recordCancelled) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean headers = new AtomicBoolean();
+            return webClient.post()
+                    .uri(resolveApiUrl())
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
                     .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-            
-            // Parse the response
+                    .exchangeToMono(response -> {
+                        headers.set(true);
+                        if (response.statusCode().isError()) {
+                            return response.createException().flatMap(Mono::error);
+                        }
+                        // Time to headers, unlike the whole completion, does not grow with the answer.
+                        headerLatencies.record(System.nanoTime() - start);
+                        return response.bodyToMono(String.class);
+                    })
+                    .doOnCancel(() -> {
+                        // Cancelled before headers, typically the primary losing to its hedge: its
+                        // elapsed time is a lower bound on its latency. Leaving it out would pull the
+                        // percentile, and with it the hedge delay, down whenever hedging works.
+                        if (recordCancelled && !headers.get()) {
+                            headerLatencies.record(System.nanoTime() - start);
+                        }
+                    })
+                    .map(this::parseCompletion);
+        });
+    }
+
+    private Mono<String> completeHedged(Map<String, Object> requestBody) {
+        long requests = hedgeableRequests.incrementAndGet();
+        long delayMs = hedgeDelayMs();
+        Mono<String> hedge = Mono.delay(Duration.ofMillis(delayMs)).flatMap(tick -> {
+            // Cap hedges to a share of traffic so a uniformly slow upstream is not hit twice as hard.
+            if (hedgesSent.get() >= hedgeMaxRatio * requests) {
+                return Mono.<String>empty();
+            }
+            // The hedge takes an LLM permit like any other call, and is skipped when none is free.
+            return concurrencyLimiter.tryCallReactive(OutboundConcurrencyLimiter.LLM, () -> {
+                hedgesSent.incrementAndGet();
+                logger.debug("[llm_hedge] no response after {}ms; sending a second request", delayMs);
+                return complete(requestBody, false);
+            }).doOnNext(answer -> hedgeWins.incrementAndGet());
+        });
+        return Mono.firstWithValue(complete(requestBody), hedge);
+    }
+
+    private long hedgeDelayMs() {
+        long percentileMs = headerLatencies.percentileMillis(hedgePercentile, hedgeMinSamples);
+        return percentileMs < 0 ? hedgeInitialDelayMs : Math.max(hedgeMinDelayMs, percentileMs);
+    }
+
+    private static int maxTokens(Map<String, Object> requestBody) {
+        Object value = requestBody.get("max_tokens");
+        return value instanceof Number ? ((Number) value).intValue() : Integer.MAX_VALUE;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hedgeEnabled", hedgeEnabled);
+        stats.put("hedgeDelayMs", hedgeDelayMs());
+        stats.put("hedgeableRequests", hedgeableRequests.get());
+        stats.put("hedgesSent", hedgesSent.get());
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("deadlineFallbacks", deadlineFallbacks.get());
+        return stats;
+    }
+
+    private String parseCompletion(String response) {
+        try {
             JsonNode jsonResponse = objectMapper.readTree(response);
             JsonNode choices = jsonResponse.get("choices");
             if (choices != null && choices.isArray() && choices.size() > 0) {
@@ -155,15 +243,196 @@ public class LlmService {
                     }
                 }
             }
-            
-            return "I apologize, but I couldn't generate a proper response. Please try again.";
-            
         } catch (Exception e) {
-            System.err.println("Error calling LLM API: " + e.getMessage());
-            e.printStackTrace();
-            // Fallback to simple answer generation
-            return generateFallbackAnswer(question, contextChunks);
+            throw new IllegalStateException("Unparseable LLM response: " + e.getMessage(), e);
         }
+
+        return "I apologize, but I couldn't generate a proper response. Please try again.";
+    }
+
+    /**
+     * Streams the completion as content deltas using {@code stream: true}. Falls back to the
+     * extractive answer as a single element when the LLM is unavailable, fails before the
+     * first token, or sends no token before {@code deadline}.
+     */
+    public Flux<String> streamAnswer(String question,
+                                     List<String> contextChunks,
+                                     List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                     QueryIntent intent,
+                                     boolean supported,
+                                     boolean allowSpeculation,
+                                     RequestDeadline deadline) {
+        if (!enabled || apiKey == null || apiKey.trim().isEmpty()) {
+            return Flux.just(generateFallbackAnswer(question, contextChunks));
+        }
+        long budgetMs = deadline.remainingMillis();
+        if (budgetMs < minGenerationMs) {
+            deadlineFallbacks.incrementAndGet();
+            logger.info("[llm_skipped] reason=deadline remainingMs={}", budgetMs);
+            return Flux.just(generateFallbackAnswer(question, contextChunks));
+        }
+        // Only the first token is held to the deadline; once text is flowing the stream runs on.
+        Mono<Long> firstTokenTimeout = deadline.isBounded() ? Mono.delay(Duration.ofMillis(budgetMs)) : Mono.never();
+
+        Map<String, Object> requestBody = buildRequestBody(question, contextChunks, history, intent, supported, allowSpeculation);
+        requestBody.put("stream", true);
+        AtomicBoolean emitted = new AtomicBoolean(false);
+
+        return webClient.post()
+                .uri(resolveApiUrl())
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+                .map(event -> event.data() == null ? "" : event.data().trim())
+                .takeWhile(data -> !"[DONE]".equals(data))
+                .map(this::parseStreamDelta)
+                .filter(delta -> !delta.isEmpty())
+                .timeout(firstTokenTimeout, delta -> Mono.never())
+                .doOnNext(delta -> emitted.set(true))
+                .onErrorResume(e -> {
+                    logger.warn("LLM stream failed: {}", e.getMessage());
+                    return emitted.get() ? Flux.empty() : Flux.just(generateFallbackAnswer(question, contextChunks));
+                });
+    }
+
+    private String parseStreamDelta(String data) {
+        if (data.isEmpty()) {
+            return "";
+        }
+        try {
+            JsonNode json = objectMapper.readTree(data);
+            return json.path("choices").path(0).path("delta").path("content").asText("");
+        } catch (Exception e) {
+            logger.debug("Skipping unparseable stream chunk: {}", e.getMessage());
+            return "";
+        }
+    }
+
+    private Map<String, Object> buildRequestBody(String question,
+                                                 List<String> contextChunks,
+                                                 List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                                 QueryIntent intent,
+                                                 boolean supported,
+                                                 boolean allowSpeculation) {
+        // Build the prompt with Role → Rules → Data → Task, trimmed to the token budget
+        PromptAssembler.Prompt prompt = promptAssembler.assemble(question, contextChunks, history, supported, allowSpeculation);
+
+        logger.info("[llm_prompt] {}", prompt.getText());
+        
+        // Build the request
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", model);
+        
+        Map<String, String> systemMessage = new HashMap<>();
+        systemMessage.put("role", "system");
+        if (!allowSpeculation) {
+            systemMessage.put("content", "Answer only using the provided context. If unsupported or futuristic, say it is not in the knowledge base and provide a cautious inference if possible.");
+        } else if (intent == QueryIntent.FUTURISTIC || intent == QueryIntent.MIXED) {
+            systemMessage.put("content", "Answer using the provided context. If you speculate, clearly label it as speculative.");
+        } else {
+            systemMessage.put("content", "Answer using the provided context from PDF documents and conversation history.");
+        }
+        logger.info("[llm_system] {}", systemMessage.get("content"));
+        
+        Map<String, String> userMessage = new HashMap<>();
+        userMessage.put("role", "user");
+        userMessage.put("content", prompt.getText());
+        
+        List<Map<String, String>> messages = List.of(systemMessage, userMessage);
+        requestBody.put("messages", messages);
+        requestBody.put("temperature", 0.7);
+        requestBody.put("max_tokens", 500);
+        return requestBody;
+    }
+
+    /**
+     * Folds {@code turns} into {@code previousSummary} (which may be null) and returns the new
+     * rolling summary. Blocking; called from the history summarizer, not on a request path.
+     * Without a configured LLM, or if the call fails, the summary is extractive: the questions
+     * asked and the first sentence of each answer.
+     */
+    public String summarizeConversation(String previousSummary,
+                                        List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> turns) {
+        if (!enabled || apiKey == null || apiKey.trim().isEmpty()) {
+            return generateFallbackSummary(previousSummary, turns);
+        }
+
+        StringBuilder transcript = new StringBuilder();
+        for (com.example.pdfchatbot.service.ChatHistoryService.ChatEntry entry : turns) {
+            if (entry.getQuestion() != null && !entry.getQuestion().isBlank()) {
+                transcript.append("User: ").append(entry.getQuestion().trim()).append("\n");
+            }
+            if (entry.getAnswer() != null && !entry.getAnswer().isBlank()) {
+                transcript.append("Assistant: ").append(entry.getAnswer().trim()).append("\n");
+            }
+        }
+
+        StringBuilder content = new StringBuilder();
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            content.append("Summary so far:\n").append(previousSummary.trim()).append("\n\n");
+        }
+        content.append("New turns:\n").append(transcript);
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", model);
+        requestBody.put("messages", List.of(
+                Map.of("role", "system", "content",
+                        "Update the running summary of a conversation between a user and an assistant about "
+                                + "documents. Keep facts, names, numbers and open questions the user may refer back to. "
+                                + "Reply with the summary only, at most 150 words."),
+                Map.of("role", "user", "content", content.toString())));
+        requestBody.put("temperature", 0.2);
+        requestBody.put("max_tokens", 250);
+
+        try {
+            String summary = concurrencyLimiter.call(OutboundConcurrencyLimiter.LLM, () -> webClient.post()
+                    .uri(resolveApiUrl())
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                    .bodyValue(requestBody)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .map(this::parseCompletion)
+                    .block());
+            if (summary != null && !summary.isBlank()) {
+                return summary.trim();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Summarizing conversation via LLM failed, using extractive summary: {}", e.getMessage());
+        }
+        return generateFallbackSummary(previousSummary, turns);
+    }
+
+    private String generateFallbackSummary(String previousSummary,
+                                           List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> turns) {
+        StringBuilder summary = new StringBuilder();
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            summary.append(previousSummary.trim()).append("\n");
+        }
+        for (com.example.pdfchatbot.service.ChatHistoryService.ChatEntry entry : turns) {
+            if (entry.getQuestion() == null || entry.getQuestion().isBlank()) {
+                continue;
+            }
+            summary.append("- Asked: ").append(entry.getQuestion().trim());
+            if (entry.getAnswer() != null && !entry.getAnswer().isBlank()) {
+                String[] sentences = entry.getAnswer().trim().split("(?<=[.!?])\\s+", 2);
+                summary.append(" Answer: ").append(sentences[0]);
+            }
+            summary.append("\n");
+        }
+        // Keep the newest part when the extractive summary keeps growing.
+        int max = 2000;
+        String text = summary.toString().trim();
+        if (text.length() <= max) {
+            return text;
+        }
+        int lineStart = text.indexOf('\n', text.length() - max);
+        return lineStart < 0 ? text.substring(text.length() - max) : text.substring(lineStart + 1);
+    }
+
+    private String resolveApiUrl() {
+        return (apiUrl != null && !apiUrl.isEmpty()) ? apiUrl : "https://api.openai.com/v1/chat/completions";
     }
     
     private String generateFallbackAnswer(String question, List<String> contextChunks) {
@@ -200,5 +469,37 @@ public class LlmService {
         
         return bestMatch.length() > 500 ? bestMatch.substring(0, 500) + "..." : bestMatch;
     }
-}
 
+    /**
+     * The most recent times to response headers, for the adaptive hedge delay.
+     */
+    private static final class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        private LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        /**
+         * The {@code percentile} (0-1) of the recorded latencies, or -1 with fewer than
+         * {@code minSamples} recorded.
+         */
+        synchronized long percentileMillis(double percentile, int minSamples) {
+            if (size == 0 || size < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(Math.min(1.0, Math.max(0.0, percentile)) * size) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+        }
+    }
+}
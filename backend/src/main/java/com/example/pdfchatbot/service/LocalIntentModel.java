@@ -0,0 +1,346 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.QueryIntent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process multinomial naive Bayes intent model over hashed word unigrams and bigrams.
+ * It is trained at startup from a labelled JSONL file ({@code {"question": ..., "intent": ...}})
+ * plus the log of past LLM classifications, and keeps learning from every new LLM decision.
+ * {@link QueryIntentClassifier} only escalates to the LLM when the posterior is below
+ * {@code intent.local.confidenceThreshold}.
+ * <p>
+ * Decisions are logged as hashed feature buckets ({@code {"features": [...], "intent": ...}}),
+ * not question text, by a background writer so the request path never waits on the file.
+ * The log rotates to {@code <file>.1} once it passes {@code intent.local.decisionsMaxKb}.
+ */
+@Service
+public class LocalIntentModel {
+    private static final Logger logger = LoggerFactory.getLogger(LocalIntentModel.class);
+    private static final int BUCKETS = 1 << 17;
+    private static final QueryIntent[] CLASSES = QueryIntent.values();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Autowired
+    private PdfService pdfService;
+
+    @Value("${intent.local.enabled:true}")
+    private boolean enabled;
+
+    @Value("${intent.local.trainingFile:classpath:intent_training.jsonl}")
+    private String trainingFile;
+
+    @Value("${intent.local.decisionsFile:}")
+    private String decisionsFile;
+
+    @Value("${intent.local.decisionsMaxKb:1024}")
+    private long decisionsMaxKb;
+
+    @Value("${intent.local.confidenceThreshold:0.9}")
+    private double confidenceThreshold;
+
+    @Value("${intent.local.minExamples:20}")
+    private int minExamples;
+
+    private final int[][] featureCounts = new int[CLASSES.length][BUCKETS];
+    private final long[] classFeatureTotals = new long[CLASSES.length];
+    private final int[] classDocuments = new int[CLASSES.length];
+    private final boolean[] seenBuckets = new boolean[BUCKETS];
+    private int distinctFeatures;
+    private int documents;
+
+    private final AtomicLong localDecisions = new AtomicLong();
+    private final AtomicLong escalations = new AtomicLong();
+    private final AtomicLong droppedDecisions = new AtomicLong();
+
+    // One thread appends decisions in order; when it falls behind, decisions are only learned in memory.
+    private final ThreadPoolExecutor decisionWriter = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(1024), runnable -> {
+        Thread thread = new Thread(runnable, "intent-decisions-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        int trained = 0;
+        if (trainingFile != null && !trainingFile.isBlank()) {
+            Resource resource = resourceLoader.getResource(trainingFile.trim());
+            if (resource.exists()) {
+                try (InputStream in = resource.getInputStream()) {
+                    trained += train(in);
+                } catch (IOException e) {
+                    logger.warn("Failed to read intent training file {}: {}", trainingFile, e.getMessage());
+                }
+            }
+        }
+        Path decisions = resolveDecisionsFile();
+        for (Path file : List.of(rotatedFile(decisions), decisions)) {
+            if (Files.exists(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    trained += train(in);
+                } catch (IOException e) {
+                    logger.warn("Failed to read intent decisions {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        logger.info("Local intent model trained on {} examples", trained);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        decisionWriter.shutdown();
+    }
+
+    /**
+     * Returns the local prediction if it is confident enough to skip the LLM, otherwise null.
+     */
+    public QueryIntent classifyIfConfident(String question) {
+        if (!enabled) {
+            return null;
+        }
+        Prediction prediction = predict(question);
+        if (prediction == null || prediction.confidence < confidenceThreshold) {
+            escalations.incrementAndGet();
+            return null;
+        }
+        localDecisions.incrementAndGet();
+        logger.info("[intent_classifier] question={} intent={} source=local confidence={}",
+                question, prediction.intent, String.format(Locale.ROOT, "%.3f", prediction.confidence));
+        return prediction.intent;
+    }
+
+    /**
+     * Records an LLM decision: updates the model and queues it for the decisions log.
+     */
+    public void learn(String question, QueryIntent intent) {
+        if (!enabled || question == null || intent == null) {
+            return;
+        }
+        List<Integer> features = features(question);
+        update(features, intent);
+        Map<String, Object> record = new HashMap<>();
+        record.put("features", features);
+        record.put("intent", intent.name());
+        try {
+            decisionWriter.execute(() -> appendDecision(record));
+        } catch (RejectedExecutionException e) {
+            droppedDecisions.incrementAndGet();
+        }
+    }
+
+    private void appendDecision(Map<String, Object> record) {
+        Path decisions = resolveDecisionsFile();
+        try {
+            Files.createDirectories(decisions.getParent());
+            Files.writeString(decisions, objectMapper.writeValueAsString(record) + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            if (Files.size(decisions) > Math.max(1, decisionsMaxKb) * 1024) {
+                Files.move(decisions, rotatedFile(decisions), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.debug("Could not record intent decision: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (this) {
+            stats.put("examples", documents);
+        }
+        stats.put("localDecisions", localDecisions.get());
+        stats.put("escalations", escalations.get());
+        stats.put("droppedDecisions", droppedDecisions.get());
+        return stats;
+    }
+
+    Prediction predict(String question) {
+        if (question == null || question.isBlank()) {
+            return null;
+        }
+        List<Integer> features = features(question);
+        double[] scores = new double[CLASSES.length];
+        synchronized (this) {
+            if (documents < minExamples || features.isEmpty()) {
+                return null;
+            }
+            double vocabulary = Math.max(1, distinctFeatures);
+            for (int c = 0; c < CLASSES.length; c++) {
+                // Laplace-smoothed log prior + log likelihood.
+                double score = Math.log((classDocuments[c] + 1.0) / (documents + CLASSES.length));
+                double denominator = Math.log(classFeatureTotals[c] + vocabulary);
+                for (int bucket : features) {
+                    score += Math.log(featureCounts[c][bucket] + 1.0) - denominator;
+                }
+                scores[c] = score;
+            }
+        }
+
+        int best = 0;
+        for (int c = 1; c < scores.length; c++) {
+            if (scores[c] > scores[best]) {
+                best = c;
+            }
+        }
+        double sum = 0;
+        for (double score : scores) {
+            sum += Math.exp(score - scores[best]);
+        }
+        return new Prediction(CLASSES[best], 1.0 / sum);
+    }
+
+    private int train(InputStream in) throws IOException {
+        int count = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                QueryIntent intent = parseLabel(node.path("intent").asText(null));
+                List<Integer> features = recordFeatures(node);
+                if (intent != null && !features.isEmpty()) {
+                    update(features, intent);
+                    count++;
+                }
+            } catch (IOException e) {
+                logger.debug("Skipping malformed intent training line: {}", e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Features of a training line: hashed buckets for logged decisions, or the question's
+     * features for hand-written examples (and decision logs from before buckets were stored).
+     */
+    private static List<Integer> recordFeatures(JsonNode node) {
+        JsonNode buckets = node.path("features");
+        if (buckets.isArray()) {
+            List<Integer> features = new ArrayList<>(buckets.size());
+            for (JsonNode bucket : buckets) {
+                int value = bucket.asInt(-1);
+                if (value >= 0 && value < BUCKETS) {
+                    features.add(value);
+                }
+            }
+            return features;
+        }
+        String question = node.path("question").asText(null);
+        return question == null || question.isBlank() ? List.of() : features(question);
+    }
+
+    private synchronized void update(List<Integer> features, QueryIntent intent) {
+        int c = intent.ordinal();
+        for (int bucket : features) {
+            if (!seenBuckets[bucket]) {
+                seenBuckets[bucket] = true;
+                distinctFeatures++;
+            }
+            featureCounts[c][bucket]++;
+        }
+        classFeatureTotals[c] += features.size();
+        classDocuments[c]++;
+        documents++;
+    }
+
+    static QueryIntent parseLabel(String label) {
+        if (label == null) {
+            return null;
+        }
+        String normalized = label.trim().toUpperCase(Locale.ROOT);
+        if (normalized.equals("FACT") || normalized.equals("FACTUAL")) {
+            return QueryIntent.FACT;
+        }
+        if (normalized.equals("FUTURISTIC")) {
+            return QueryIntent.FUTURISTIC;
+        }
+        if (normalized.equals("MIXED")) {
+            return QueryIntent.MIXED;
+        }
+        return null;
+    }
+
+    static List<Integer> features(String question) {
+        String[] tokens = question.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        List<Integer> features = new ArrayList<>(tokens.length * 2);
+        String previous = null;
+        for (String token : tokens) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            features.add(bucket(token));
+            if (previous != null) {
+                features.add(bucket(previous + " " + token));
+            }
+            previous = token;
+        }
+        return features;
+    }
+
+    private static int bucket(String feature) {
+        int h = feature.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 15)) & (BUCKETS - 1);
+    }
+
+    private Path resolveDecisionsFile() {
+        if (decisionsFile != null && !decisionsFile.isBlank()) {
+            return Paths.get(decisionsFile.trim()).toAbsolutePath().normalize();
+        }
+        return Paths.get(pdfService.getPdfDirectory()).toAbsolutePath().normalize().resolveSibling("intent_decisions.jsonl");
+    }
+
+    private static Path rotatedFile(Path decisions) {
+        return decisions.resolveSibling(decisions.getFileName() + ".1");
+    }
+
+    static final class Prediction {
+        private final QueryIntent intent;
+        private final double confidence;
+
+        private Prediction(QueryIntent intent, double confidence) {
+            this.intent = intent;
+            this.confidence = confidence;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.pdfchatbot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Collects items submitted by concurrent callers into one call of {@code sender}. A batch is
+ * sent {@code windowMs} after its first item arrives, or as soon as it holds
+ * {@code maxItems}. {@code sender} must return one result per item, in item order; each
+ * caller then gets its own result, or the batch's error.
+ */
+public class MicroBatcher<T, R> {
+    private static final Logger logger = LoggerFactory.getLogger(MicroBatcher.class);
+
+    private final String name;
+    private final long windowMs;
+    private final int maxItems;
+    private final Function<List<T>, Mono<List<R>>> sender;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+    private Batch<T, R> open;
+
+    public MicroBatcher(String name, long windowMs, int maxItems, Function<List<T>, Mono<List<R>>> sender) {
+        this.name = name;
+        this.windowMs = Math.max(0, windowMs);
+        this.maxItems = Math.max(1, maxItems);
+        this.sender = sender;
+    }
+
+    /**
+     * Adds {@code item} to the open batch. Cancelling the returned Mono only detaches the
+     * caller; the item is still sent with its batch.
+     */
+    public Mono<R> submit(T item) {
+        return Mono.defer(() -> {
+            CompletableFuture<R> result = new CompletableFuture<>();
+            Batch<T, R> full = null;
+            boolean first;
+            Batch<T, R> batch;
+            synchronized (this) {
+                if (open == null) {
+                    open = new Batch<>();
+                }
+                batch = open;
+                batch.items.add(item);
+                batch.results.add(result);
+                first = batch.items.size() == 1;
+                if (batch.items.size() >= maxItems) {
+                    full = batch;
+                    open = null;
+                }
+            }
+            if (full != null) {
+                send(full);
+            } else if (first) {
+                Schedulers.parallel().schedule(() -> flush(batch), windowMs, TimeUnit.MILLISECONDS);
+            }
+            return Mono.fromFuture(result, true);
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        long sent = batches.get();
+        long total = items.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("windowMs", windowMs);
+        stats.put("maxItems", maxItems);
+        stats.put("batches", sent);
+        stats.put("items", total);
+        stats.put("averageBatchSize", sent == 0 ? 0.0 : (double) total / sent);
+        return stats;
+    }
+
+    private void flush(Batch<T, R> batch) {
+        synchronized (this) {
+            if (open != batch) {
+                // Already sent because it filled up.
+                return;
+            }
+            open = null;
+        }
+        send(batch);
+    }
+
+    private void send(Batch<T, R> batch) {
+        int size = batch.items.size();
+        batches.incrementAndGet();
+        items.addAndGet(size);
+        logger.debug("[{}] sending batch of {}", name, size);
+        Mono<List<R>> call;
+        try {
+            call = sender.apply(batch.items);
+        } catch (RuntimeException e) {
+            call = Mono.error(e);
+        }
+        call.subscribe(
+                results -> {
+                    if (results == null || results.size() != size) {
+                        batch.fail(new IllegalStateException(name + " returned "
+                                + (results == null ? 0 : results.size()) + " results for " + size + " items"));
+                        return;
+                    }
+                    for (int i = 0; i < size; i++) {
+                        batch.results.get(i).complete(results.get(i));
+                    }
+                },
+                batch::fail,
+                () -> batch.fail(new IllegalStateException(name + " returned no results")));
+    }
+
+    private static final class Batch<T, R> {
+        private final List<T> items = new ArrayList<>();
+        private final List<CompletableFuture<R>> results = new ArrayList<>();
+
+        void fail(Throwable error) {
+            // complete* is a no-op for futures already completed by the success path.
+            for (CompletableFuture<R> result : results) {
+                result.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.pdfchatbot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-destination circuit breakers ({@link OutboundConcurrencyLimiter}'s names). Each breaker
+ * keeps a rolling window of call outcomes in one-second buckets and opens when, over at least
+ * {@code minimumCalls} calls, the failure rate or the share of calls slower than
+ * {@code slowCallMs} crosses its threshold. While open, {@link #tryAcquire} refuses at once so
+ * callers take their degraded path instead of queuing behind a dead dependency. After
+ * {@code openMs} up to {@code halfOpenProbes} calls are let through; if they all succeed the
+ * breaker closes, otherwise it opens again. Each admitted call carries a {@link Permit} saying
+ * whether it is one of those probes, so calls admitted earlier that finish while the breaker
+ * is half-open neither take nor free probe slots.
+ * <p>
+ * Settings are read as {@code outbound.<destination>.circuit.<name>}, defaulting to
+ * {@code outbound.circuit.<name>}.
+ */
+@Service
+public class OutboundCircuitBreakers {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundCircuitBreakers.class);
+
+    private static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    @Autowired
+    private Environment environment;
+
+    /**
+     * Asks to make one call. Returns null if the call is refused; otherwise the permit must be
+     * passed to exactly one {@link #onSuccess}, {@link #onFailure} or {@link #onCancel}.
+     */
+    public Permit tryAcquire(String destination) {
+        return breaker(destination).tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Whether a call would currently be let through, without taking a half-open probe slot.
+     * Lets callers skip work that only feeds the call.
+     */
+    public boolean isCallPermitted(String destination) {
+        return breaker(destination).isCallPermitted(System.nanoTime());
+    }
+
+    public void onSuccess(Permit permit, long elapsedNanos) {
+        permit.breaker.record(permit, System.nanoTime(), elapsedNanos, false);
+    }
+
+    public void onFailure(Permit permit, long elapsedNanos) {
+        permit.breaker.record(permit, System.nanoTime(), elapsedNanos, true);
+    }
+
+    /**
+     * The caller gave up on the call (e.g. a stage timeout or a client disconnect). Only a
+     * cancellation after at least {@code slowCallMs} says something about the dependency and
+     * counts as a failure; earlier ones are not recorded, but free a half-open probe slot.
+     */
+    public void onCancel(Permit permit, long elapsedNanos) {
+        permit.breaker.cancelled(permit, System.nanoTime(), elapsedNanos);
+    }
+
+    public State state(String destination) {
+        return breaker(destination).state;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        long now = System.nanoTime();
+        breakers.forEach((destination, breaker) -> stats.put(destination, breaker.stats(now)));
+        return stats;
+    }
+
+    private Breaker breaker(String destination) {
+        return breakers.computeIfAbsent(destination, this::createBreaker);
+    }
+
+    private Breaker createBreaker(String destination) {
+        int windowSeconds = (int) Math.max(1, setting(destination, "windowMs", 10000L) / 1000);
+        return new Breaker(destination,
+                windowSeconds,
+                Math.max(1, setting(destination, "minimumCalls", 10L).intValue()),
+                setting(destination, "failureRateThreshold", 0.5),
+                TimeUnit.MILLISECONDS.toNanos(Math.max(1, setting(destination, "slowCallMs", 2000L))),
+                setting(destination, "slowCallRateThreshold", 0.8),
+                TimeUnit.MILLISECONDS.toNanos(Math.max(1, setting(destination, "openMs", 5000L))),
+                Math.max(1, setting(destination, "halfOpenProbes", 2L).intValue()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T setting(String destination, String name, T fallback) {
+        Class<T> type = (Class<T>) fallback.getClass();
+        T defaultValue = environment.getProperty("outbound.circuit." + name, type, fallback);
+        return environment.getProperty("outbound." + destination + ".circuit." + name, type, defaultValue);
+    }
+
+    /**
+     * One admitted call. {@code probeEpoch} is the half-open period the call probes, or 0 for
+     * a call admitted while the breaker was closed.
+     */
+    public static final class Permit {
+        private final Breaker breaker;
+        private final long probeEpoch;
+
+        private Permit(Breaker breaker, long probeEpoch) {
+            this.breaker = breaker;
+            this.probeEpoch = probeEpoch;
+        }
+    }
+
+    private static final class Breaker {
+        private final String destination;
+        private final int minimumCalls;
+        private final double failureRateThreshold;
+        private final long slowCallNanos;
+        private final double slowCallRateThreshold;
+        private final long openNanos;
+        private final int halfOpenProbes;
+
+        // Ring of one-second buckets; bucketEpoch says which second a slot currently holds.
+        private final long[] bucketEpoch;
+        private final int[] calls;
+        private final int[] failures;
+        private final int[] slowCalls;
+
+        private volatile State state = State.CLOSED;
+        private volatile long openUntil;
+        private final Permit closedPermit = new Permit(this, 0);
+        // Incremented on every move to half-open; probes carry the value they were admitted under.
+        private long halfOpenEpoch;
+        private int probesInFlight;
+        private int probeSuccesses;
+        private long timesOpened;
+        private long rejected;
+
+        private Breaker(String destination, int windowSeconds, int minimumCalls, double failureRateThreshold,
+                        long slowCallNanos, double slowCallRateThreshold, long openNanos, int halfOpenProbes) {
+            this.destination = destination;
+            this.minimumCalls = minimumCalls;
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallNanos = slowCallNanos;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.openNanos = openNanos;
+            this.halfOpenProbes = halfOpenProbes;
+            this.bucketEpoch = new long[windowSeconds];
+            this.calls = new int[windowSeconds];
+            this.failures = new int[windowSeconds];
+            this.slowCalls = new int[windowSeconds];
+        }
+
+        boolean isCallPermitted(long now) {
+            State current = state;
+            if (current == State.CLOSED) {
+                return true;
+            }
+            if (current == State.OPEN) {
+                return now - openUntil >= 0;
+            }
+            synchronized (this) {
+                return probesInFlight < halfOpenProbes;
+            }
+        }
+
+        Permit tryAcquire(long now) {
+            // Fast path: no lock while closed, or while open and still cooling down.
+            State current = state;
+            if (current == State.CLOSED) {
+                return closedPermit;
+            }
+            if (current == State.OPEN && now - openUntil < 0) {
+                synchronized (this) {
+                    rejected++;
+                }
+                return null;
+            }
+            synchronized (this) {
+                if (state == State.OPEN && now - openUntil >= 0) {
+                    state = State.HALF_OPEN;
+                    halfOpenEpoch++;
+                    probesInFlight = 0;
+                    probeSuccesses = 0;
+                    logger.info("[circuit] {} half-open; probing with up to {} calls", destination, halfOpenProbes);
+                }
+                if (state == State.CLOSED) {
+                    return closedPermit;
+                }
+                if (state == State.HALF_OPEN && probesInFlight < halfOpenProbes) {
+                    probesInFlight++;
+                    return new Permit(this, halfOpenEpoch);
+                }
+                rejected++;
+                return null;
+            }
+        }
+
+        private boolean isCurrentProbe(Permit permit) {
+            return state == State.HALF_OPEN && permit.probeEpoch == halfOpenEpoch;
+        }
+
+        synchronized void record(Permit permit, long now, long elapsedNanos, boolean failed) {
+            boolean slow = elapsedNanos >= slowCallNanos;
+            if (isCurrentProbe(permit)) {
+                probesInFlight = Math.max(0, probesInFlight - 1);
+                if (failed || slow) {
+                    open(now, failed ? "probe failed" : "probe slow");
+                    return;
+                }
+                if (++probeSuccesses >= halfOpenProbes) {
+                    state = State.CLOSED;
+                    clearWindow();
+                    logger.info("[circuit] {} closed after {} successful probes", destination, probeSuccesses);
+                }
+                return;
+            }
+            if (state != State.CLOSED) {
+                // A call admitted before the breaker opened, or a probe from an earlier half-open
+                // period; the state it would have counted towards is gone.
+                return;
+            }
+
+            int slot = slot(now);
+            calls[slot]++;
+            if (failed) {
+                failures[slot]++;
+            }
+            if (slow) {
+                slowCalls[slot]++;
+            }
+
+            int[] totals = windowTotals(now);
+            if (totals[0] < minimumCalls) {
+                return;
+            }
+            double failureRate = (double) totals[1] / totals[0];
+            double slowRate = (double) totals[2] / totals[0];
+            if (failureRate >= failureRateThreshold) {
+                open(now, String.format("failure rate %.2f over %d calls", failureRate, totals[0]));
+            } else if (slowRate >= slowCallRateThreshold) {
+                open(now, String.format("slow-call rate %.2f over %d calls", slowRate, totals[0]));
+            }
+        }
+
+        synchronized void cancelled(Permit permit, long now, long elapsedNanos) {
+            if (elapsedNanos >= slowCallNanos) {
+                record(permit, now, elapsedNanos, true);
+            } else if (isCurrentProbe(permit)) {
+                probesInFlight = Math.max(0, probesInFlight - 1);
+            }
+        }
+
+        synchronized Map<String, Object> stats(long now) {
+            int[] totals = windowTotals(now);
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("state", state.name());
+            stats.put("windowCalls", totals[0]);
+            stats.put("windowFailures", totals[1]);
+            stats.put("windowSlowCalls", totals[2]);
+            stats.put("timesOpened", timesOpened);
+            stats.put("rejected", rejected);
+            return stats;
+        }
+
+        private void open(long now, String reason) {
+            state = State.OPEN;
+            openUntil = now + openNanos;
+            probesInFlight = 0;
+            timesOpened++;
+            clearWindow();
+            logger.warn("[circuit] {} opened for {}ms: {}", destination, TimeUnit.NANOSECONDS.toMillis(openNanos), reason);
+        }
+
+        // {calls, failures, slow calls} over the buckets still inside the window
+        private int[] windowTotals(long now) {
+            int[] totals = new int[3];
+            long second = now / BUCKET_NANOS;
+            for (int i = 0; i < bucketEpoch.length; i++) {
+                if (second - bucketEpoch[i] < bucketEpoch.length) {
+                    totals[0] += calls[i];
+                    totals[1] += failures[i];
+                    totals[2] += slowCalls[i];
+                }
+            }
+            return totals;
+        }
+
+        private int slot(long now) {
+            long second = now / BUCKET_NANOS;
+            int slot = (int) Math.floorMod(second, (long) bucketEpoch.length);
+            if (bucketEpoch[slot] != second) {
+                bucketEpoch[slot] = second;
+                calls[slot] = 0;
+                failures[slot] = 0;
+                slowCalls[slot] = 0;
+            }
+            return slot;
+        }
+
+        private void clearWindow() {
+            for (int i = 0; i < bucketEpoch.length; i++) {
+                calls[i] = 0;
+                failures[i] = 0;
+                slowCalls[i] = 0;
+            }
+        }
+    }
+}
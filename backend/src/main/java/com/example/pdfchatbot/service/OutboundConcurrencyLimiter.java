@@ -0,0 +1,83 @@
+package com.example.pdfchatbot.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bounds concurrent blocking calls per outbound destination with a fair semaphore.
+ * With virtual threads a waiting caller parks cheaply, so these limits - not the size
+ * of a thread pool - decide how much load reaches the LLM, embeddings API and sidecars.
+ * Limits come from {@code outbound.<destination>.maxConcurrent}, defaulting to
+ * {@code outbound.maxConcurrent}.
+ */
+@Service
+public class OutboundConcurrencyLimiter {
+    public static final String LLM = "llm";
+    public static final String EMBEDDING = "embedding";
+    public static final String PDF_VECTOR = "pdf-vector";
+    public static final String CATALOG_VECTOR = "catalog-vector";
+
+    private final Map<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+
+    @Autowired
+    private Environment environment;
+
+    public <T> T call(String destination, Supplier<T> call) {
+        Semaphore semaphore = semaphores.computeIfAbsent(destination, this::createSemaphore);
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for " + destination + " capacity", e);
+        }
+        try {
+            return call.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Non-blocking form for optional calls such as hedged requests: subscribes to {@code call}
+     * holding a permit only if one is free and no caller is already waiting, and otherwise
+     * completes empty. The permit is released when the call terminates or is cancelled.
+     */
+    public <T> Mono<T> tryCallReactive(String destination, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            Semaphore semaphore = semaphores.computeIfAbsent(destination, this::createSemaphore);
+            if (semaphore.hasQueuedThreads() || !semaphore.tryAcquire()) {
+                return Mono.<T>empty();
+            }
+            Mono<T> source;
+            try {
+                source = call.get();
+            } catch (RuntimeException e) {
+                semaphore.release();
+                return Mono.<T>error(e);
+            }
+            return source.doFinally(signal -> semaphore.release());
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        semaphores.forEach((destination, semaphore) -> stats.put(destination, Map.of(
+                "available", semaphore.availablePermits(),
+                "waiting", semaphore.getQueueLength())));
+        return stats;
+    }
+
+    private Semaphore createSemaphore(String destination) {
+        int defaultLimit = environment.getProperty("outbound.maxConcurrent", Integer.class, 64);
+        int limit = environment.getProperty("outbound." + destination + ".maxConcurrent", Integer.class, defaultLimit);
+        return new Semaphore(Math.max(1, limit), true);
+    }
+}
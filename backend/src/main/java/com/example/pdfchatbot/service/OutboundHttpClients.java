@@ -0,0 +1,182 @@
+package com.example.pdfchatbot.service;
+
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import jakarta.annotation.PreDestroy;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One HTTP client setup for every outbound destination ({@link OutboundConcurrencyLimiter}'s
+ * names). Each destination gets its own keep-alive connection pool, sized like its
+ * concurrency limit, plus connect and response timeouts:
+ * <ul>
+ *   <li>connect: {@code outbound.connectTimeoutMs}</li>
+ *   <li>response (longest wait for the next bytes of a response):
+ *       {@code pdf.vector.timeoutMs}, {@code catalog.vector.timeoutMs}, {@code llm.timeoutMs},
+ *       {@code embedding.timeoutMs}; callers may override it per request, as
+ *       {@link PdfVectorClient} does for indexing calls</li>
+ * </ul>
+ * HTTPS destinations negotiate HTTP/2 via ALPN and fall back to HTTP/1.1; plain-HTTP sidecars
+ * use HTTP/1.1. Pool gauges and connection counts are reported by {@link #getStats()}.
+ */
+@Service
+public class OutboundHttpClients {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundHttpClients.class);
+
+    private static final Map<String, String> TIMEOUT_PROPERTIES = Map.of(
+            OutboundConcurrencyLimiter.LLM, "llm.timeoutMs",
+            OutboundConcurrencyLimiter.EMBEDDING, "embedding.timeoutMs",
+            OutboundConcurrencyLimiter.PDF_VECTOR, "pdf.vector.timeoutMs",
+            OutboundConcurrencyLimiter.CATALOG_VECTOR, "catalog.vector.timeoutMs");
+    private static final Map<String, Long> DEFAULT_TIMEOUTS = Map.of(
+            OutboundConcurrencyLimiter.LLM, 60000L,
+            OutboundConcurrencyLimiter.EMBEDDING, 30000L,
+            OutboundConcurrencyLimiter.PDF_VECTOR, 60000L,
+            OutboundConcurrencyLimiter.CATALOG_VECTOR, 10000L);
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${outbound.connectTimeoutMs:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${outbound.maxIdleMs:60000}")
+    private long maxIdleMs;
+
+    @Value("${outbound.pendingAcquireTimeoutMs:10000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${outbound.http2:true}")
+    private boolean http2;
+
+    private final Map<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+    private final Map<String, ConnectionPoolMetrics> pools = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> connectionsOpened = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+
+    /**
+     * A WebClient for {@code destination} that sends JSON by default and buffers responses of
+     * up to {@code maxInMemoryBytes}. {@code baseUrl} only decides whether HTTP/2 is offered;
+     * requests still pass full URIs.
+     */
+    public WebClient webClient(String destination, String baseUrl, int maxInMemoryBytes) {
+        ExchangeStrategies strategies = ExchangeStrategies.builder()
+                .codecs(config -> config.defaultCodecs().maxInMemorySize(maxInMemoryBytes))
+                .build();
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient(destination, baseUrl)))
+                .exchangeStrategies(strategies)
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .build();
+    }
+
+    public long responseTimeoutMs(String destination) {
+        String property = TIMEOUT_PROPERTIES.get(destination);
+        long fallback = DEFAULT_TIMEOUTS.getOrDefault(destination, 30000L);
+        return property == null ? fallback : environment.getProperty(property, Long.class, fallback);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        for (String destination : providers.keySet()) {
+            Map<String, Object> destinationStats = new HashMap<>();
+            destinationStats.put("maxConnections", maxConnections(destination));
+            destinationStats.put("responseTimeoutMs", responseTimeoutMs(destination));
+            destinationStats.put("connectionsOpened", counter(connectionsOpened, destination).get());
+            destinationStats.put("requests", counter(requests, destination).get());
+            int active = 0;
+            int idle = 0;
+            int pending = 0;
+            for (Map.Entry<String, ConnectionPoolMetrics> pool : pools.entrySet()) {
+                if (pool.getKey().startsWith(destination + "|")) {
+                    active += pool.getValue().acquiredSize();
+                    idle += pool.getValue().idleSize();
+                    pending += pool.getValue().pendingAcquireSize();
+                }
+            }
+            destinationStats.put("active", active);
+            destinationStats.put("idle", idle);
+            destinationStats.put("pendingAcquire", pending);
+            stats.put(destination, destinationStats);
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        providers.values().forEach(ConnectionProvider::dispose);
+    }
+
+    private HttpClient httpClient(String destination, String baseUrl) {
+        ConnectionProvider provider = providers.computeIfAbsent(destination, this::createProvider);
+        long responseTimeout = responseTimeoutMs(destination);
+        HttpClient client = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.max(1, connectTimeoutMs))
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofMillis(Math.max(1, responseTimeout)))
+                .doOnChannelInit((observer, channel, address) -> counter(connectionsOpened, destination).incrementAndGet())
+                .doOnRequest((request, connection) -> counter(requests, destination).incrementAndGet());
+        boolean offerHttp2 = http2 && baseUrl != null && baseUrl.trim().toLowerCase(Locale.ROOT).startsWith("https:");
+        if (offerHttp2) {
+            client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        logger.info("Outbound client {}: maxConnections={} connectTimeout={}ms responseTimeout={}ms http2={}",
+                destination, maxConnections(destination), connectTimeoutMs, responseTimeout, offerHttp2);
+        return client;
+    }
+
+    private ConnectionProvider createProvider(String destination) {
+        return ConnectionProvider.builder("outbound-" + destination)
+                .maxConnections(maxConnections(destination))
+                .pendingAcquireTimeout(Duration.ofMillis(Math.max(1, pendingAcquireTimeoutMs)))
+                .maxIdleTime(Duration.ofMillis(Math.max(1, maxIdleMs)))
+                .evictInBackground(Duration.ofSeconds(30))
+                .lifo()
+                .metrics(true, () -> new ConnectionProvider.MeterRegistrar() {
+                    @Override
+                    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress,
+                                                ConnectionPoolMetrics metrics) {
+                        pools.put(destination + "|" + id + "|" + remoteAddress, metrics);
+                    }
+
+                    @Override
+                    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+                        pools.remove(destination + "|" + id + "|" + remoteAddress);
+                    }
+                })
+                .build();
+    }
+
+    // Same limit as the destination's OutboundConcurrencyLimiter semaphore, so a caller that
+    // got a permit normally finds a connection too.
+    private int maxConnections(String destination) {
+        int defaultLimit = environment.getProperty("outbound.maxConcurrent", Integer.class, 64);
+        return Math.max(1, environment.getProperty("outbound." + destination + ".maxConcurrent", Integer.class, defaultLimit));
+    }
+
+    private static AtomicLong counter(Map<String, AtomicLong> counters, String destination) {
+        return counters.computeIfAbsent(destination, key -> new AtomicLong());
+    }
+}
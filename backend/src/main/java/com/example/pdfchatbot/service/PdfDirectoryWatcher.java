@@ -0,0 +1,172 @@
+package com.example.pdfchatbot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches the pdfs folder (recursively) and triggers an incremental reload once PDFs stop
+ * changing for {@code pdf.watch.debounceMs}, so files can be dropped in or removed without
+ * calling /api/reload. With the embedded engine only added or modified files are extracted
+ * and embedded; chunks of deleted files are dropped. Queries keep using the published index
+ * until the new one is swapped in.
+ * <p>
+ * A reload is not free even then: every reload writes a complete new segment, and a modified
+ * or removed file also rebuilds the whole HNSW graph from the stored vectors (added files
+ * only extend it). With the FAISS engine a reload re-embeds the entire corpus, so
+ * {@code pdf.watch.enabled=auto} (the default) only watches when the engine is embedded.
+ */
+@Service
+public class PdfDirectoryWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(PdfDirectoryWatcher.class);
+
+    @Autowired
+    private PdfService pdfService;
+
+    @Autowired
+    private ReloadJobService reloadJobService;
+
+    @Value("${pdf.watch.enabled:auto}")
+    private String enabled;
+
+    @Value("${pdf.vector.engine:faiss}")
+    private String vectorEngine;
+
+    @Value("${pdf.watch.debounceMs:2000}")
+    private long debounceMs;
+
+    @Value("${catalog.enabled:false}")
+    private boolean catalogEnabled;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled() || catalogEnabled) {
+            return;
+        }
+        Path root = Paths.get(pdfService.getPdfDirectory());
+        if (!Files.isDirectory(root)) {
+            logger.info("PDF watcher disabled: {} is not a directory", root);
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerAll(root);
+        } catch (IOException e) {
+            logger.warn("PDF watcher could not be started: {}", e.getMessage());
+            return;
+        }
+        thread = new Thread(this::watchLoop, "pdf-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Watching {} for PDF changes", root);
+    }
+
+    /**
+     * {@code true}/{@code false} as configured; {@code auto} watches only with the embedded
+     * engine, where a reload re-embeds just the changed files.
+     */
+    boolean isEnabled() {
+        String mode = enabled == null ? "auto" : enabled.trim().toLowerCase(Locale.ROOT);
+        if (mode.equals("auto")) {
+            return "embedded".equalsIgnoreCase(vectorEngine == null ? "" : vectorEngine.trim());
+        }
+        return Boolean.parseBoolean(mode);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("Closing PDF watcher failed: {}", e.getMessage());
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                // Block for the first relevant event, then keep draining until the folder is quiet.
+                boolean dirty = drain(watchService.take());
+                while (true) {
+                    WatchKey key = watchService.poll(debounceMs, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        break;
+                    }
+                    dirty |= drain(key);
+                }
+                if (dirty) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down.
+        }
+    }
+
+    private boolean drain(WatchKey key) {
+        boolean relevant = false;
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                relevant = true;
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    registerAll(path);
+                } catch (IOException e) {
+                    logger.warn("Could not watch {}: {}", path, e.getMessage());
+                }
+                relevant = true;
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE
+                    || path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+                // Deletes count even without a .pdf name: a removed subfolder takes its PDFs with it.
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private void reload() {
+        logger.info("PDF folder changed; queued reindex job {}", reloadJobService.submit().getId());
+    }
+
+    private void registerAll(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path directory : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.ReloadJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming PDF ingestion in three stages joined by bounded queues:
+ * <ol>
+ *   <li>extract + chunk: each PDF is read a few pages at a time on the {@link PdfService}
+ *       extraction pool and fed through a streaming {@link TextChunkService.Chunker};</li>
+ *   <li>embed: one thread takes chunks in document order and embeds them in batches;</li>
+ *   <li>index: the calling thread hands each embedded batch to the sink.</li>
+ * </ol>
+ * A full queue blocks the stage in front of it, so memory stays bounded by the queue
+ * capacities and the chunk text of one document rather than by the size of the corpus, and
+ * embedding overlaps extraction of later documents.
+ * <p>
+ * The embed stage holds a document's chunks until the document has been read to the end, so
+ * a PDF that fails part-way is neither embedded nor appended: the sink only ever sees whole
+ * documents.
+ * <p>
+ * Extraction tasks block on their document queue, which the embed stage drains in document
+ * order, so the in-flight byte budget is granted in document order too (see
+ * {@link PdfService#submitExtractionInOrder}): the earliest unfinished document always holds
+ * its budget and can make progress.
+ */
+@Service
+public class PdfIngestPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(PdfIngestPipeline.class);
+    private static final Object END = new Object();
+
+    @Autowired
+    private PdfService pdfService;
+
+    @Autowired
+    private TextChunkService textChunkService;
+
+    @Value("${pdf.ingest.pagesPerBatch:8}")
+    private int pagesPerBatch;
+
+    @Value("${pdf.ingest.queueCapacity:4}")
+    private int queueCapacity;
+
+    @Value("${pdf.vector.batchSize:128}")
+    private int batchSize;
+
+    @FunctionalInterface
+    public interface Embedder {
+        List<float[]> embed(List<String> chunks) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Sink {
+        void accept(Batch batch) throws IOException;
+    }
+
+    /**
+     * Streams {@code files} through the pipeline. With a null {@code embedder} batches reach
+     * the sink without vectors. Batches arrive in document order and chunk order. A document
+     * that fails to extract is logged and reported in the result, and none of its chunks reach
+     * the sink; an embedding or sink failure aborts the run.
+     */
+    public Result run(List<File> files, Embedder embedder, Sink sink) throws IOException {
+        return run(files, embedder, sink, new ReloadJob("inline"));
+    }
+
+    /**
+     * As {@link #run(List, Embedder, Sink)}, reporting files, chunks and embeddings to {@code job}.
+     */
+    public Result run(List<File> files, Embedder embedder, Sink sink, ReloadJob job) throws IOException {
+        Result result = new Result(files.size());
+        if (files.isEmpty()) {
+            return result;
+        }
+        job.addFilesTotal(files.size());
+        long start = System.currentTimeMillis();
+        int capacity = Math.max(1, queueCapacity);
+        int size = Math.max(1, batchSize);
+
+        List<BlockingQueue<Object>> documentQueues = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            documentQueues.add(new ArrayBlockingQueue<>(capacity));
+        }
+        BlockingQueue<Object> indexQueue = new ArrayBlockingQueue<>(capacity);
+
+        // Submitting waits for byte budget, so it runs beside the stages that free it.
+        List<Future<?>> extractions = new CopyOnWriteArrayList<>();
+        Thread dispatchThread = new Thread(() -> dispatchExtractions(files, documentQueues, extractions, size, job),
+                "pdf-ingest-dispatch");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+
+        Thread embedThread = new Thread(() -> embedStage(documentQueues, embedder, size, indexQueue, result, job),
+                "pdf-ingest-embed");
+        embedThread.setDaemon(true);
+        embedThread.start();
+
+        try {
+            while (true) {
+                Object item = indexQueue.take();
+                if (item == END) {
+                    break;
+                }
+                if (item instanceof Failure) {
+                    Throwable cause = ((Failure) item).cause;
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+                }
+                Batch batch = (Batch) item;
+                sink.accept(batch);
+                if (embedder == null) {
+                    // Without an embedder the sink (e.g. the FAISS sidecar) does the embedding.
+                    job.addChunksEmbedded(batch.getChunks().size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing PDFs", e);
+        } finally {
+            dispatchThread.interrupt();
+            embedThread.interrupt();
+            try {
+                // Let an in-progress submit land in the list before cancelling.
+                dispatchThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            extractions.forEach(f -> f.cancel(true));
+        }
+        logger.info("PDF ingest pipeline: documents={} failed={} chunks={} took={}ms",
+                files.size(), result.failedCount(), result.totalChunks(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private void dispatchExtractions(List<File> files,
+                                     List<BlockingQueue<Object>> documentQueues,
+                                     List<Future<?>> extractions,
+                                     int size,
+                                     ReloadJob job) {
+        for (int doc = 0; doc < files.size(); doc++) {
+            File file = files.get(doc);
+            BlockingQueue<Object> queue = documentQueues.get(doc);
+            try {
+                extractions.add(pdfService.submitExtractionInOrder(file, () -> {
+                    extractDocument(file, size, queue, job);
+                    return null;
+                }));
+            } catch (InterruptedException e) {
+                // Cancelled by run().
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Could not schedule extraction of {}: {}", file, e.getMessage());
+                job.fileDone();
+                queue.offer(new Failure(e));
+            }
+        }
+    }
+
+    private void extractDocument(File file, int size, BlockingQueue<Object> queue, ReloadJob job) throws InterruptedException {
+        List<String> pending = new ArrayList<>(size);
+        List<List<String>> ready = new ArrayList<>();
+        TextChunkService.Chunker chunker = textChunkService.newChunker(chunk -> {
+            pending.add(chunk);
+            job.addChunksProduced(1);
+            if (pending.size() >= size) {
+                ready.add(new ArrayList<>(pending));
+                pending.clear();
+            }
+        });
+        try {
+            logger.info("Processing PDF: {}", file.getName());
+            pdfService.extractPages(file, pagesPerBatch, text -> {
+                chunker.accept(text);
+                for (List<String> piece : ready) {
+                    queue.put(piece);
+                }
+                ready.clear();
+            });
+            chunker.finish();
+            for (List<String> piece : ready) {
+                queue.put(piece);
+            }
+            if (!pending.isEmpty()) {
+                queue.put(new ArrayList<>(pending));
+            }
+            queue.put(END);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error reading PDF: {} - {}", file, e.getMessage());
+            queue.put(new Failure(e));
+        } finally {
+            job.fileDone();
+        }
+    }
+
+    private void embedStage(List<BlockingQueue<Object>> documentQueues,
+                            Embedder embedder,
+                            int size,
+                            BlockingQueue<Object> indexQueue,
+                            Result result,
+                            ReloadJob job) {
+        List<String> chunks = new ArrayList<>(size);
+        List<Integer> documents = new ArrayList<>(size);
+        try {
+            try {
+                for (int doc = 0; doc < documentQueues.size(); doc++) {
+                    List<String> held = takeDocument(documentQueues.get(doc));
+                    if (held == null) {
+                        result.failed[doc] = true;
+                        continue;
+                    }
+                    for (String chunk : held) {
+                        chunks.add(chunk);
+                        documents.add(doc);
+                        result.chunkCounts[doc]++;
+                        if (chunks.size() >= size) {
+                            indexQueue.put(embedBatch(embedder, chunks, documents, job));
+                            chunks = new ArrayList<>(size);
+                            documents = new ArrayList<>(size);
+                        }
+                    }
+                }
+                if (!chunks.isEmpty()) {
+                    indexQueue.put(embedBatch(embedder, chunks, documents, job));
+                }
+                indexQueue.put(END);
+            } catch (IOException | RuntimeException e) {
+                indexQueue.put(new Failure(e));
+            }
+        } catch (InterruptedException e) {
+            // Cancelled by run(); the caller has already stopped reading.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drains one document's queue up to its END marker. Returns null if extraction failed, in
+     * which case the chunks read so far are dropped.
+     */
+    private static List<String> takeDocument(BlockingQueue<Object> queue) throws InterruptedException {
+        List<String> held = new ArrayList<>();
+        while (true) {
+            Object item = queue.take();
+            if (item == END) {
+                return held;
+            }
+            if (item instanceof Failure) {
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            List<String> piece = (List<String>) item;
+            held.addAll(piece);
+        }
+    }
+
+    private Batch embedBatch(Embedder embedder, List<String> chunks, List<Integer> documents, ReloadJob job) throws IOException {
+        List<float[]> vectors = embedder == null ? null : embedder.embed(chunks);
+        if (vectors != null && vectors.size() != chunks.size()) {
+            throw new IOException("Embedding returned " + vectors.size() + " vectors for " + chunks.size() + " chunks");
+        }
+        if (vectors != null) {
+            job.addChunksEmbedded(vectors.size());
+        }
+        int[] owners = new int[documents.size()];
+        for (int i = 0; i < owners.length; i++) {
+            owners[i] = documents.get(i);
+        }
+        return new Batch(owners, chunks, vectors);
+    }
+
+    public static final class Batch {
+        private final int[] documents;
+        private final List<String> chunks;
+        private final List<float[]> vectors;
+
+        private Batch(int[] documents, List<String> chunks, List<float[]> vectors) {
+            this.documents = documents;
+            this.chunks = chunks;
+            this.vectors = vectors;
+        }
+
+        /**
+         * Index into the input file list of the document each chunk came from.
+         */
+        public int getDocument(int chunk) {
+            return documents[chunk];
+        }
+
+        public List<String> getChunks() {
+            return chunks;
+        }
+
+        public List<float[]> getVectors() {
+            return vectors;
+        }
+    }
+
+    public static final class Result {
+        private final int[] chunkCounts;
+        private final boolean[] failed;
+
+        private Result(int documents) {
+            this.chunkCounts = new int[documents];
+            this.failed = new boolean[documents];
+        }
+
+        public int getChunkCount(int document) {
+            return chunkCounts[document];
+        }
+
+        public boolean isFailed(int document) {
+            return failed[document];
+        }
+
+        public int totalChunks() {
+            int total = 0;
+            for (int count : chunkCounts) {
+                total += count;
+            }
+            return total;
+        }
+
+        public int failedCount() {
+            int count = 0;
+            for (boolean f : failed) {
+                if (f) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private static final class Failure {
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.ReloadJob;
+import com.example.pdfchatbot.model.SegmentManifest;
+import com.example.pdfchatbot.model.SegmentManifest.DocumentEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the embedded PDF index from the pdfs folder, reusing the persisted segment.
+ * Documents whose size and mtime (or, failing that, SHA-256) match the manifest keep their
+ * chunks and vectors; only new or changed files are extracted and embedded, streamed through
+ * {@link PdfIngestPipeline} straight into a new segment. When nothing changed the existing
+ * segment is mapped and returned as-is, with no embedding calls.
+ */
+@Service
+public class PdfIngestService {
+    private static final Logger logger = LoggerFactory.getLogger(PdfIngestService.class);
+
+    @Autowired
+    private PdfService pdfService;
+
+    @Autowired
+    private EmbeddedVectorIndex embeddedVectorIndex;
+
+    @Autowired
+    private PdfSegmentStore segmentStore;
+
+    @Autowired
+    private PdfIngestPipeline ingestPipeline;
+
+    @Autowired
+    private TextChunkService textChunkService;
+
+    @Value("${embedding.model:text-embedding-3-small}")
+    private String embeddingModel;
+
+    /**
+     * Synchronizes the embedded index with the pdfs folder and returns the new generation,
+     * which the caller publishes.
+     */
+    public EmbeddedVectorIndex.Generation reload() throws IOException {
+        return reload(new ReloadJob("inline"));
+    }
+
+    public EmbeddedVectorIndex.Generation reload(ReloadJob job) throws IOException {
+        long start = System.currentTimeMillis();
+        PdfSegment previous = segmentStore.openCurrent().orElse(null);
+        if (previous != null && !embeddingModel.equals(previous.getManifest().getModel())) {
+            logger.info("Persisted PDF index was built with model {}; re-embedding with {}",
+                    previous.getManifest().getModel(), embeddingModel);
+            previous = null;
+        }
+        if (previous != null && !chunkedAsConfigured(previous.getManifest())) {
+            logger.info("Persisted PDF index was chunked as {}; re-chunking as {}",
+                    previous.getManifest().getChunking(), textChunkService.describe());
+            previous = null;
+        }
+
+        Map<String, DocumentEntry> previousDocs = new HashMap<>();
+        if (previous != null) {
+            for (DocumentEntry entry : previous.getManifest().getDocuments()) {
+                previousDocs.put(entry.getPath(), entry);
+            }
+        }
+
+        List<File> files = new ArrayList<>(pdfService.getAllPdfFiles());
+        files.sort(Comparator.comparing(File::getPath));
+        Path root = Paths.get(pdfService.getPdfDirectory()).toAbsolutePath().normalize();
+
+        List<PlannedDocument> plan = new ArrayList<>(files.size());
+        boolean unchanged = previous != null && files.size() == previousDocs.size();
+        for (File file : files) {
+            String key = root.relativize(file.toPath().toAbsolutePath().normalize()).toString();
+            long size = file.length();
+            long lastModified = file.lastModified();
+            DocumentEntry old = previousDocs.get(key);
+
+            if (old != null && old.getSize() == size && old.getLastModified() == lastModified) {
+                plan.add(new PlannedDocument(file, key, size, lastModified, old.getSha256(), old));
+                continue;
+            }
+            unchanged = false;
+            String sha256 = sha256(file.toPath());
+            if (old != null && sha256.equals(old.getSha256())) {
+                plan.add(new PlannedDocument(file, key, size, lastModified, sha256, old));
+            } else {
+                plan.add(new PlannedDocument(file, key, size, lastModified, sha256, null));
+            }
+        }
+
+        if (unchanged) {
+            job.addFilesTotal(plan.size());
+            plan.forEach(doc -> job.fileDone());
+            EmbeddedVectorIndex.Generation generation = embeddedVectorIndex.generation(previous.loadIndex(), previous.chunks());
+            logger.info("Opened persisted PDF index {} ({} chunks) in {}ms",
+                    previous.getDirectory().getFileName(), previous.chunkCount(), System.currentTimeMillis() - start);
+            return generation;
+        }
+
+        List<PlannedDocument> reused = new ArrayList<>();
+        List<PlannedDocument> changed = new ArrayList<>();
+        List<File> changedFiles = new ArrayList<>();
+        int reusedChunks = 0;
+        for (PlannedDocument doc : plan) {
+            if (doc.reuse == null) {
+                changed.add(doc);
+                changedFiles.add(doc.file);
+            } else {
+                reused.add(doc);
+                reusedChunks += doc.reuse.getChunkCount();
+            }
+        }
+        // Copying in the old chunk order keeps chunk ids stable, so when files were only added
+        // the previous HNSW graph is extended instead of rebuilt.
+        reused.sort(Comparator.comparingInt(doc -> doc.reuse.getFirstChunk()));
+        job.addFilesTotal(reused.size());
+        boolean appendOnly = previous != null && reused.size() == previousDocs.size()
+                && reusedChunks == previous.chunkCount();
+
+        List<DocumentEntry> documents = new ArrayList<>();
+        IndexBuilder builder = new IndexBuilder(appendOnly ? previous.loadIndex() : null);
+        try (PdfSegmentStore.SegmentWriter writer = segmentStore.openWriter()) {
+            // Unchanged documents are copied from the previous segment first...
+            for (PlannedDocument doc : reused) {
+                int firstChunk = writer.chunkCount();
+                int from = doc.reuse.getFirstChunk();
+                for (int i = from; i < from + doc.reuse.getChunkCount(); i++) {
+                    float[] vector = previous.vector(i);
+                    writer.append(previous.chunkText(i), vector);
+                    if (!appendOnly) {
+                        builder.add(vector);
+                    }
+                }
+                documents.add(new DocumentEntry(doc.key, doc.size, doc.lastModified, doc.sha256,
+                        firstChunk, writer.chunkCount() - firstChunk));
+                job.fileDone();
+            }
+
+            // ...then new and changed ones stream through extract -> chunk -> embed -> append.
+            int streamedFrom = writer.chunkCount();
+            PdfIngestPipeline.Result streamed = ingestPipeline.run(changedFiles, embeddedVectorIndex::embedChunks, batch -> {
+                for (int i = 0; i < batch.getChunks().size(); i++) {
+                    writer.append(batch.getChunks().get(i), batch.getVectors().get(i));
+                    builder.add(batch.getVectors().get(i));
+                }
+            }, job);
+            int firstChunk = streamedFrom;
+            for (int d = 0; d < changed.size(); d++) {
+                PlannedDocument doc = changed.get(d);
+                int count = streamed.getChunkCount(d);
+                // A document that failed to extract has no chunks and is left out of the manifest,
+                // so the next reload retries it.
+                if (!streamed.isFailed(d)) {
+                    documents.add(new DocumentEntry(doc.key, doc.size, doc.lastModified, doc.sha256, firstChunk, count));
+                }
+                firstChunk += count;
+            }
+            logger.info("PDF index delta: documents={} reused={} removed={} embeddedChunks={} totalChunks={} graph={}",
+                    plan.size(), reused.size(), previousDocs.size() - reused.size(), streamed.totalChunks(),
+                    writer.chunkCount(), appendOnly ? "extended" : "rebuilt");
+
+            if (writer.chunkCount() == 0) {
+                return EmbeddedVectorIndex.Generation.EMPTY;
+            }
+
+            SegmentManifest manifest = new SegmentManifest();
+            manifest.setModel(embeddingModel);
+            manifest.setChunking(textChunkService.describe());
+            manifest.setDocuments(documents);
+            HnswIndex index = builder.finish();
+            PdfSegment segment = writer.commit(manifest, index);
+
+            EmbeddedVectorIndex.Generation generation = embeddedVectorIndex.generation(index, segment.chunks());
+            logger.info("PDF index ready in {}ms", System.currentTimeMillis() - start);
+            return generation;
+        }
+    }
+
+    static String sha256(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private boolean chunkedAsConfigured(SegmentManifest manifest) {
+        String chunking = textChunkService.describe();
+        if (manifest.getChunking() == null) {
+            // Written before chunking settings were recorded: always character chunks.
+            return chunking.startsWith("characters:");
+        }
+        return manifest.getChunking().equals(chunking);
+    }
+
+    /**
+     * Grows the HNSW graph as vectors arrive; the dimension is taken from the first one.
+     */
+    private final class IndexBuilder {
+        private HnswIndex index;
+        private final long start = System.currentTimeMillis();
+
+        private IndexBuilder(HnswIndex base) {
+            this.index = base;
+        }
+
+        private void add(float[] vector) {
+            if (index == null) {
+                index = embeddedVectorIndex.newIndex(vector.length);
+            }
+            index.add(vector);
+        }
+
+        private HnswIndex finish() {
+            logger.info("Embedded HNSW index built: vectors={} dim={} took={}ms",
+                    index.size(), index.dimension(), System.currentTimeMillis() - start);
+            return index;
+        }
+    }
+
+    private static final class PlannedDocument {
+        private final File file;
+        private final String key;
+        private final long size;
+        private final long lastModified;
+        private final String sha256;
+        private final DocumentEntry reuse;
+
+        private PlannedDocument(File file, String key, long size, long lastModified, String sha256, DocumentEntry reuse) {
+            this.file = file;
+            this.key = key;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+            this.reuse = reuse;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.SegmentManifest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of one on-disk index segment. Chunk text, offsets, vectors and the HNSW
+ * graph are memory-mapped, so opening a segment costs a few syscalls and the page cache
+ * does the rest. Chunk strings are decoded on access. A single mapping is limited to 2 GB,
+ * so the arena, offsets and vectors are mapped in 1 GB regions and addressed with longs.
+ */
+public class PdfSegment {
+    static final String MANIFEST_FILE = "manifest.json";
+    static final String ARENA_FILE = "chunks.utf8";
+    static final String OFFSETS_FILE = "chunks.offsets";
+    static final String VECTORS_FILE = "vectors.f32";
+    static final String GRAPH_FILE = "graph.hnsw";
+
+    private final Path directory;
+    private final SegmentManifest manifest;
+    private final MappedFile arena;
+    private final MappedFile offsets;
+    private final MappedFile vectors;
+    private final ByteBuffer graph;
+
+    PdfSegment(Path directory, SegmentManifest manifest) throws IOException {
+        this.directory = directory;
+        this.manifest = manifest;
+        this.arena = new MappedFile(directory.resolve(ARENA_FILE));
+        this.offsets = new MappedFile(directory.resolve(OFFSETS_FILE));
+        this.vectors = new MappedFile(directory.resolve(VECTORS_FILE));
+        this.graph = map(directory.resolve(GRAPH_FILE));
+
+        int chunkCount = manifest.getChunkCount();
+        long offsetCount = offsets.size() / Long.BYTES;
+        if (offsetCount != chunkCount + 1L) {
+            throw new IOException("Segment " + directory + " has " + offsetCount + " offsets for " + chunkCount + " chunks");
+        }
+        if (vectors.size() != (long) chunkCount * manifest.getDimension() * Float.BYTES) {
+            throw new IOException("Segment " + directory + " vector matrix does not match " + chunkCount + "x" + manifest.getDimension());
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public SegmentManifest getManifest() {
+        return manifest;
+    }
+
+    public int chunkCount() {
+        return manifest.getChunkCount();
+    }
+
+    public String chunkText(int index) {
+        long start = offsets.getLong((long) index * Long.BYTES);
+        long end = offsets.getLong((long) (index + 1) * Long.BYTES);
+        byte[] bytes = new byte[Math.toIntExact(end - start)];
+        arena.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public float[] vector(int index) {
+        int dimension = manifest.getDimension();
+        float[] vector = new float[dimension];
+        vectors.getFloats((long) index * dimension * Float.BYTES, vector);
+        return vector;
+    }
+
+    /**
+     * Lazily decoded list of chunk texts backed by the mapped arena.
+     */
+    public List<String> chunks() {
+        return new ChunkList();
+    }
+
+    /**
+     * Rebuilds the in-heap HNSW index from the mapped vectors and stored graph topology.
+     */
+    public HnswIndex loadIndex() {
+        int count = chunkCount();
+        float[][] matrix = new float[count][];
+        for (int i = 0; i < count; i++) {
+            matrix[i] = vector(i);
+        }
+        return HnswIndex.readGraph(graph.duplicate(), matrix);
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return buffer;
+        }
+    }
+
+    /**
+     * A read-only file mapped as consecutive regions of {@link #REGION_BYTES}. The region size
+     * is a multiple of 8, so aligned longs and floats never straddle two regions; byte ranges
+     * and whole vectors may, and are copied piecewise.
+     */
+    private static final class MappedFile {
+        private static final int REGION_BYTES = 1 << 30;
+
+        private final ByteBuffer[] regions;
+        private final long size;
+
+        MappedFile(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                size = channel.size();
+                regions = new ByteBuffer[(int) Math.max(1, (size + REGION_BYTES - 1) / REGION_BYTES)];
+                for (int i = 0; i < regions.length; i++) {
+                    long start = (long) i * REGION_BYTES;
+                    regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_BYTES, size - start))
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                }
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        long getLong(long position) {
+            return regions[(int) (position / REGION_BYTES)].getLong((int) (position % REGION_BYTES));
+        }
+
+        void get(long position, byte[] target) {
+            int copied = 0;
+            while (copied < target.length) {
+                long at = position + copied;
+                ByteBuffer region = regions[(int) (at / REGION_BYTES)];
+                int offset = (int) (at % REGION_BYTES);
+                int length = Math.min(target.length - copied, region.limit() - offset);
+                region.get(offset, target, copied, length);
+                copied += length;
+            }
+        }
+
+        void getFloats(long position, float[] target) {
+            int offset = (int) (position % REGION_BYTES);
+            ByteBuffer region = regions[(int) (position / REGION_BYTES)];
+            int bytes = target.length * Float.BYTES;
+            if (offset + bytes <= region.limit()) {
+                region.slice(offset, bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(target);
+                return;
+            }
+            byte[] copy = new byte[bytes];
+            get(position, copy);
+            ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(target);
+        }
+    }
+
+    private final class ChunkList extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= chunkCount()) {
+                throw new IndexOutOfBoundsException("Chunk " + index + " out of " + chunkCount());
+            }
+            return chunkText(index);
+        }
+
+        @Override
+        public int size() {
+            return chunkCount();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.SegmentManifest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Persists the embedded PDF index as immutable segments under {@code pdf.index.dir}.
+ * Each segment directory holds a UTF-8 chunk arena, little-endian offsets, a float32
+ * vector matrix, the HNSW graph and a JSON manifest. A {@code CURRENT} file names the
+ * live segment and is replaced atomically, so a crash mid-write leaves the old one intact.
+ * Every segment file is forced to disk before the rename that publishes it, and the
+ * pointer before it replaces {@code CURRENT}, so the pointer never names a torn segment.
+ */
+@Service
+public class PdfSegmentStore {
+    private static final Logger logger = LoggerFactory.getLogger(PdfSegmentStore.class);
+    private static final String CURRENT_FILE = "CURRENT";
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private PdfService pdfService;
+
+    @Value("${pdf.index.dir:}")
+    private String indexDir;
+
+    public Optional<PdfSegment> openCurrent() {
+        Path root = resolveRoot();
+        Path pointer = root.resolve(CURRENT_FILE);
+        if (!Files.exists(pointer)) {
+            return Optional.empty();
+        }
+        try {
+            String name = Files.readString(pointer, StandardCharsets.UTF_8).trim();
+            Path directory = root.resolve(name);
+            SegmentManifest manifest = objectMapper.readValue(
+                    directory.resolve(PdfSegment.MANIFEST_FILE).toFile(), SegmentManifest.class);
+            if (manifest.getVersion() != SegmentManifest.FORMAT_VERSION) {
+                logger.info("Ignoring PDF index segment {} with format version {}", name, manifest.getVersion());
+                return Optional.empty();
+            }
+            return Optional.of(new PdfSegment(directory, manifest));
+        } catch (Exception e) {
+            logger.warn("Failed to open persisted PDF index at {}: {}", root, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes a new segment, points {@code CURRENT} at it and removes older segments.
+     * Vectors must already be normalized and in chunk order.
+     */
+    public PdfSegment write(SegmentManifest manifest,
+                            List<String> chunks,
+                            List<float[]> vectors,
+                            HnswIndex index) throws IOException {
+        try (SegmentWriter writer = openWriter()) {
+            for (int i = 0; i < chunks.size(); i++) {
+                writer.append(chunks.get(i), vectors.get(i));
+            }
+            return writer.commit(manifest, index);
+        }
+    }
+
+    /**
+     * Opens a staging segment that chunks and vectors are streamed into as they are produced.
+     * Nothing becomes visible until {@link SegmentWriter#commit}; closing an uncommitted
+     * writer deletes the staging directory.
+     */
+    public SegmentWriter openWriter() throws IOException {
+        Path root = resolveRoot();
+        Files.createDirectories(root);
+        String name = SEGMENT_PREFIX + System.currentTimeMillis();
+        Path staging = root.resolve(name + ".tmp");
+        Files.createDirectories(staging);
+        return new SegmentWriter(root, name, staging);
+    }
+
+    public final class SegmentWriter implements AutoCloseable {
+        private final Path root;
+        private final String name;
+        private final Path staging;
+        private final FileOutputStream arenaFile;
+        private final OutputStream arena;
+        private final FileChannel offsets;
+        private final FileChannel vectors;
+        private final ByteBuffer offsetBuffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private ByteBuffer vectorBuffer;
+        private int dimension = -1;
+        private int chunkCount;
+        private long position;
+        private boolean committed;
+
+        private SegmentWriter(Path root, String name, Path staging) throws IOException {
+            this.root = root;
+            this.name = name;
+            this.staging = staging;
+            this.arenaFile = new FileOutputStream(staging.resolve(PdfSegment.ARENA_FILE).toFile());
+            this.arena = new BufferedOutputStream(arenaFile, 1 << 16);
+            this.offsets = FileChannel.open(staging.resolve(PdfSegment.OFFSETS_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.vectors = FileChannel.open(staging.resolve(PdfSegment.VECTORS_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        public void append(String chunk, float[] vector) throws IOException {
+            if (dimension < 0) {
+                dimension = vector.length;
+                vectorBuffer = ByteBuffer.allocate(Math.max(dimension * Float.BYTES, 1 << 16)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            if (vector.length != dimension) {
+                throw new IOException("Vector dimension " + vector.length + " does not match " + dimension);
+            }
+            putOffset(position);
+            byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+            arena.write(bytes);
+            position += bytes.length;
+
+            if (vectorBuffer.remaining() < dimension * Float.BYTES) {
+                drain(vectors, vectorBuffer);
+            }
+            for (float value : vector) {
+                vectorBuffer.putFloat(value);
+            }
+            chunkCount++;
+        }
+
+        public int chunkCount() {
+            return chunkCount;
+        }
+
+        public PdfSegment commit(SegmentManifest manifest, HnswIndex index) throws IOException {
+            if (index.size() != chunkCount) {
+                throw new IOException("Index has " + index.size() + " vectors for " + chunkCount + " chunks");
+            }
+            putOffset(position);
+            drain(offsets, offsetBuffer);
+            if (vectorBuffer != null) {
+                drain(vectors, vectorBuffer);
+            }
+            arena.flush();
+            arenaFile.getChannel().force(true);
+            offsets.force(true);
+            vectors.force(true);
+            closeFiles();
+
+            manifest.setChunkCount(chunkCount);
+            manifest.setDimension(index.dimension());
+            manifest.setCreatedAt(System.currentTimeMillis());
+            FileOutputStream graphFile = new FileOutputStream(staging.resolve(PdfSegment.GRAPH_FILE).toFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(graphFile, 1 << 16))) {
+                index.writeGraph(out);
+                out.flush();
+                graphFile.getChannel().force(true);
+            }
+            writeDurably(staging.resolve(PdfSegment.MANIFEST_FILE),
+                    objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+            forceDirectory(staging);
+
+            Path directory = root.resolve(name);
+            Files.move(staging, directory, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(root);
+            Path pointerTmp = root.resolve(CURRENT_FILE + ".tmp");
+            writeDurably(pointerTmp, name.getBytes(StandardCharsets.UTF_8));
+            Files.move(pointerTmp, root.resolve(CURRENT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory(root);
+            committed = true;
+
+            deleteOtherSegments(root, name);
+            logger.info("Persisted PDF index segment {} ({} chunks, {} documents)",
+                    name, chunkCount, manifest.getDocuments().size());
+            return new PdfSegment(directory, manifest);
+        }
+
+        @Override
+        public void close() {
+            if (committed) {
+                return;
+            }
+            try {
+                closeFiles();
+            } catch (IOException e) {
+                logger.debug("Closing staging segment failed: {}", e.getMessage());
+            }
+            deleteRecursively(staging);
+        }
+
+        private void putOffset(long value) throws IOException {
+            if (offsetBuffer.remaining() < Long.BYTES) {
+                drain(offsets, offsetBuffer);
+            }
+            offsetBuffer.putLong(value);
+        }
+
+        private void closeFiles() throws IOException {
+            try {
+                arena.close();
+            } finally {
+                try {
+                    offsets.close();
+                } finally {
+                    vectors.close();
+                }
+            }
+        }
+    }
+
+    public Path resolveRoot() {
+        if (indexDir != null && !indexDir.isBlank()) {
+            return Paths.get(indexDir.trim()).toAbsolutePath().normalize();
+        }
+        return Paths.get(pdfService.getPdfDirectory()).toAbsolutePath().normalize().resolveSibling("pdf_index");
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void writeDurably(Path file, byte[] content) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Makes renames and new entries in {@code directory} durable. Not every platform can
+     * open a directory for this (Windows cannot), so failure is only logged.
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private void deleteOtherSegments(Path root, String keep) {
+        try (Stream<Path> entries = Files.list(root)) {
+            entries.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(p -> !p.getFileName().toString().equals(keep))
+                    .forEach(this::deleteRecursively);
+        } catch (IOException e) {
+            logger.warn("Failed to clean old PDF index segments: {}", e.getMessage());
+        }
+    }
+
+    private void deleteRecursively(Path path) {
+        // Open segments stay readable after unlink because their files are memory-mapped.
+        try (Stream<Path> walk = Files.walk(path)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    logger.debug("Could not delete {}: {}", p, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.debug("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package com.example.pdfchatbot.service;
 
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -12,11 +16,29 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 @Service
 public class PdfService {
     private String pdfDirectory;
+
+    @Value("${pdf.extract.threads:0}")
+    private int extractThreads;
+
+    @Value("${pdf.extract.maxInFlightMb:256}")
+    private int maxInFlightMb;
+
+    @Value("${pdf.extract.tempFileThresholdMb:16}")
+    private int tempFileThresholdMb;
+
+    private ExecutorService extractPool;
+    private Semaphore inFlightBudget;
     
     public PdfService() {
         // Try multiple possible paths
@@ -57,45 +79,99 @@ public class PdfService {
         System.err.println("Current working directory: " + System.getProperty("user.dir"));
     }
     
-    public List<String> extractTextFromAllPdfs() throws IOException {
-        List<String> allText = new ArrayList<>();
-        Path pdfPath = Paths.get(pdfDirectory);
-        
-        if (!Files.exists(pdfPath)) {
-            System.err.println("PDF directory does not exist: " + pdfDirectory);
-            System.err.println("Current working directory: " + System.getProperty("user.dir"));
-            return allText;
-        }
-        
-        try (Stream<Path> paths = Files.walk(pdfPath)) {
-            paths.filter(Files::isRegularFile)
-                 .filter(p -> p.toString().toLowerCase().endsWith(".pdf"))
-                 .forEach(pdfFile -> {
-                     try {
-                         System.out.println("Processing PDF: " + pdfFile.getFileName());
-                         String text = extractTextFromPdf(pdfFile.toFile());
-                         if (text != null && !text.trim().isEmpty()) {
-                             allText.add(text);
-                             System.out.println("Successfully extracted " + text.length() + " characters from " + pdfFile.getFileName());
-                         } else {
-                             System.out.println("Warning: No text extracted from " + pdfFile.getFileName());
-                         }
-                     } catch (IOException e) {
-                         System.err.println("Error reading PDF: " + pdfFile + " - " + e.getMessage());
-                         e.printStackTrace();
-                     }
-                 });
+    public String getPdfDirectory() {
+        return pdfDirectory;
+    }
+
+    /**
+     * Runs {@code task} for {@code file} on the extraction pool, holding the file's share of
+     * the in-flight byte budget while it runs. The budget is taken on the calling thread before
+     * the task is queued, blocking while it is exhausted. Callers that submit files one after
+     * the other are therefore granted budget strictly in that order - needed when a task may
+     * block until an earlier file's task has made progress.
+     */
+    public <T> Future<T> submitExtractionInOrder(File file, Callable<T> task) throws InterruptedException {
+        ExecutorService pool = extractPool();
+        Semaphore budget = inFlightBudget;
+        int permits = budgetPermits(file);
+        budget.acquire(permits);
+        try {
+            return pool.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    budget.release(permits);
+                }
+            });
+        } catch (RuntimeException e) {
+            budget.release(permits);
+            throw e;
         }
-        
-        System.out.println("Total PDFs processed: " + allText.size());
-        return allText;
     }
-    
-    public String extractTextFromPdf(File pdfFile) throws IOException {
-        try (PDDocument document = Loader.loadPDF(pdfFile)) {
+
+    /**
+     * Extracts text {@code pagesPerBatch} pages at a time, handing each range to
+     * {@code onPages} before reading the next, so a document's full text is never built.
+     */
+    public void extractPages(File pdfFile, int pagesPerBatch, PageConsumer onPages) throws IOException, InterruptedException {
+        try (PDDocument document = loadPdf(pdfFile)) {
             PDFTextStripper stripper = new PDFTextStripper();
-            return stripper.getText(document);
+            int pages = document.getNumberOfPages();
+            int step = Math.max(1, pagesPerBatch);
+            for (int first = 1; first <= pages; first += step) {
+                stripper.setStartPage(first);
+                stripper.setEndPage(Math.min(pages, first + step - 1));
+                onPages.accept(stripper.getText(document));
+            }
+        }
+    }
+
+    private PDDocument loadPdf(File pdfFile) throws IOException {
+        // Large files buffer decoded streams in temp files instead of on the heap.
+        boolean large = pdfFile.length() > (long) tempFileThresholdMb * 1024 * 1024;
+        return large
+                ? Loader.loadPDF(pdfFile, MemoryUsageSetting.setupTempFileOnly().streamCache)
+                : Loader.loadPDF(pdfFile, IOUtils.createMemoryOnlyStreamCache());
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (extractPool != null) {
+            extractPool.shutdownNow();
+            extractPool = null;
+        }
+    }
+
+    private synchronized ExecutorService extractPool() {
+        if (extractPool == null) {
+            int threads = extractThreads > 0 ? extractThreads : Runtime.getRuntime().availableProcessors();
+            AtomicInteger counter = new AtomicInteger();
+            extractPool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "pdf-extract-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            inFlightBudget = new Semaphore(budgetKb(), true);
         }
+        return extractPool;
+    }
+
+    @FunctionalInterface
+    public interface PageConsumer {
+        void accept(String text) throws InterruptedException;
+    }
+
+    private int budgetKb() {
+        return Math.max(1, maxInFlightMb) * 1024;
+    }
+
+    /**
+     * A document reserves its size in KB, capped at the whole budget so an oversized file
+     * still runs, just alone.
+     */
+    private int budgetPermits(File file) {
+        long kb = Math.max(1, file.length() / 1024);
+        return (int) Math.min(kb, budgetKb());
     }
     
     public List<File> getAllPdfFiles() throws IOException {
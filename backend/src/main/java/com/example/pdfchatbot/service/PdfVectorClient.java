@@ -6,13 +6,17 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ClientHttpRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.netty.http.client.HttpClientRequest;
 
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,33 +25,70 @@ import java.util.Map;
 public class PdfVectorClient {
     private static final Logger logger = LoggerFactory.getLogger(PdfVectorClient.class);
 
-    private final WebClient webClient;
+    private WebClient webClient;
     private final ObjectMapper objectMapper;
 
+    @Autowired
+    private OutboundConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private OutboundHttpClients httpClients;
+
+    @Autowired
+    private OutboundCircuitBreakers circuitBreakers;
+
     @Value("${pdf.vector.url:http://localhost:9100}")
     private String vectorUrl;
 
-    @Value("${pdf.vector.timeoutMs:60000}")
-    private long timeoutMs;
-
     @Value("${embedding.model:text-embedding-3-small}")
     private String embeddingModel;
 
     @Value("${pdf.vector.batchSize:128}")
     private int batchSize;
 
+    @Value("${pdf.vector.indexTimeoutMs:600000}")
+    private long indexTimeoutMs;
+
     public PdfVectorClient() {
-        ExchangeStrategies strategies = ExchangeStrategies.builder()
-                .codecs(config -> config.defaultCodecs().maxInMemorySize(8 * 1024 * 1024))
-                .build();
-        this.webClient = WebClient.builder()
-                .exchangeStrategies(strategies)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
         this.objectMapper = new ObjectMapper();
     }
 
+    @PostConstruct
+    public void initializeClient() {
+        this.webClient = httpClients.webClient(OutboundConcurrencyLimiter.PDF_VECTOR, vectorUrl, 8 * 1024 * 1024);
+    }
+
     public void indexChunks(List<String> chunks) {
+        sendChunks(chunks, false, false, 0);
+    }
+
+    /**
+     * Adds chunks to the sidecar's staging index for {@code generation}, starting a fresh one
+     * unless {@code append}. Nothing is queryable until {@link #commitStaged} publishes it.
+     */
+    public void stageChunks(List<String> chunks, boolean append, long generation) {
+        sendChunks(chunks, true, append, generation);
+    }
+
+    /**
+     * Makes the staged index live under {@code generation}. The sidecar keeps the previous
+     * generation too, so queries still pinned to it are answered until the caller switches over.
+     */
+    public void commitStaged(long generation) {
+        try {
+            webClient.post()
+                    .uri(vectorUrl + "/commit")
+                    .httpRequest(this::indexTimeout)
+                    .bodyValue(Map.of("generation", generation))
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block();
+        } catch (Exception e) {
+            throw new RuntimeException("FAISS commit request failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void sendChunks(List<String> chunks, boolean stage, boolean append, long generation) {
         if (chunks == null || chunks.isEmpty()) {
             return;
         }
@@ -56,9 +97,15 @@ public class PdfVectorClient {
             payload.put("chunks", chunks);
             payload.put("model", embeddingModel);
             payload.put("batch_size", batchSize);
+            payload.put("stage", stage);
+            payload.put("append", append);
+            if (generation > 0) {
+                payload.put("generation", generation);
+            }
 
             webClient.post()
                     .uri(vectorUrl + "/index")
+                    .httpRequest(this::indexTimeout)
                     .bodyValue(payload)
                     .retrieve()
                     .bodyToMono(String.class)
@@ -68,19 +115,69 @@ public class PdfVectorClient {
         }
     }
 
-    public RetrievalResult query(String question, int topK) {
-        try {
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("query", question);
-            payload.put("top_k", topK);
+    /**
+     * Indexing calls embed a whole batch in the sidecar, so they replace the destination's
+     * query-sized response timeout with {@code pdf.vector.indexTimeoutMs}.
+     */
+    private void indexTimeout(ClientHttpRequest request) {
+        HttpClientRequest nativeRequest = request.getNativeRequest();
+        nativeRequest.responseTimeout(Duration.ofMillis(Math.max(1, indexTimeoutMs)));
+    }
 
-            String response = webClient.post()
+    /**
+     * Returns an empty result straight away while the sidecar's circuit is open, without
+     * waiting for a concurrency permit. A positive {@code generation} pins the search to that
+     * committed index; otherwise the sidecar answers from its live one.
+     */
+    public RetrievalResult query(String question, int topK, long generation) {
+        if (!circuitBreakers.isCallPermitted(OutboundConcurrencyLimiter.PDF_VECTOR)) {
+            return new RetrievalResult(List.of(), List.of(), RetrievalMethod.NONE);
+        }
+        return concurrencyLimiter.call(OutboundConcurrencyLimiter.PDF_VECTOR, () -> queryReactive(question, topK, generation).block());
+    }
+
+    public Mono<RetrievalResult> queryReactive(String question, int topK, long generation) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("query", question);
+        payload.put("top_k", topK);
+        if (generation > 0) {
+            payload.put("generation", generation);
+        }
+
+        return Mono.defer(() -> {
+            OutboundCircuitBreakers.Permit permit = circuitBreakers.tryAcquire(OutboundConcurrencyLimiter.PDF_VECTOR);
+            if (permit == null) {
+                logger.debug("FAISS query skipped: circuit open");
+                return Mono.<String>empty();
+            }
+            long start = System.nanoTime();
+            return webClient.post()
                     .uri(vectorUrl + "/query")
                     .bodyValue(payload)
                     .retrieve()
                     .bodyToMono(String.class)
-                    .block();
+                    .doFinally(signal -> {
+                        long elapsed = System.nanoTime() - start;
+                        if (signal == SignalType.ON_COMPLETE) {
+                            circuitBreakers.onSuccess(permit, elapsed);
+                        } else if (signal == SignalType.CANCEL) {
+                            // Client disconnects cancel as well as stage timeouts; only slow cancellations count.
+                            circuitBreakers.onCancel(permit, elapsed);
+                        } else {
+                            circuitBreakers.onFailure(permit, elapsed);
+                        }
+                    });
+        })
+                .map(this::parseQueryResponse)
+                .defaultIfEmpty(new RetrievalResult(List.of(), List.of(), RetrievalMethod.NONE))
+                .onErrorResume(e -> {
+                    logger.warn("FAISS query failed: {}", e.getMessage());
+                    return Mono.just(new RetrievalResult(List.of(), List.of(), RetrievalMethod.NONE));
+                });
+    }
 
+    private RetrievalResult parseQueryResponse(String response) {
+        try {
             JsonNode json = objectMapper.readTree(response);
             JsonNode documentsNode = json.get("documents");
             JsonNode scoresNode = json.get("scores");
@@ -0,0 +1,287 @@
+package com.example.pdfchatbot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the user prompt (Role, Rules, Data, Task) within {@code llm.prompt.maxTokens}.
+ * Instructions and the question are always kept whole. Context chunks are taken in retrieval
+ * order, so the lowest-ranked are dropped first and the last one that fits partially is cut at
+ * a word boundary. History is filled newest turn first, so older turns are truncated (answer
+ * first) or dropped before recent ones; a rolling summary of earlier turns, when the history
+ * has one, is kept ahead of them. Up to {@code llm.prompt.historyShare} of what is left
+ * after instructions is reserved for history; each side gets whatever the other does not use.
+ *
+ * <p>Tokens are counted with the cl100k {@link BpeTokenizer} when its vocab is present and
+ * estimated at four characters per token otherwise.
+ */
+@Service
+public class PromptAssembler {
+    private static final Logger logger = LoggerFactory.getLogger(PromptAssembler.class);
+    private static final int MAX_CHUNKS = 5;
+    // Below this many tokens a cut-down chunk or answer is more noise than context.
+    private static final int MIN_PARTIAL_TOKENS = 48;
+
+    @Autowired
+    private BpeTokenizer tokenizer;
+
+    @Value("${llm.prompt.maxTokens:3000}")
+    private int maxTokens;
+
+    @Value("${llm.prompt.historyShare:0.3}")
+    private double historyShare;
+
+    private final AtomicLong prompts = new AtomicLong();
+    private final AtomicLong instructionTokens = new AtomicLong();
+    private final AtomicLong contextTokens = new AtomicLong();
+    private final AtomicLong historyTokens = new AtomicLong();
+    private final AtomicLong questionTokens = new AtomicLong();
+    private final AtomicLong maxTotalTokens = new AtomicLong();
+    private final AtomicLong chunksDropped = new AtomicLong();
+    private final AtomicLong turnsTrimmed = new AtomicLong();
+
+    public Prompt assemble(String question,
+                           List<String> contextChunks,
+                           List<ChatHistoryService.ChatEntry> history,
+                           boolean supported,
+                           boolean allowSpeculation) {
+        StringBuilder instructions = new StringBuilder();
+        instructions.append("Role:\n");
+        instructions.append("- You are a helpful assistant that answers using PDF context and conversation history.\n\n");
+
+        instructions.append("Rules:\n");
+        instructions.append("- Never fabricate facts not present in the PDFs or conversation.\n");
+        instructions.append("- If the user asks about the conversation, use the history even if the PDFs don't mention it.\n");
+        if (!allowSpeculation) {
+            instructions.append("- If the question is speculative or future-oriented and not supported, say it is not in the knowledge base and provide a cautious inference if possible.\n");
+        } else {
+            instructions.append("- If the question is speculative, you may answer but label it as speculative.\n");
+        }
+        if (!supported) {
+            instructions.append("- Retrieved context does not confidently support a direct answer; be explicit about limits.\n");
+        }
+        instructions.append("\n");
+        instructions.append("Data:\n");
+        instructions.append("PDF Context:\n");
+
+        StringBuilder task = new StringBuilder();
+        task.append("\nTask:\n");
+        task.append("Answer the question below using the data above.\n");
+        task.append("Question: ").append(question).append("\n");
+        task.append("Answer:");
+
+        int instructionCount = count(instructions);
+        int questionCount = count(task);
+        int available = Math.max(0, maxTokens - instructionCount - questionCount);
+
+        List<String> chunks = contextChunks == null ? List.of() : contextChunks;
+        String summary = null;
+        List<ChatHistoryService.ChatEntry> turns = new ArrayList<>();
+        if (history != null) {
+            for (ChatHistoryService.ChatEntry entry : history) {
+                if (entry.isSummary()) {
+                    summary = "Summary of earlier conversation: " + entry.getAnswer().trim() + "\n";
+                } else {
+                    turns.add(entry);
+                }
+            }
+        }
+        int historyWanted = count(summary);
+        for (ChatHistoryService.ChatEntry entry : turns) {
+            historyWanted += count(formatTurn(entry.getQuestion(), entry.getAnswer()));
+        }
+        int historyReserve = (int) Math.min(historyWanted, available * Math.max(0, Math.min(1, historyShare)));
+
+        // Context, best-ranked first.
+        StringBuilder context = new StringBuilder();
+        int contextBudget = available - historyReserve;
+        int contextCount = 0;
+        int included = 0;
+        for (int i = 0; i < chunks.size() && i < MAX_CHUNKS; i++) {
+            String header = "[Document " + (included + 1) + "]\n";
+            int headerCount = count(header) + 1;
+            int chunkCount = count(chunks.get(i));
+            int room = contextBudget - contextCount - headerCount;
+            if (chunkCount <= room) {
+                context.append(header).append(chunks.get(i)).append("\n");
+                contextCount += headerCount + chunkCount;
+                included++;
+                continue;
+            }
+            if (room >= MIN_PARTIAL_TOKENS) {
+                String cut = truncate(chunks.get(i), room);
+                context.append(header).append(cut).append("\n");
+                contextCount += headerCount + count(cut);
+                included++;
+            }
+            break;
+        }
+        int dropped = Math.min(chunks.size(), MAX_CHUNKS) - included;
+
+        // History within whatever context left over: the rolling summary, then turns newest first.
+        int historyBudget = available - contextCount;
+        List<String> kept = new ArrayList<>();
+        int historyCount = 0;
+        int trimmed = 0;
+        if (!turns.isEmpty() || summary != null) {
+            historyBudget -= count("\nConversation History:\n");
+        }
+        String keptSummary = null;
+        if (summary != null) {
+            int summaryCount = count(summary);
+            if (summaryCount <= historyBudget) {
+                keptSummary = summary;
+            } else if (historyBudget >= MIN_PARTIAL_TOKENS) {
+                keptSummary = truncate(summary, historyBudget) + " ...\n";
+                summaryCount = count(keptSummary);
+            } else {
+                summaryCount = 0;
+            }
+            historyCount += summaryCount;
+        }
+        for (int i = turns.size() - 1; i >= 0; i--) {
+            ChatHistoryService.ChatEntry entry = turns.get(i);
+            String turn = formatTurn(entry.getQuestion(), entry.getAnswer());
+            int turnCount = count(turn);
+            int room = historyBudget - historyCount;
+            if (turnCount <= room) {
+                kept.add(turn);
+                historyCount += turnCount;
+                continue;
+            }
+            trimmed += i + 1;
+            String questionPart = formatTurn(entry.getQuestion(), null);
+            int answerRoom = room - count(questionPart);
+            if (answerRoom >= MIN_PARTIAL_TOKENS && entry.getAnswer() != null) {
+                String partial = formatTurn(entry.getQuestion(), truncate(entry.getAnswer().trim(), answerRoom) + " ...");
+                kept.add(partial);
+                historyCount += count(partial);
+            }
+            break;
+        }
+
+        StringBuilder prompt = new StringBuilder(instructions).append(context);
+        if (keptSummary != null || !kept.isEmpty()) {
+            prompt.append("\nConversation History:\n");
+            if (keptSummary != null) {
+                prompt.append(keptSummary);
+            }
+            for (int i = kept.size() - 1; i >= 0; i--) {
+                prompt.append(kept.get(i));
+            }
+        }
+        prompt.append(task);
+
+        int total = instructionCount + contextCount + historyCount + questionCount;
+        prompts.incrementAndGet();
+        instructionTokens.addAndGet(instructionCount);
+        contextTokens.addAndGet(contextCount);
+        historyTokens.addAndGet(historyCount);
+        questionTokens.addAndGet(questionCount);
+        maxTotalTokens.accumulateAndGet(total, Math::max);
+        chunksDropped.addAndGet(dropped);
+        turnsTrimmed.addAndGet(trimmed);
+        logger.info("[llm_prompt_tokens] instructions={} context={} history={} question={} total={} budget={} chunks={}/{} turns={}/{} summary={}",
+                instructionCount, contextCount, historyCount, questionCount, total, maxTokens,
+                included, Math.min(chunks.size(), MAX_CHUNKS), kept.size(), turns.size(), keptSummary != null);
+
+        return new Prompt(prompt.toString(), instructionCount, contextCount, historyCount, questionCount);
+    }
+
+    public Map<String, Object> getStats() {
+        long count = prompts.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("budget", maxTokens);
+        stats.put("exactCounts", tokenizer.isAvailable());
+        stats.put("prompts", count);
+        stats.put("avgInstructionTokens", count == 0 ? 0 : instructionTokens.get() / count);
+        stats.put("avgContextTokens", count == 0 ? 0 : contextTokens.get() / count);
+        stats.put("avgHistoryTokens", count == 0 ? 0 : historyTokens.get() / count);
+        stats.put("avgQuestionTokens", count == 0 ? 0 : questionTokens.get() / count);
+        stats.put("maxTotalTokens", maxTotalTokens.get());
+        stats.put("chunksDropped", chunksDropped.get());
+        stats.put("turnsTrimmed", turnsTrimmed.get());
+        return stats;
+    }
+
+    public int count(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        return tokenizer.isAvailable() ? tokenizer.countTokens(text) : (text.length() + 3) / 4;
+    }
+
+    private String truncate(String text, int tokens) {
+        int end;
+        if (tokenizer.isAvailable()) {
+            end = tokenizer.prefixEnd(text, tokens);
+        } else {
+            end = Math.min(text.length(), tokens * 4);
+            int space = text.lastIndexOf(' ', end);
+            if (end < text.length() && space > 0) {
+                end = space;
+            }
+        }
+        return text.substring(0, end).trim();
+    }
+
+    private static String formatTurn(String question, String answer) {
+        StringBuilder turn = new StringBuilder();
+        if (question != null && !question.isBlank()) {
+            turn.append("User: ").append(question.trim()).append("\n");
+        }
+        if (answer != null && !answer.isBlank()) {
+            turn.append("Assistant: ").append(answer.trim()).append("\n");
+        }
+        return turn.toString();
+    }
+
+    public static final class Prompt {
+        private final String text;
+        private final int instructionTokens;
+        private final int contextTokens;
+        private final int historyTokens;
+        private final int questionTokens;
+
+        private Prompt(String text, int instructionTokens, int contextTokens, int historyTokens, int questionTokens) {
+            this.text = text;
+            this.instructionTokens = instructionTokens;
+            this.contextTokens = contextTokens;
+            this.historyTokens = historyTokens;
+            this.questionTokens = questionTokens;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getInstructionTokens() {
+            return instructionTokens;
+        }
+
+        public int getContextTokens() {
+            return contextTokens;
+        }
+
+        public int getHistoryTokens() {
+            return historyTokens;
+        }
+
+        public int getQuestionTokens() {
+            return questionTokens;
+        }
+
+        public int getTotalTokens() {
+            return instructionTokens + contextTokens + historyTokens + questionTokens;
+        }
+    }
+}
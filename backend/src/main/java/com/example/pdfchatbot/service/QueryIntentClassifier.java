@@ -5,13 +5,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
+import jakarta.annotation.PostConstruct;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,9 +21,18 @@ import java.util.regex.Pattern;
 @Service
 public class QueryIntentClassifier {
     private static final Logger logger = LoggerFactory.getLogger(QueryIntentClassifier.class);
-    private final WebClient webClient;
+    private WebClient webClient;
     private final ObjectMapper objectMapper;
 
+    @Autowired
+    private OutboundConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private OutboundHttpClients httpClients;
+
+    @Autowired
+    private LocalIntentModel localModel;
+
     @Value("${llm.api.key:}")
     private String apiKey;
 
@@ -48,26 +58,55 @@ public class QueryIntentClassifier {
     );
 
     public QueryIntentClassifier() {
-        ExchangeStrategies strategies = ExchangeStrategies.builder()
-                .codecs(config -> config.defaultCodecs().maxInMemorySize(2 * 1024 * 1024))
-                .build();
-        this.webClient = WebClient.builder()
-                .exchangeStrategies(strategies)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
         this.objectMapper = new ObjectMapper();
     }
 
+    @PostConstruct
+    public void initializeClient() {
+        this.webClient = httpClients.webClient(OutboundConcurrencyLimiter.LLM, apiUrl, 2 * 1024 * 1024);
+    }
+
     public QueryIntent classify(String question) {
         if (question == null || question.trim().isEmpty()) {
             return QueryIntent.FACT;
         }
+        QueryIntent local = localModel.classifyIfConfident(question);
+        if (local != null) {
+            return local;
+        }
+        return concurrencyLimiter.call(OutboundConcurrencyLimiter.LLM, () -> classifyRemote(question).block());
+    }
+
+    /**
+     * Non-blocking classification: uses the local model when it is confident, otherwise asks
+     * the LLM and falls back to the regex heuristics when it is disabled, fails or returns an
+     * unknown label.
+     */
+    public Mono<QueryIntent> classifyReactive(String question) {
+        if (question == null || question.trim().isEmpty()) {
+            return Mono.just(QueryIntent.FACT);
+        }
+        QueryIntent local = localModel.classifyIfConfident(question);
+        if (local != null) {
+            return Mono.just(local);
+        }
+        return classifyRemote(question);
+    }
 
-        QueryIntent llmIntent = classifyWithLlm(question);
-        if (llmIntent != null) {
-            return llmIntent;
+    private Mono<QueryIntent> classifyRemote(String question) {
+        return classifyWithLlm(question)
+                .doOnNext(intent -> localModel.learn(question, intent))
+                .switchIfEmpty(Mono.fromSupplier(() -> classifyWithPatterns(question)));
+    }
+
+    public boolean isConversationReference(String question) {
+        if (question == null || question.trim().isEmpty()) {
+            return false;
         }
+        return CONVERSATION_PATTERNS.matcher(question).find();
+    }
 
+    public QueryIntent classifyWithPatterns(String question) {
         boolean futuristic = SPECULATIVE_PATTERNS.matcher(question).find();
         boolean factual = FACTUAL_PATTERNS.matcher(question).find();
 
@@ -80,49 +119,45 @@ public class QueryIntentClassifier {
         return QueryIntent.FACT;
     }
 
-    public boolean isConversationReference(String question) {
-        if (question == null || question.trim().isEmpty()) {
-            return false;
-        }
-        return CONVERSATION_PATTERNS.matcher(question).find();
-    }
-
-    private QueryIntent classifyWithLlm(String question) {
+    private Mono<QueryIntent> classifyWithLlm(String question) {
         if (!classifierEnabled) {
-            return null;
+            return Mono.empty();
         }
         if (apiKey == null || apiKey.trim().isEmpty()) {
-            return null;
+            return Mono.empty();
         }
 
-        try {
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", "gpt-3.5-turbo");
-
-            Map<String, String> systemMessage = new HashMap<>();
-            systemMessage.put("role", "system");
-            systemMessage.put("content",
-                    "You are a classifier. Return exactly one label: FACTUAL, FUTURISTIC, or MIXED. " +
-                    "FACTUAL: answer exists in existing documents or past data. " +
-                    "FUTURISTIC: asks about future events, predictions, outcomes, or unknown states. " +
-                    "MIXED: combines factual info with future speculation.");
-
-            Map<String, String> userMessage = new HashMap<>();
-            userMessage.put("role", "user");
-            userMessage.put("content", question);
-
-            requestBody.put("messages", List.of(systemMessage, userMessage));
-            requestBody.put("temperature", 0);
-            requestBody.put("max_tokens", 5);
-
-            String response = webClient.post()
-                    .uri(apiUrl)
-                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey.trim())
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "gpt-3.5-turbo");
+
+        Map<String, String> systemMessage = new HashMap<>();
+        systemMessage.put("role", "system");
+        systemMessage.put("content",
+                "You are a classifier. Return exactly one label: FACTUAL, FUTURISTIC, or MIXED. " +
+                "FACTUAL: answer exists in existing documents or past data. " +
+                "FUTURISTIC: asks about future events, predictions, outcomes, or unknown states. " +
+                "MIXED: combines factual info with future speculation.");
+
+        Map<String, String> userMessage = new HashMap<>();
+        userMessage.put("role", "user");
+        userMessage.put("content", question);
+
+        requestBody.put("messages", List.of(systemMessage, userMessage));
+        requestBody.put("temperature", 0);
+        requestBody.put("max_tokens", 5);
+
+        return webClient.post()
+                .uri(apiUrl)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey.trim())
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToMono(String.class)
+                .flatMap(response -> Mono.justOrEmpty(parseCompletion(question, response)))
+                .onErrorResume(e -> Mono.empty());
+    }
 
+    private QueryIntent parseCompletion(String question, String response) {
+        try {
             JsonNode jsonResponse = objectMapper.readTree(response);
             JsonNode choices = jsonResponse.get("choices");
             if (choices != null && choices.isArray() && choices.size() > 0) {
@@ -139,7 +174,6 @@ public class QueryIntentClassifier {
         } catch (Exception e) {
             return null;
         }
-
         return null;
     }
 
@@ -0,0 +1,88 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.ReloadJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs reloads as background jobs on a single worker, so /api/reload returns immediately
+ * and reloads never overlap. A request made while a job is still queued joins that job
+ * instead of queueing another full pass. The most recent jobs are kept for status lookups.
+ */
+@Service
+public class ReloadJobService {
+    private static final Logger logger = LoggerFactory.getLogger(ReloadJobService.class);
+    private static final int MAX_RETAINED_JOBS = 20;
+
+    @Autowired
+    private SimilaritySearchService similaritySearchService;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reload-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, ReloadJob> jobs = new LinkedHashMap<>();
+    private ReloadJob queued;
+
+    public synchronized ReloadJob submit() {
+        if (queued != null) {
+            return queued;
+        }
+        ReloadJob job = new ReloadJob(UUID.randomUUID().toString().substring(0, 8));
+        queued = job;
+        jobs.put(job.getId(), job);
+        trim();
+        worker.submit(() -> run(job));
+        logger.info("[reload] job={} queued", job.getId());
+        return job;
+    }
+
+    public synchronized Optional<ReloadJob> get(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private void run(ReloadJob job) {
+        synchronized (this) {
+            if (queued == job) {
+                queued = null;
+            }
+        }
+        job.markRunning();
+        try {
+            similaritySearchService.reloadDocuments(job);
+            job.markSucceeded(similaritySearchService.getChunkCount());
+            logger.info("[reload] job={} succeeded chunks={} took={}ms",
+                    job.getId(), job.getChunksIndexed(), job.getFinishedAt() - job.getStartedAt());
+        } catch (Exception e) {
+            job.markFailed(e.getMessage());
+            logger.warn("[reload] job={} failed: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private void trim() {
+        Iterator<ReloadJob> it = jobs.values().iterator();
+        while (jobs.size() > MAX_RETAINED_JOBS && it.hasNext()) {
+            if (it.next().isFinished()) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.example.pdfchatbot.service;
 
 import com.example.pdfchatbot.model.ChatAnswer;
+import com.example.pdfchatbot.model.PreparedAnswer;
 import com.example.pdfchatbot.model.QueryIntent;
+import com.example.pdfchatbot.model.RequestDeadline;
+import com.example.pdfchatbot.model.ReloadJob;
 import com.example.pdfchatbot.model.RetrievalResult;
 import com.example.pdfchatbot.model.RetrievalResult.RetrievalMethod;
 import org.slf4j.Logger;
@@ -9,6 +12,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
@@ -22,9 +26,6 @@ public class SimilaritySearchService {
     @Autowired
     private PdfService pdfService;
 
-    @Autowired
-    private TextChunkService textChunkService;
-
     @Autowired
     private LlmService llmService;
 
@@ -32,7 +33,25 @@ public class SimilaritySearchService {
     private PdfVectorClient pdfVectorClient;
 
     @Autowired
-    private QueryIntentClassifier intentClassifier;
+    private EmbeddedVectorIndex embeddedVectorIndex;
+
+    @Autowired
+    private PdfIngestService pdfIngestService;
+
+    @Autowired
+    private PdfIngestPipeline ingestPipeline;
+
+    @Autowired
+    private AnswerCache answerCache;
+
+    @Autowired
+    private AnswerStageGraph stageGraph;
+
+    @Autowired
+    private LexicalIndex lexicalIndex;
+
+    @Autowired
+    private OutboundCircuitBreakers circuitBreakers;
 
     @Value("${rag.retrieval.topK:3}")
     private int topK;
@@ -43,10 +62,30 @@ public class SimilaritySearchService {
     @Value("${rag.confidence.minFaissScore:0.2}")
     private double minFaissScore;
 
+    @Value("${rag.confidence.minBm25Score:2.0}")
+    private double minBm25Score;
+
+    @Value("${rag.retrieval.method:vector}")
+    private String retrievalMethod;
+
+    @Value("${rag.retrieval.hybridCandidates:20}")
+    private int hybridCandidates;
+
+    @Value("${rag.retrieval.rrfK:60}")
+    private int rrfK;
+
     @Value("${catalog.enabled:false}")
     private boolean catalogEnabled;
+
+    @Value("${pdf.vector.engine:faiss}")
+    private String vectorEngine;
+
+    @Value("${chat.coalescing.enabled:true}")
+    private boolean coalescingEnabled;
+
+    private final SingleFlight<List<Object>, ChatAnswer> answerFlights = new SingleFlight<>();
     
-    private List<String> textChunks = new ArrayList<>();
+    private volatile IndexGeneration generation = IndexGeneration.EMPTY;
     private volatile boolean indexing = false;
     private volatile String lastIndexError = null;
     private volatile long lastIndexedAt = 0;
@@ -66,8 +105,19 @@ public class SimilaritySearchService {
     }
     
     public void reloadDocuments() throws IOException {
+        reloadDocuments(new ReloadJob("inline"));
+    }
+
+    /**
+     * Rebuilds the index, reporting progress to {@code job}. Queries keep using the current
+     * index generation until the new one - vectors, BM25 index and chunk count together - is
+     * complete and swapped in with one reference write. Serialized, since the directory
+     * watcher and /api/reload may both ask for a reload.
+     */
+    public synchronized void reloadDocuments(ReloadJob job) throws IOException {
         if (catalogEnabled) {
             logger.info("Catalog mode enabled. PDF indexing is disabled.");
+            answerCache.invalidateAll();
             return;
         }
         indexing = true;
@@ -75,40 +125,51 @@ public class SimilaritySearchService {
         System.out.println("Reloading PDF documents...");
         System.out.println("Memory before: " + (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1024 / 1024 + " MB used");
         try {
-            // Process PDFs one at a time to avoid memory issues
-            List<String> allChunks = new ArrayList<>();
-            List<String> pdfTexts = pdfService.extractTextFromAllPdfs();
-
-            if (pdfTexts.isEmpty()) {
-                System.err.println("WARNING: No PDF text extracted. Check if PDFs exist in the pdfs folder.");
-                textChunks = allChunks;
-                pdfVectorClient.indexChunks(textChunks);
+            if (isEmbeddedEngine()) {
+                // Embedded engine persists chunks and vectors, so only changed PDFs are re-embedded
+                EmbeddedVectorIndex.Generation vectors = pdfIngestService.reload(job);
+                generation = vectors.chunks().isEmpty()
+                        ? IndexGeneration.EMPTY
+                        : new IndexGeneration(vectors, 0, lexicalIndex.build(vectors.chunks()), vectors.chunks().size());
+                System.out.println("Loaded " + generation.chunkCount + " text chunks from PDFs");
+                lastIndexedAt = System.currentTimeMillis();
+                answerCache.invalidateAll();
                 return;
             }
 
-            System.out.println("Extracted text from " + pdfTexts.size() + " PDF(s)");
-
-            // Process each PDF separately to reduce memory footprint
-            for (int i = 0; i < pdfTexts.size(); i++) {
-                String pdfText = pdfTexts.get(i);
-                System.out.println("Chunking PDF " + (i + 1) + " of " + pdfTexts.size() + " (size: " + pdfText.length() + " chars)");
-                List<String> chunks = textChunkService.chunkText(pdfText);
-                allChunks.addAll(chunks);
-                System.out.println("Created " + chunks.size() + " chunks from PDF " + (i + 1));
-
-                // Suggest GC after processing each PDF
-                if (i < pdfTexts.size() - 1) {
-                    System.gc();
+            // Stream pages -> chunks -> batches into the sidecar's staging index under a new
+            // generation id, and build the BM25 index from the same batches. The sidecar keeps
+            // the previous generation after the commit, and queries stay pinned to it until the
+            // new generation is published below.
+            long sidecarGeneration = Math.max(System.currentTimeMillis(), generation.sidecarGeneration + 1);
+            boolean[] first = {true};
+            long start = System.currentTimeMillis();
+            Bm25Index.Builder lexical = lexicalIndex.newBuilder();
+            List<String> chunks = new ArrayList<>();
+            PdfIngestPipeline.Result result = ingestPipeline.run(pdfService.getAllPdfFiles(), null, batch -> {
+                pdfVectorClient.stageChunks(batch.getChunks(), !first[0], sidecarGeneration);
+                first[0] = false;
+                for (String chunk : batch.getChunks()) {
+                    lexical.add(chunk);
+                    chunks.add(chunk);
                 }
+            }, job);
+
+            if (result.totalChunks() == 0) {
+                System.err.println("WARNING: No PDF text extracted. Check if PDFs exist in the pdfs folder.");
+                generation = IndexGeneration.EMPTY;
+                answerCache.invalidateAll();
+                return;
             }
+            Bm25Index bm25 = lexicalIndex.build(lexical, chunks, start);
+            pdfVectorClient.commitStaged(sidecarGeneration);
+            generation = new IndexGeneration(EmbeddedVectorIndex.Generation.EMPTY, sidecarGeneration, bm25, result.totalChunks());
 
-            textChunks = allChunks;
-            System.out.println("Loaded " + textChunks.size() + " text chunks from PDFs");
+            System.out.println("Loaded " + generation.chunkCount + " text chunks from PDFs");
             System.out.println("Memory after: " + (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1024 / 1024 + " MB used");
 
-            pdfVectorClient.indexChunks(textChunks);
-
             lastIndexedAt = System.currentTimeMillis();
+            answerCache.invalidateAll();
         } catch (Exception e) {
             lastIndexError = e.getMessage();
             throw e;
@@ -118,16 +179,21 @@ public class SimilaritySearchService {
     }
     
     public List<String> findMostRelevantChunks(String query, int topK) {
-        if (textChunks.isEmpty() || query == null || query.trim().isEmpty()) {
+        IndexGeneration current = generation;
+        if (current.chunkCount == 0 || query == null || query.trim().isEmpty()) {
             return Collections.emptyList();
         }
 
-        RetrievalResult result = pdfVectorClient.query(query, topK);
+        RetrievalResult result = retrieve(current, query, topK);
         return result.getDocuments();
     }
     
     public int getChunkCount() {
-        return textChunks.size();
+        return generation.chunkCount;
+    }
+
+    public Map<String, Object> getLexicalStats() {
+        return lexicalIndex.getStats(generation.lexical);
     }
 
     public boolean isIndexing() {
@@ -142,40 +208,148 @@ public class SimilaritySearchService {
         return lastIndexedAt;
     }
 
+    /**
+     * Concurrent calls with the same normalized question and conversation share one
+     * classification, retrieval and LLM call (see {@link SingleFlight}).
+     */
     public ChatAnswer answerQuestion(String question,
                                      boolean allowSpeculation,
-                                     List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history) {
-        QueryIntent intent = intentClassifier.classify(question);
-        boolean conversationRef = intentClassifier.isConversationReference(question);
-        RetrievalResult retrieval = retrieveChunks(question);
+                                     List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                     RequestDeadline deadline) {
+        if (!coalescingEnabled) {
+            return answerQuestionOnce(question, allowSpeculation, history, deadline);
+        }
+        return answerFlights.call(coalescingKey(question, allowSpeculation, history),
+                () -> answerQuestionOnce(question, allowSpeculation, history, deadline));
+    }
+
+    private ChatAnswer answerQuestionOnce(String question,
+                                         boolean allowSpeculation,
+                                         List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                         RequestDeadline deadline) {
+        PreparedAnswer prepared = prepareAnswer(question, allowSpeculation, history, deadline);
+        if (prepared.hasDirectAnswer()) {
+            return prepared.toChatAnswer(prepared.getDirectAnswer());
+        }
+
+        // Use LLM to generate answer from relevant chunks and recent chat context
+        String answer = llmService.generateAnswer(
+                question,
+                prepared.getContextChunks(),
+                history,
+                prepared.getIntent(),
+                prepared.isSupported(),
+                prepared.isAllowSpeculation(),
+                deadline
+        );
+        return prepared.toChatAnswer(answer);
+    }
+
+    /**
+     * Runs classification, retrieval and the guardrails, stopping short of the LLM call so
+     * callers can either block on {@link LlmService#generateAnswer} or stream the answer.
+     * Classification and retrieval run concurrently through {@link AnswerStageGraph}.
+     */
+    public PreparedAnswer prepareAnswer(String question,
+                                        boolean allowSpeculation,
+                                        List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                        RequestDeadline deadline) {
+        AnswerStageGraph.Result<RetrievalResult> stages =
+                stageGraph.run(question, deadline, () -> retrieveChunks(question), emptyRetrieval());
+        return assemble(question, allowSpeculation, history, stages);
+    }
+
+    /**
+     * Non-blocking variant of {@link #answerQuestion}; classification and retrieval are
+     * subscribed together and nothing waits on a servlet thread.
+     */
+    public Mono<ChatAnswer> answerQuestionReactive(String question,
+                                                   boolean allowSpeculation,
+                                                   List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                                   RequestDeadline deadline) {
+        if (!coalescingEnabled) {
+            return answerQuestionReactiveOnce(question, allowSpeculation, history, deadline);
+        }
+        return answerFlights.run(coalescingKey(question, allowSpeculation, history),
+                () -> answerQuestionReactiveOnce(question, allowSpeculation, history, deadline));
+    }
+
+    private Mono<ChatAnswer> answerQuestionReactiveOnce(String question,
+                                                        boolean allowSpeculation,
+                                                        List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                                        RequestDeadline deadline) {
+        return prepareAnswerReactive(question, allowSpeculation, history, deadline).flatMap(prepared -> {
+            if (prepared.hasDirectAnswer()) {
+                return Mono.just(prepared.toChatAnswer(prepared.getDirectAnswer()));
+            }
+            return llmService.generateAnswerReactive(
+                    question,
+                    prepared.getContextChunks(),
+                    history,
+                    prepared.getIntent(),
+                    prepared.isSupported(),
+                    prepared.isAllowSpeculation(),
+                    deadline
+            ).map(prepared::toChatAnswer);
+        });
+    }
+
+    public Mono<PreparedAnswer> prepareAnswerReactive(String question,
+                                                      boolean allowSpeculation,
+                                                      List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                                      RequestDeadline deadline) {
+        return stageGraph.runReactive(question, deadline, retrieveChunksReactive(question), emptyRetrieval())
+                .map(stages -> assemble(question, allowSpeculation, history, stages));
+    }
+
+    public Map<String, Object> getCoalescingStats() {
+        return answerFlights.getStats();
+    }
+
+    private List<Object> coalescingKey(String question,
+                                       boolean allowSpeculation,
+                                       List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history) {
+        return List.of(AnswerCache.normalize(question), allowSpeculation, ChatHistoryService.contentKey(history));
+    }
+
+    private PreparedAnswer assemble(String question,
+                                    boolean allowSpeculation,
+                                    List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                    AnswerStageGraph.Result<RetrievalResult> stages) {
+        QueryIntent intent = stages.getIntent();
+        RetrievalResult retrieval = stages.getRetrieval();
+        boolean conversationRef = stages.isConversationRef();
         boolean supported = isSupported(retrieval) || (conversationRef && history != null && !history.isEmpty());
         boolean futuristic = intent != QueryIntent.FACT;
         boolean shouldSpeculate = allowSpeculation && futuristic;
 
-        String answer = generateAnswer(question, retrieval.getDocuments(), history, intent, supported, shouldSpeculate, conversationRef);
+        String directAnswer = answerWithoutLlm(retrieval.getDocuments(), history, intent, supported, shouldSpeculate, conversationRef);
 
-        return new ChatAnswer(
-                answer,
+        return new PreparedAnswer(
+                question,
+                retrieval.getDocuments(),
+                history,
                 intent,
                 supported,
                 shouldSpeculate,
+                shouldSpeculate,
                 retrieval.getMethod(),
-                List.of()
+                List.of(),
+                directAnswer
         );
     }
 
-    private String generateAnswer(String question,
-                                  List<String> relevantChunks,
-                                  List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
-                                  QueryIntent intent,
-                                  boolean supported,
-                                  boolean allowSpeculation,
-                                  boolean conversationRef) {
+    private String answerWithoutLlm(List<String> relevantChunks,
+                                    List<com.example.pdfchatbot.service.ChatHistoryService.ChatEntry> history,
+                                    QueryIntent intent,
+                                    boolean supported,
+                                    boolean allowSpeculation,
+                                    boolean conversationRef) {
         boolean hasHistory = history != null && !history.isEmpty();
         boolean hasChunks = relevantChunks != null && !relevantChunks.isEmpty();
 
         if (!hasChunks && !hasHistory) {
-            if (textChunks.isEmpty()) {
+            if (generation.chunkCount == 0) {
                 return "I couldn't find relevant information in the PDFs to answer your question. Please make sure you have PDF files in the pdfs folder and restart the server.";
             } else {
                 return "I couldn't find relevant information in the PDFs to answer your question. Try rephrasing your question or asking about a different topic.";
@@ -187,8 +361,7 @@ public class SimilaritySearchService {
             return buildGuardrailAnswer(relevantChunks);
         }
 
-        // Use LLM to generate answer from relevant chunks and recent chat context
-        return llmService.generateAnswer(question, relevantChunks, history, intent, supported, allowSpeculation);
+        return null;
     }
 
     private String buildGuardrailAnswer(List<String> relevantChunks) {
@@ -214,11 +387,129 @@ public class SimilaritySearchService {
     }
 
     private RetrievalResult retrieveChunks(String question) {
-        if (question == null || question.trim().isEmpty()) {
-            return new RetrievalResult(List.of(), List.of(), RetrievalMethod.NONE);
+        IndexGeneration current = generation;
+        if (current.chunkCount == 0 || question == null || question.trim().isEmpty()) {
+            return emptyRetrieval();
         }
 
-        return pdfVectorClient.query(question, topK);
+        return retrieve(current, question, topK);
+    }
+
+    /**
+     * Vector and lexical results both come from the generation read at the start, so a reload
+     * published mid-query cannot mix two indexes in one answer.
+     */
+    private Mono<RetrievalResult> retrieveChunksReactive(String question) {
+        IndexGeneration current = generation;
+        if (current.chunkCount == 0 || question == null || question.trim().isEmpty()) {
+            return Mono.just(emptyRetrieval());
+        }
+        switch (retrievalMode()) {
+            case "bm25":
+                return Mono.fromCallable(() -> lexicalIndex.query(current.lexical, question, topK));
+            case "hybrid":
+                int candidates = Math.max(topK, hybridCandidates);
+                return queryVectorsReactive(current, question, candidates)
+                        .map(vector -> fuse(vector, lexicalIndex.query(current.lexical, question, candidates), topK));
+            default:
+                if (vectorCircuitOpen()) {
+                    return Mono.fromCallable(() -> lexicalIndex.query(current.lexical, question, topK));
+                }
+                return queryVectorsReactive(current, question, topK);
+        }
+    }
+
+    private RetrievalResult retrieve(IndexGeneration current, String question, int k) {
+        switch (retrievalMode()) {
+            case "bm25":
+                return lexicalIndex.query(current.lexical, question, k);
+            case "hybrid":
+                int candidates = Math.max(k, hybridCandidates);
+                return fuse(queryVectors(current, question, candidates), lexicalIndex.query(current.lexical, question, candidates), k);
+            default:
+                if (vectorCircuitOpen()) {
+                    return lexicalIndex.query(current.lexical, question, k);
+                }
+                return queryVectors(current, question, k);
+        }
+    }
+
+    /**
+     * True while the FAISS sidecar's circuit is open; vector-only retrieval then answers from
+     * the BM25 index instead. Hybrid retrieval needs no switch, since an empty vector list
+     * already leaves the lexical one.
+     */
+    private boolean vectorCircuitOpen() {
+        if (isEmbeddedEngine() || circuitBreakers.isCallPermitted(OutboundConcurrencyLimiter.PDF_VECTOR)) {
+            return false;
+        }
+        logger.info("[retrieval] FAISS circuit open; answering from the lexical index");
+        return true;
+    }
+
+    private String retrievalMode() {
+        return retrievalMethod == null ? "vector" : retrievalMethod.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reciprocal rank fusion: each chunk scores the sum of 1 / (rrfK + rank) over the lists it
+     * appears in, so chunks found by both the vector and the lexical search rise to the top.
+     * If one side came back empty the other is returned as is.
+     */
+    private RetrievalResult fuse(RetrievalResult vector, RetrievalResult lexical, int k) {
+        if (lexical.getDocuments().isEmpty()) {
+            return truncate(vector, k);
+        }
+        if (vector.getDocuments().isEmpty()) {
+            return truncate(lexical, k);
+        }
+        Map<String, Double> fused = new LinkedHashMap<>();
+        for (RetrievalResult list : List.of(vector, lexical)) {
+            List<String> documents = list.getDocuments();
+            for (int rank = 0; rank < documents.size(); rank++) {
+                fused.merge(documents.get(rank), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(fused.entrySet());
+        ranked.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+        List<String> documents = new ArrayList<>(Math.min(k, ranked.size()));
+        List<Double> scores = new ArrayList<>(Math.min(k, ranked.size()));
+        for (Map.Entry<String, Double> entry : ranked.subList(0, Math.min(k, ranked.size()))) {
+            documents.add(entry.getKey());
+            scores.add(entry.getValue());
+        }
+        return new RetrievalResult(documents, scores, RetrievalMethod.HYBRID,
+                isSupported(vector) || isSupported(lexical));
+    }
+
+    private RetrievalResult truncate(RetrievalResult result, int k) {
+        if (result.getDocuments().size() <= k) {
+            return result;
+        }
+        return new RetrievalResult(result.getDocuments().subList(0, k), result.getScores().subList(0, k),
+                result.getMethod(), result.isGrounded());
+    }
+
+    private RetrievalResult emptyRetrieval() {
+        return new RetrievalResult(List.of(), List.of(), RetrievalMethod.NONE);
+    }
+
+    private boolean isEmbeddedEngine() {
+        return "embedded".equalsIgnoreCase(vectorEngine == null ? "" : vectorEngine.trim());
+    }
+
+    private RetrievalResult queryVectors(IndexGeneration current, String question, int k) {
+        if (isEmbeddedEngine()) {
+            return embeddedVectorIndex.query(current.vectors, question, k);
+        }
+        return pdfVectorClient.query(question, k, current.sidecarGeneration);
+    }
+
+    private Mono<RetrievalResult> queryVectorsReactive(IndexGeneration current, String question, int k) {
+        if (isEmbeddedEngine()) {
+            return embeddedVectorIndex.queryReactive(current.vectors, question, k);
+        }
+        return pdfVectorClient.queryReactive(question, k, current.sidecarGeneration);
     }
 
     private boolean isSupported(RetrievalResult result) {
@@ -231,7 +522,8 @@ public class SimilaritySearchService {
             return false;
         }
 
-        if (result.getMethod() == RetrievalMethod.FAISS) {
+        // Both engines score with inner product over normalized vectors, so one threshold applies.
+        if (result.getMethod() == RetrievalMethod.FAISS || result.getMethod() == RetrievalMethod.HNSW) {
             List<Double> scores = result.getScores();
             if (scores == null || scores.isEmpty()) {
                 return false;
@@ -239,9 +531,37 @@ public class SimilaritySearchService {
             double maxScore = scores.stream().max(Double::compareTo).orElse(0.0);
             return maxScore >= minFaissScore;
         }
+        if (result.getMethod() == RetrievalMethod.BM25) {
+            List<Double> scores = result.getScores();
+            return scores != null && !scores.isEmpty() && scores.get(0) >= minBm25Score;
+        }
+        if (result.getMethod() == RetrievalMethod.HYBRID) {
+            return result.isGrounded();
+        }
 
         return false;
     }
 
+    /**
+     * One published state of the PDF index: the vector side (an in-process HNSW generation for
+     * the embedded engine, a committed sidecar generation for FAISS), the BM25 index over the
+     * same chunks, and their count.
+     */
+    private static final class IndexGeneration {
+        private static final IndexGeneration EMPTY = new IndexGeneration(EmbeddedVectorIndex.Generation.EMPTY, 0, null, 0);
+
+        private final EmbeddedVectorIndex.Generation vectors;
+        private final long sidecarGeneration;
+        private final Bm25Index lexical;
+        private final int chunkCount;
+
+        private IndexGeneration(EmbeddedVectorIndex.Generation vectors, long sidecarGeneration, Bm25Index lexical, int chunkCount) {
+            this.vectors = vectors;
+            this.sidecarGeneration = sidecarGeneration;
+            this.lexical = lexical;
+            this.chunkCount = chunkCount;
+        }
+    }
+
 }
 
@@ -0,0 +1,95 @@
+package com.example.pdfchatbot.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Request coalescing: while work for a key is in flight, further callers with an equal key
+ * wait for that result instead of starting the same work again. Nothing is kept once the
+ * work finishes - this is not a cache - so each result is at most as old as its request.
+ * <p>
+ * The shared work runs to completion even if the caller that started it goes away; one
+ * caller's timeout does not cancel it for the others.
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * Blocking form: runs {@code work} on the calling thread, or waits for the equal call
+     * already running. Exceptions from the shared work are rethrown to every caller.
+     */
+    public V call(K key, Supplier<V> work) {
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            shared.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        started.incrementAndGet();
+        try {
+            V value = work.get();
+            promise.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            promise.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, promise);
+        }
+    }
+
+    /**
+     * Non-blocking form of {@link #call}. {@code work} is subscribed at most once per flight;
+     * cancelling the returned Mono only detaches that caller.
+     */
+    public Mono<V> run(K key, Supplier<Mono<V>> work) {
+        return Mono.defer(() -> {
+            CompletableFuture<V> promise = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, promise);
+            if (existing != null) {
+                shared.incrementAndGet();
+                return Mono.fromFuture(existing, true);
+            }
+            started.incrementAndGet();
+            Mono<V> source;
+            try {
+                source = work.get();
+            } catch (RuntimeException e) {
+                source = Mono.error(e);
+            }
+            source.toFuture().whenComplete((value, error) -> {
+                inFlight.remove(key, promise);
+                if (error != null) {
+                    promise.completeExceptionally(error);
+                } else {
+                    promise.complete(value);
+                }
+            });
+            return Mono.fromFuture(promise, true);
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("inFlight", inFlight.size());
+        stats.put("started", started.get());
+        stats.put("shared", shared.get());
+        return stats;
+    }
+}
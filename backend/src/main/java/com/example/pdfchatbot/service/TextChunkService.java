@@ -1,103 +1,346 @@
 package com.example.pdfchatbot.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class TextChunkService {
+    private static final Logger logger = LoggerFactory.getLogger(TextChunkService.class);
     private static final int CHUNK_SIZE = 500;
     private static final int OVERLAP = 100;
-    
+
+    @Autowired
+    private BpeTokenizer tokenizer;
+
+    @Value("${chunk.mode:characters}")
+    private String mode;
+
+    @Value("${chunk.maxTokens:400}")
+    private int maxTokens;
+
+    @Value("${chunk.overlapTokens:80}")
+    private int overlapTokens;
+
+    private boolean tokenMode;
+
+    @PostConstruct
+    public void initialize() {
+        if (!"tokens".equalsIgnoreCase(mode == null ? "" : mode.trim())) {
+            return;
+        }
+        if (tokenizer == null || !tokenizer.isAvailable()) {
+            logger.warn("chunk.mode=tokens needs a tokenizer vocab (tokenizer.vocabFile); chunking by characters");
+            return;
+        }
+        maxTokens = Math.max(16, maxTokens);
+        overlapTokens = Math.max(0, Math.min(overlapTokens, maxTokens / 2));
+        tokenMode = true;
+        logger.info("Chunking by tokens: maxTokens={} overlapTokens={}", maxTokens, overlapTokens);
+    }
+
+    /**
+     * Identifies the chunking settings, so an index built with different ones is not reused.
+     */
+    public String describe() {
+        return tokenMode
+                ? "tokens:" + maxTokens + "/" + overlapTokens
+                : "characters:" + CHUNK_SIZE + "/" + OVERLAP;
+    }
+
     public List<String> chunkText(String text) {
         List<String> chunks = new ArrayList<>();
-        
+
         if (text == null || text.trim().isEmpty()) {
             return chunks;
         }
-        
-        // Process text in a more memory-efficient way
-        // Split by sentences or paragraphs, whichever is smaller
-        String normalizedText = text.replaceAll("\\r\\n", "\n").replaceAll("\\r", "\n");
-        
-        // Split by double newlines (paragraphs) first
-        String[] paragraphs = normalizedText.split("\\n\\s*\\n");
-        
-        StringBuilder currentChunk = new StringBuilder(CHUNK_SIZE);
-        
-        for (String paragraph : paragraphs) {
-            paragraph = paragraph.trim().replaceAll("\\s+", " ");
-            if (paragraph.isEmpty()) continue;
-            
-            // If paragraph itself is very large, split it by sentences
-            if (paragraph.length() > CHUNK_SIZE * 2) {
-                // First, save current chunk if it exists
-                if (currentChunk.length() > 0) {
-                    chunks.add(currentChunk.toString());
-                    currentChunk.setLength(0);
+
+        Chunker chunker = newChunker(chunks::add);
+        chunker.accept(text);
+        chunker.finish();
+        return chunks;
+    }
+
+    /**
+     * Returns a chunker that can be fed a document piece by piece (e.g. a few pages at a
+     * time) and emits the same chunks as {@link #chunkText} on the concatenated text.
+     */
+    public Chunker newChunker(Consumer<String> sink) {
+        return tokenMode ? new Chunker(sink, tokenizer, maxTokens, overlapTokens) : new Chunker(sink, null, 0, 0);
+    }
+
+    public List<String> chunkAllTexts(List<String> texts) {
+        List<String> allChunks = new ArrayList<>();
+        for (String text : texts) {
+            allChunks.addAll(chunkText(text));
+        }
+        return allChunks;
+    }
+
+    /**
+     * Single-pass chunker. Each character is looked at once: line endings are normalized,
+     * whitespace runs are collapsed to one space, and a run holding two or more newlines
+     * ends the paragraph. Paragraphs and sentences are handled as offsets into a reused
+     * buffer; the only Strings created are the emitted chunks. Output is the same as the
+     * earlier regex version (paragraphs split on {@code \n\s*\n}, {@code \s+} collapsed,
+     * long paragraphs split on {@code [.!?]+\s+}).
+     *
+     * <p>In token mode the same paragraphs and sentences are packed up to {@code maxTokens}
+     * cl100k tokens instead of characters, carrying about {@code overlapTokens} tokens of
+     * overlap (cut at a word boundary). Paragraphs over the budget are split by sentence
+     * and sentences over the budget into word-aligned windows, so no chunk exceeds the
+     * budget by more than the odd token where pieces merge across a join.
+     */
+    public static final class Chunker {
+        private final Consumer<String> sink;
+        private final BpeTokenizer tokenizer;
+        private final int maxTokens;
+        private final int overlapTokens;
+        private int currentTokens;
+        private final StringBuilder currentChunk = new StringBuilder(CHUNK_SIZE * 2);
+        private char[] paragraph = new char[1024];
+        private int paragraphLength;
+        private boolean inWhitespace;
+        private int whitespaceNewlines;
+        private boolean skipLineFeed;
+
+        private Chunker(Consumer<String> sink, BpeTokenizer tokenizer, int maxTokens, int overlapTokens) {
+            this.sink = sink;
+            this.tokenizer = tokenizer;
+            this.maxTokens = maxTokens;
+            this.overlapTokens = overlapTokens;
+        }
+
+        public void accept(String text) {
+            if (text == null) {
+                return;
+            }
+            for (int i = 0, n = text.length(); i < n; i++) {
+                char c = text.charAt(i);
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (c == '\n') {
+                        // Second half of \r\n, already counted.
+                        continue;
+                    }
+                }
+                if (c == '\r') {
+                    skipLineFeed = true;
+                    c = '\n';
                 }
-                
-                // Split large paragraph by sentences
-                String[] sentences = paragraph.split("[.!?]+\\s+");
-                for (String sentence : sentences) {
-                    sentence = sentence.trim();
-                    if (sentence.isEmpty()) continue;
-                    
-                    if (currentChunk.length() + sentence.length() + 1 > CHUNK_SIZE && currentChunk.length() > 0) {
-                        chunks.add(currentChunk.toString());
-                        // Keep overlap from end of previous chunk
-                        if (currentChunk.length() > OVERLAP) {
-                            String overlap = currentChunk.substring(currentChunk.length() - OVERLAP);
-                            currentChunk.setLength(0);
-                            currentChunk.append(overlap).append(" ");
-                        } else {
-                            currentChunk.setLength(0);
-                        }
+                if (isWhitespace(c)) {
+                    inWhitespace = true;
+                    if (c == '\n') {
+                        whitespaceNewlines++;
                     }
-                    if (currentChunk.length() > 0) {
-                        currentChunk.append(" ");
+                    continue;
+                }
+                if (inWhitespace) {
+                    if (whitespaceNewlines >= 2) {
+                        endParagraph();
+                    } else if (paragraphLength > 0) {
+                        appendToParagraph(' ');
                     }
-                    currentChunk.append(sentence);
+                    inWhitespace = false;
+                    whitespaceNewlines = 0;
+                }
+                appendToParagraph(c);
+            }
+        }
+
+        public void finish() {
+            endParagraph();
+            inWhitespace = false;
+            whitespaceNewlines = 0;
+            skipLineFeed = false;
+
+            // Add remaining chunk
+            flush();
+        }
+
+        private void appendToParagraph(char c) {
+            if (paragraphLength == paragraph.length) {
+                paragraph = Arrays.copyOf(paragraph, paragraphLength * 2);
+            }
+            paragraph[paragraphLength++] = c;
+        }
+
+        private void endParagraph() {
+            int start = trimStart(paragraph, 0, paragraphLength);
+            int end = trimEnd(paragraph, start, paragraphLength);
+            paragraphLength = 0;
+            if (start == end) return;
+
+            if (tokenizer != null) {
+                int tokens = tokenizer.countTokens(CharBuffer.wrap(paragraph, start, end - start));
+                if (tokens > maxTokens) {
+                    flush();
+                    splitSentences(start, end);
+                } else {
+                    addTokenUnit(start, end, tokens, "\n\n", 1);
                 }
+                return;
+            }
+
+            // If paragraph itself is very large, split it by sentences
+            if (end - start > CHUNK_SIZE * 2) {
+                // First, save current chunk if it exists
+                flush();
+                splitSentences(start, end);
             } else {
+                int length = end - start;
                 // Normal paragraph processing
-                if (currentChunk.length() > 0 && 
-                    currentChunk.length() + paragraph.length() + 2 > CHUNK_SIZE) {
-                    chunks.add(currentChunk.toString());
-                    
+                if (currentChunk.length() > 0 &&
+                    currentChunk.length() + length + 2 > CHUNK_SIZE) {
+                    sink.accept(currentChunk.toString());
+
                     // Create overlap
                     if (currentChunk.length() > OVERLAP) {
-                        String overlap = currentChunk.substring(currentChunk.length() - OVERLAP);
-                        currentChunk.setLength(0);
-                        currentChunk.append(overlap).append("\n\n").append(paragraph);
+                        keepOverlap();
+                        currentChunk.append("\n\n");
                     } else {
                         currentChunk.setLength(0);
-                        currentChunk.append(paragraph);
                     }
-                } else {
-                    if (currentChunk.length() > 0) {
-                        currentChunk.append("\n\n");
+                } else if (currentChunk.length() > 0) {
+                    currentChunk.append("\n\n");
+                }
+                currentChunk.append(paragraph, start, length);
+            }
+        }
+
+        private void splitSentences(int start, int end) {
+            // A sentence ends at a run of [.!?] followed by whitespace; the run and the
+            // (already collapsed) space are dropped.
+            int sentenceStart = start;
+            int i = start;
+            while (i < end) {
+                if (!isSentenceEnd(paragraph[i])) {
+                    i++;
+                    continue;
+                }
+                int runStart = i;
+                while (i < end && isSentenceEnd(paragraph[i])) {
+                    i++;
+                }
+                if (i < end && isWhitespace(paragraph[i])) {
+                    addSentence(sentenceStart, runStart);
+                    i++;
+                    sentenceStart = i;
+                }
+            }
+            addSentence(sentenceStart, end);
+        }
+
+        private void flush() {
+            if (currentChunk.length() > 0) {
+                sink.accept(currentChunk.toString());
+                currentChunk.setLength(0);
+                currentTokens = 0;
+            }
+        }
+
+        private void addSentence(int from, int to) {
+            int start = trimStart(paragraph, from, to);
+            int end = trimEnd(paragraph, start, to);
+            if (start == end) return;
+            int length = end - start;
+
+            if (tokenizer != null) {
+                int tokens = tokenizer.countTokens(CharBuffer.wrap(paragraph, start, length));
+                if (tokens <= maxTokens) {
+                    // A space before a word usually merges into the word's token.
+                    addTokenUnit(start, end, tokens, " ", 0);
+                    return;
+                }
+                // Sentence longer than the budget: cut it into word-aligned windows.
+                while (start < end) {
+                    int cut = start + tokenizer.prefixEnd(CharBuffer.wrap(paragraph, start, end - start), maxTokens);
+                    int windowEnd = trimEnd(paragraph, start, cut);
+                    if (windowEnd > start) {
+                        addTokenUnit(start, windowEnd,
+                                tokenizer.countTokens(CharBuffer.wrap(paragraph, start, windowEnd - start)), " ", 0);
                     }
-                    currentChunk.append(paragraph);
+                    start = trimStart(paragraph, cut, end);
                 }
+                return;
             }
+
+            if (currentChunk.length() + length + 1 > CHUNK_SIZE && currentChunk.length() > 0) {
+                sink.accept(currentChunk.toString());
+                // Keep overlap from end of previous chunk
+                if (currentChunk.length() > OVERLAP) {
+                    keepOverlap();
+                    currentChunk.append(' ');
+                } else {
+                    currentChunk.setLength(0);
+                }
+            }
+            if (currentChunk.length() > 0) {
+                currentChunk.append(' ');
+            }
+            currentChunk.append(paragraph, start, length);
         }
-        
-        // Add remaining chunk
-        if (currentChunk.length() > 0) {
-            chunks.add(currentChunk.toString());
+
+        private void addTokenUnit(int start, int end, int tokens, String separator, int separatorTokens) {
+            if (currentChunk.length() > 0 && currentTokens + separatorTokens + tokens > maxTokens) {
+                sink.accept(currentChunk.toString());
+                keepTokenOverlap();
+                if (currentTokens + separatorTokens + tokens > maxTokens) {
+                    currentChunk.setLength(0);
+                    currentTokens = 0;
+                }
+            }
+            if (currentChunk.length() > 0) {
+                currentChunk.append(separator);
+                currentTokens += separatorTokens;
+            }
+            currentChunk.append(paragraph, start, end - start);
+            currentTokens += tokens;
         }
-        
-        return chunks;
-    }
-    
-    public List<String> chunkAllTexts(List<String> texts) {
-        List<String> allChunks = new ArrayList<>();
-        for (String text : texts) {
-            allChunks.addAll(chunkText(text));
+
+        private void keepOverlap() {
+            currentChunk.delete(0, currentChunk.length() - OVERLAP);
+        }
+
+        private void keepTokenOverlap() {
+            int from = overlapTokens > 0 ? tokenizer.suffixStart(currentChunk, overlapTokens) : currentChunk.length();
+            while (from < currentChunk.length() && currentChunk.charAt(from) <= ' ') {
+                from++;
+            }
+            currentChunk.delete(0, from);
+            currentTokens = tokenizer.countTokens(currentChunk);
+        }
+
+        // Same character classes as the regex \s and String.trim() in the earlier version.
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\n' || c == '\t' || c == '\f' || c == '\u000B' || c == '\r';
+        }
+
+        private static boolean isSentenceEnd(char c) {
+            return c == '.' || c == '!' || c == '?';
+        }
+
+        private static int trimStart(char[] chars, int start, int end) {
+            while (start < end && chars[start] <= ' ') {
+                start++;
+            }
+            return start;
+        }
+
+        private static int trimEnd(char[] chars, int start, int end) {
+            while (end > start && chars[end - 1] <= ' ') {
+                end--;
+            }
+            return end;
         }
-        return allChunks;
     }
 }
-
@@ -0,0 +1,97 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.ChatAnswer;
+import com.example.pdfchatbot.model.QueryIntent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnswerCacheTest {
+    private static final Map<String, float[]> EMBEDDINGS = Map.of(
+            "What is the width of the G200 shade?", new float[]{1f, 0f, 0f},
+            "what's the width of the G200 shade", new float[]{0.99f, 0.1f, 0f},
+            "How do I clean the fabric?", new float[]{0f, 0f, 1f},
+            "What is the price of the MA6-001?", new float[]{0f, 1f, 0f},
+            "What is the price of the MA6-002?", new float[]{0f, 0.999f, 0.04f},
+            "What colours does it come in?", new float[]{0.6f, 0.8f, 0f});
+
+    private AnswerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new AnswerCache();
+        ReflectionTestUtils.setField(cache, "embeddingService", new EmbeddingService() {
+            @Override
+            public Mono<List<float[]>> embedVectorsReactive(List<String> texts, int batchSize) {
+                return Mono.just(List.of(EMBEDDINGS.get(texts.get(0)).clone()));
+            }
+        });
+        ReflectionTestUtils.setField(cache, "intentClassifier", new QueryIntentClassifier());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "semanticEnabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", 10);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 3600L);
+        ReflectionTestUtils.setField(cache, "similarityThreshold", 0.95);
+    }
+
+    @Test
+    void nearDuplicateQuestionHitsSemanticTier() {
+        AnswerCache.Lookup miss = cache.lookup("What is the width of the G200 shade?", List.of());
+        assertFalse(miss.isHit());
+        cache.store(miss, answer("120 cm"));
+
+        AnswerCache.Lookup hit = cache.lookup("what's the width of the G200 shade", List.of());
+        assertTrue(hit.isHit());
+        assertEquals("120 cm", hit.getAnswer().getAnswer());
+        assertFalse(cache.lookup("How do I clean the fabric?", List.of()).isHit());
+    }
+
+    @Test
+    void reloadDropsSemanticEntriesAndLateStores() {
+        AnswerCache.Lookup miss = cache.lookup("What is the width of the G200 shade?", List.of());
+        cache.store(miss, answer("120 cm"));
+        AnswerCache.Lookup pending = cache.lookup("How do I clean the fabric?", List.of());
+
+        cache.invalidateAll();
+        cache.store(pending, answer("stale"));
+
+        assertFalse(cache.lookup("what's the width of the G200 shade", List.of()).isHit());
+        assertFalse(cache.lookup("How do I clean the fabric?", List.of()).isHit());
+    }
+
+    @Test
+    void differentModelNumbersDoNotShareAnAnswer() {
+        AnswerCache.Lookup miss = cache.lookup("What is the price of the MA6-001?", List.of());
+        cache.store(miss, answer("EUR 120"));
+
+        assertTrue(cache.lookup("What is the price of the MA6-001?", List.of()).isHit());
+        assertFalse(cache.lookup("What is the price of the MA6-002?", List.of()).isHit());
+    }
+
+    @Test
+    void followUpsAreOnlySharedWithinTheSameConversation() {
+        List<ChatHistoryService.ChatEntry> g200 = List.of(
+                new ChatHistoryService.ChatEntry(1L, "Tell me about the G200", "The G200 is a roller shade."));
+        List<ChatHistoryService.ChatEntry> ma6 = List.of(
+                new ChatHistoryService.ChatEntry(1L, "Tell me about the MA6-001", "The MA6-001 is a motor."));
+        AnswerCache.Lookup miss = cache.lookup("What colours does it come in?", g200);
+        assertFalse(miss.isHit());
+        cache.store(miss, answer("White and grey"));
+
+        assertTrue(cache.lookup("What colours does it come in?", g200).isHit());
+        assertFalse(cache.lookup("What colours does it come in?", ma6).isHit());
+        assertFalse(cache.lookup("What colours does it come in?", List.of()).isHit());
+    }
+
+    private static ChatAnswer answer(String text) {
+        return new ChatAnswer(text, QueryIntent.FACT, true, false, "FAISS", List.of());
+    }
+}
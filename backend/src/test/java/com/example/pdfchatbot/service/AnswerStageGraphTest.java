@@ -0,0 +1,67 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.QueryIntent;
+import com.example.pdfchatbot.model.RequestDeadline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnswerStageGraphTest {
+    private ExecutorService executor;
+    private AnswerStageGraph graph;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+        graph = new AnswerStageGraph();
+        ReflectionTestUtils.setField(graph, "intentClassifier", new QueryIntentClassifier() {
+            @Override
+            public QueryIntent classify(String question) {
+                return QueryIntent.FACT;
+            }
+        });
+        ReflectionTestUtils.setField(graph, "executor", executor);
+        ReflectionTestUtils.setField(graph, "classifyTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(graph, "conversationRefTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(graph, "retrievalTimeoutMs", 100L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void timedOutStageIsInterrupted() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AnswerStageGraph.Result<String> result = graph.run("what is the width", RequestDeadline.none(), () -> {
+            try {
+                Thread.sleep(30_000);
+                return "late";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                return "interrupted";
+            }
+        }, "fallback");
+
+        assertEquals("fallback", result.getRetrieval());
+        assertEquals(QueryIntent.FACT, result.getIntent());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "timed-out retrieval kept running");
+    }
+
+    @Test
+    void completedStagesAreNotFallenBackOn() {
+        AnswerStageGraph.Result<String> result = graph.run("what is the width", RequestDeadline.none(),
+                () -> "retrieved", "fallback");
+        assertEquals("retrieved", result.getRetrieval());
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.pdfchatbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Bm25IndexTest {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    @Test
+    void modelNumbersAreIndexedWholeAndByParts() {
+        List<String> terms = new ArrayList<>();
+        Bm25Index.analyze("MA6-001 the Motor", terms::add);
+        assertEquals(List.of("ma6", "001", "ma6-001", "motor"), terms);
+
+        Bm25Index index = build(List.of(
+                "The MA6-002 motor is rated for 6 Nm",
+                "The MA6-001 motor is the quiet option",
+                "Fabric care: vacuum gently with a soft brush"));
+        List<Bm25Index.Hit> hits = index.search("what torque does the MA6-001 have", 3);
+        assertEquals(1, hits.get(0).getId());
+        assertTrue(index.search("the of and", 3).isEmpty());
+        assertTrue(index.search("zebra", 3).isEmpty());
+    }
+
+    @Test
+    void scoresMatchPlainBm25() {
+        // Enough documents and repeats that gaps and term frequencies need multi-byte varints.
+        Random random = new Random(3);
+        List<String> documents = new ArrayList<>();
+        for (int d = 0; d < 600; d++) {
+            StringBuilder text = new StringBuilder();
+            int words = d % 97 == 0 ? 300 : 5 + random.nextInt(40);
+            for (int w = 0; w < words; w++) {
+                // Skewed term distribution: low ids are common, high ids rare.
+                int term = (int) Math.floor(Math.pow(random.nextDouble(), 3) * 400);
+                text.append(d % 97 == 0 ? "common" : "t" + term).append(' ');
+            }
+            documents.add(text.toString());
+        }
+        Bm25Index index = build(documents);
+
+        for (String query : List.of("t0", "t1 t350", "t5 t17 t399", "common t2", "t100 t101 t102 t103")) {
+            List<Bm25Index.Hit> hits = index.search(query, 10);
+            double[] expected = plainScores(documents, query);
+            List<Double> ranked = new ArrayList<>();
+            for (double score : expected) {
+                if (score > 0) {
+                    ranked.add(score);
+                }
+            }
+            ranked.sort((a, b) -> Double.compare(b, a));
+
+            assertEquals(Math.min(10, ranked.size()), hits.size(), query);
+            for (int i = 0; i < hits.size(); i++) {
+                Bm25Index.Hit hit = hits.get(i);
+                assertEquals(expected[hit.getId()], hit.getScore(), 1e-3, query + " doc " + hit.getId());
+                assertEquals(ranked.get(i), hit.getScore(), 1e-3, query + " rank " + i);
+            }
+        }
+    }
+
+    private static Bm25Index build(List<String> documents) {
+        Bm25Index.Builder builder = Bm25Index.builder(K1, B);
+        documents.forEach(builder::add);
+        return builder.build(documents);
+    }
+
+    /**
+     * Textbook BM25 over the same analyzer, with the index's rule for skipping near-zero idf terms.
+     */
+    private static double[] plainScores(List<String> documents, String query) {
+        int n = documents.size();
+        List<Map<String, Integer>> frequencies = new ArrayList<>();
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        double totalLength = 0;
+        int[] lengths = new int[n];
+        for (int d = 0; d < n; d++) {
+            Map<String, Integer> tf = new HashMap<>();
+            Bm25Index.analyze(documents.get(d), term -> tf.merge(term, 1, Integer::sum));
+            tf.keySet().forEach(term -> documentFrequency.merge(term, 1, Integer::sum));
+            frequencies.add(tf);
+            lengths[d] = tf.values().stream().mapToInt(Integer::intValue).sum();
+            totalLength += lengths[d];
+        }
+        double averageLength = Math.max(1, totalLength / n);
+
+        List<String> terms = new ArrayList<>();
+        Bm25Index.analyze(query, term -> {
+            if (!terms.contains(term)) {
+                terms.add(term);
+            }
+        });
+        Map<String, Double> idfs = new HashMap<>();
+        double maxIdf = 0;
+        for (String term : terms) {
+            Integer df = documentFrequency.get(term);
+            if (df != null) {
+                double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+                idfs.put(term, idf);
+                maxIdf = Math.max(maxIdf, idf);
+            }
+        }
+
+        double[] scores = new double[n];
+        for (Map.Entry<String, Double> term : idfs.entrySet()) {
+            if (term.getValue() < 0.05 && maxIdf >= 0.05) {
+                continue;
+            }
+            for (int d = 0; d < n; d++) {
+                Integer tf = frequencies.get(d).get(term.getKey());
+                if (tf != null) {
+                    double norm = K1 * (1 - B + B * lengths[d] / averageLength);
+                    scores[d] += term.getValue() * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.pdfchatbot.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class BpeTokenizerTest {
+    // Same digest as tiktoken's own check and the Dockerfile's ADD --checksum.
+    private static final String CL100K_SHA256 = "223921b76ee99bde995b7ff738513eef100fb51d18c93597a113bcffe865b2a7";
+
+    // Reference ids from OpenAI's tiktoken with cl100k_base.
+    private static final Map<String, int[]> CL100K_ENCODINGS = Map.of(
+            "hello world", new int[]{15339, 1917},
+            "Hello, world!", new int[]{9906, 11, 1917, 0},
+            "tiktoken is great!", new int[]{83, 1609, 5963, 374, 2294, 0},
+            "2 + 2 = 4", new int[]{17, 489, 220, 17, 284, 220, 19},
+            "お誕生日おめでとう", new int[]{33334, 45918, 243, 21990, 9080, 33334, 62004, 16556, 78699});
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void matchesTiktokenCl100kEncodings() throws Exception {
+        Path vocab = findCl100kVocab();
+        assumeTrue(vocab != null, "cl100k_base.tiktoken not present; set -Dtokenizer.vocabFile to run");
+        assertEquals(CL100K_SHA256, sha256(vocab), "unexpected cl100k vocab");
+
+        BpeTokenizer tokenizer = open(vocab);
+        for (Map.Entry<String, int[]> expected : CL100K_ENCODINGS.entrySet()) {
+            assertArrayEquals(expected.getValue(), tokenizer.encode(expected.getKey()), expected.getKey());
+            assertEquals(expected.getValue().length, tokenizer.countTokens(expected.getKey()), expected.getKey());
+        }
+    }
+
+    @Test
+    void mergesLowestRankedPairFirst() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int b = 0; b < 256; b++) {
+            lines.add(Base64.getEncoder().encodeToString(new byte[]{(byte) b}) + " " + b);
+        }
+        lines.add(token("ab") + " 256");
+        lines.add(token("cd") + " 257");
+        lines.add(token("abcd") + " 258");
+        lines.add(token("bc") + " 259");
+        Path vocab = dir.resolve("tiny.tiktoken");
+        Files.write(vocab, lines, StandardCharsets.US_ASCII);
+
+        BpeTokenizer tokenizer = open(vocab);
+        assertArrayEquals(new int[]{258}, tokenizer.encode("abcd"));
+        // ab (256) beats bc (259); then cd, then ab+cd.
+        assertArrayEquals(new int[]{258, 'e'}, tokenizer.encode("abcde"));
+        assertArrayEquals(new int[]{258, 'e'}, tokenizer.encode("abcde"));
+        assertArrayEquals(new int[]{'x', 256, 256, ' ', 'b', 259}, tokenizer.encode("xabab bbc"));
+        assertEquals(6, tokenizer.countTokens("xabab bbc"));
+    }
+
+    private static BpeTokenizer open(Path vocab) {
+        BpeTokenizer tokenizer = new BpeTokenizer();
+        ReflectionTestUtils.setField(tokenizer, "resourceLoader", new DefaultResourceLoader());
+        ReflectionTestUtils.setField(tokenizer, "vocabFile", vocab.toString());
+        ReflectionTestUtils.setField(tokenizer, "cacheSize", 1000);
+        tokenizer.initialize();
+        return tokenizer;
+    }
+
+    private static Path findCl100kVocab() {
+        String configured = System.getProperty("tokenizer.vocabFile");
+        List<Path> candidates = configured != null
+                ? List.of(Path.of(configured))
+                : List.of(Path.of("cl100k_base.tiktoken"), Path.of("..", "cl100k_base.tiktoken"));
+        return candidates.stream().filter(Files::isRegularFile).findFirst().orElse(null);
+    }
+
+    private static String token(String text) {
+        return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha256(Path file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
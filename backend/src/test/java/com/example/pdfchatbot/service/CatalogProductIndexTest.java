@@ -0,0 +1,70 @@
+package com.example.pdfchatbot.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CatalogProductIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private CatalogProductIndex index;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.writeString(dir.resolve("shades_products.json"), """
+                [
+                  {"product_name": "Roller Shade", "model_number": "MA6-001",
+                   "dimensions": "36 x 72 in", "colors": "Ivory, Grey", "materials": null},
+                  {"product_name": "Awning", "model_number": "AF1-002",
+                   "dimensions": "10 x 8 ft", "colors": "Blue", "materials": "Acrylic"}
+                ]
+                """);
+        index = new CatalogProductIndex();
+        ReflectionTestUtils.setField(index, "catalogEnabled", true);
+        ReflectionTestUtils.setField(index, "lookupEnabled", true);
+        ReflectionTestUtils.setField(index, "productsDir", dir.toString());
+        index.initialize();
+    }
+
+    @Test
+    void answersAttributeAskedAbout() {
+        CatalogProductIndex.Match match = index.lookup("What color is MA6-001?");
+        assertNotNull(match);
+        assertEquals("MA6001", match.getKey());
+        assertEquals(CatalogProductIndex.Attribute.COLORS, match.getAttribute());
+
+        assertNotNull(index.lookup("What are the dimensions of ma6 001"));
+        assertNotNull(index.lookup("MA6-001 dimensions?"));
+        assertNotNull(index.lookup("Which colors does the AF1-002 come in"));
+    }
+
+    @Test
+    void ignoresAttributeWordThatIsNotTheSubject() {
+        assertNull(index.lookup("what size motor do I need for MA6-001"));
+        assertNull(index.lookup("Is MA6-001 available in white color?"));
+    }
+
+    @Test
+    void fallsThroughWhenValueIsMissing() {
+        assertNull(index.lookup("What material is MA6-001?"));
+        assertNotNull(index.lookup("What material is AF1-002?"));
+    }
+
+    @Test
+    void fallsThroughForOpenEndedOrAmbiguousQuestions() {
+        assertNull(index.lookup("Compare the color of MA6-001 and AF1-002"));
+        assertNull(index.lookup("What color is MA6-001 or AF1-002?"));
+        assertNull(index.lookup("What color is the XYZ-999?"));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.pdfchatbot.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatHistoryServiceTest {
+    private ChatHistoryService history;
+
+    @BeforeEach
+    void setUp() {
+        history = new ChatHistoryService();
+        ReflectionTestUtils.setField(history, "maxEntries", 10);
+        ReflectionTestUtils.setField(history, "ttlMinutes", 30L);
+        ReflectionTestUtils.setField(history, "maxSessions", 4);
+        ReflectionTestUtils.setField(history, "summarizeEnabled", false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        history.shutdown();
+    }
+
+    @Test
+    void evictionOverCapKeepsTheSessionJustWritten() {
+        for (int i = 0; i < 50; i++) {
+            history.addEntry("session-" + i, "question " + i, "answer " + i);
+            List<ChatHistoryService.ChatEntry> entries = history.getHistory("session-" + i);
+            assertEquals(1, entries.size());
+            assertEquals("question " + i, entries.get(0).getQuestion());
+        }
+        assertTrue((int) history.getStats().get("sessions") <= 4);
+    }
+
+    @Test
+    void concurrentTurnsToOneSessionSurviveSweeps() throws Exception {
+        // Each writer alternates a new session with "kept", so "kept" stays among the most
+        // recent few sessions and must never be evicted under a cap of 16.
+        ReflectionTestUtils.setField(history, "maxSessions", 16);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        history.addEntry("other-" + thread + "-" + i, "q", "a");
+                        history.addEntry("kept", "q" + thread, "a");
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(10, history.getHistory("kept").size());
+    }
+
+    @Test
+    void turnsAddedWhileASummaryRunsAreSummarizedLater() throws Exception {
+        List<List<String>> folds = slowSummaries(64, 30);
+
+        // Every turn before the second fold's end reached the summarizer exactly once, in order.
+        List<String> summarized = new ArrayList<>();
+        folds.forEach(summarized::addAll);
+        for (int i = 0; i < summarized.size(); i++) {
+            assertEquals("q" + i, summarized.get(i));
+        }
+        assertEquals(0L, history.getStats().get("unsummarizedDropped"));
+    }
+
+    @Test
+    void turnsBeyondTheBacklogAreCountedAsDropped() throws Exception {
+        List<List<String>> folds = slowSummaries(2, 30);
+
+        // The first fold covers q0..q4; the second starts after the turns that were dropped.
+        assertEquals("q4", folds.get(0).get(folds.get(0).size() - 1));
+        int resumedAt = Integer.parseInt(folds.get(1).get(0).substring(1));
+        assertTrue(resumedAt > 5);
+        assertEquals((long) resumedAt - 5, history.getStats().get("unsummarizedDropped"));
+    }
+
+    /**
+     * Adds {@code turns} turns, all but the first nine while the first summary is blocked, then keeps adding until the
+     * second summary has been taken. Returns the questions each summary was given.
+     */
+    private List<List<String>> slowSummaries(int maxBacklogTurns, int turns) throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(2);
+        List<List<String>> folds = new CopyOnWriteArrayList<>();
+        ReflectionTestUtils.setField(history, "llmService", new LlmService() {
+            @Override
+            public String summarizeConversation(String previousSummary, List<ChatHistoryService.ChatEntry> entries) {
+                folds.add(entries.stream().map(ChatHistoryService.ChatEntry::getQuestion).toList());
+                first.countDown();
+                second.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "summary " + folds.size();
+            }
+        });
+        ReflectionTestUtils.setField(history, "summarizeEnabled", true);
+        ReflectionTestUtils.setField(history, "summarizeAfterTurns", 8);
+        ReflectionTestUtils.setField(history, "keepTurns", 4);
+        ReflectionTestUtils.setField(history, "maxBacklogTurns", maxBacklogTurns);
+
+        int added = 0;
+        while (added < turns) {
+            history.addEntry("s", "q" + added, "a" + added);
+            added++;
+            if (added == 9) {
+                // The ninth turn starts the first summary: q0..q4, keeping the last four.
+                assertTrue(first.await(5, TimeUnit.SECONDS));
+            }
+        }
+        release.countDown();
+        while (!second.await(20, TimeUnit.MILLISECONDS)) {
+            assertTrue(added < turns + 200, "second summary never started");
+            history.addEntry("s", "q" + added, "a" + added);
+            added++;
+        }
+        return folds;
+    }
+}
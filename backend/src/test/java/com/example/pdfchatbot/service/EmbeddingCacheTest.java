@@ -0,0 +1,113 @@
+package com.example.pdfchatbot.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingCacheTest {
+    private static final String MODEL = "test-model";
+    private static final int DIMENSION = 1536;
+
+    @TempDir
+    Path dir;
+
+    private EmbeddingCache cache;
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Test
+    void vectorsSurviveReopen() throws Exception {
+        cache = open(10);
+        for (int i = 0; i < 20; i++) {
+            cache.put(MODEL, "text " + i, vector(i));
+        }
+        awaitDiskEntries(cache, 20);
+        cache.close();
+
+        cache = open(10);
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(vector(i), cache.get(MODEL, "text " + i));
+        }
+        assertNull(cache.get(MODEL, "never stored"));
+    }
+
+    @Test
+    void diskLogIsCompactedToItsNewestRecords() throws Exception {
+        cache = open(1);
+        // About 6 KB per record, so 400 records pass the 1 MB cap at least once.
+        for (int i = 0; i < 400; i++) {
+            cache.put(MODEL, "text " + i, vector(i));
+        }
+        awaitDiskIdle(cache);
+        cache.close();
+
+        long size = Files.size(dir.resolve(MODEL + ".log"));
+        assertTrue(size <= 1024 * 1024, "log size " + size);
+
+        cache = open(1);
+        assertNotNull(cache.get(MODEL, "text 399"));
+        assertNull(cache.get(MODEL, "text 0"));
+    }
+
+    private EmbeddingCache open(long maxMb) {
+        EmbeddingCache opened = new EmbeddingCache();
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "maxEntries", 1);
+        ReflectionTestUtils.setField(opened, "diskEnabled", true);
+        ReflectionTestUtils.setField(opened, "diskMaxMb", maxMb);
+        ReflectionTestUtils.setField(opened, "cacheDir", dir.toString());
+        return opened;
+    }
+
+    private static void awaitDiskEntries(EmbeddingCache cache, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (diskEntries(cache) < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(diskEntries(cache) >= expected, "disk entries " + diskEntries(cache));
+    }
+
+    /**
+     * Appends run in the background; waits until the log stops changing.
+     */
+    private static void awaitDiskIdle(EmbeddingCache cache) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        Object last = null;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+            Object bytes = cache.getStats().get("diskBytes");
+            if (bytes.equals(last)) {
+                return;
+            }
+            last = bytes;
+        }
+    }
+
+    private static long diskEntries(EmbeddingCache cache) {
+        Map<String, Object> stats = cache.getStats();
+        return (Long) stats.get("diskEntries");
+    }
+
+    private static float[] vector(int seed) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = seed + i / (float) DIMENSION;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.QueryIntent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalIntentModelTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void decisionsAreReplayedWithoutQuestionText() throws Exception {
+        Path decisions = dir.resolve("decisions.jsonl");
+        LocalIntentModel model = open(decisions, 1024);
+        for (int i = 0; i < 30; i++) {
+            model.learn("will the motor " + i + " be quieter next year", QueryIntent.FUTURISTIC);
+            model.learn("what is the width of shade " + i, QueryIntent.FACT);
+        }
+        drain(model);
+
+        String log = Files.readString(decisions);
+        assertFalse(log.contains("motor"), "decision log holds question text");
+        assertEquals(60, log.lines().count());
+
+        LocalIntentModel restarted = open(decisions, 1024);
+        assertEquals(60, restarted.getStats().get("examples"));
+        assertEquals(QueryIntent.FACT,
+                ReflectionTestUtils.getField(restarted.predict("what is the width of shade 7"), "intent"));
+    }
+
+    @Test
+    void decisionsFileIsRotated() throws Exception {
+        Path decisions = dir.resolve("decisions.jsonl");
+        LocalIntentModel model = open(decisions, 1);
+        for (int i = 0; i < 200; i++) {
+            model.learn("what is the width of shade " + i, QueryIntent.FACT);
+        }
+        drain(model);
+
+        assertTrue(Files.exists(dir.resolve("decisions.jsonl.1")));
+        assertTrue(Files.size(dir.resolve("decisions.jsonl.1")) <= 2048);
+        assertTrue(!Files.exists(decisions) || Files.size(decisions) <= 1024);
+    }
+
+    private LocalIntentModel open(Path decisions, long maxKb) {
+        LocalIntentModel model = new LocalIntentModel();
+        ReflectionTestUtils.setField(model, "resourceLoader", new DefaultResourceLoader());
+        ReflectionTestUtils.setField(model, "enabled", true);
+        ReflectionTestUtils.setField(model, "trainingFile", "");
+        ReflectionTestUtils.setField(model, "decisionsFile", decisions.toString());
+        ReflectionTestUtils.setField(model, "decisionsMaxKb", maxKb);
+        ReflectionTestUtils.setField(model, "confidenceThreshold", 0.9);
+        ReflectionTestUtils.setField(model, "minExamples", 20);
+        model.initialize();
+        return model;
+    }
+
+    private static void drain(LocalIntentModel model) throws InterruptedException {
+        ThreadPoolExecutor writer = (ThreadPoolExecutor) ReflectionTestUtils.getField(model, "decisionWriter");
+        writer.shutdown();
+        assertTrue(writer.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
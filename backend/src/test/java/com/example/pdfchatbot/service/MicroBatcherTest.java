@@ -0,0 +1,59 @@
+package com.example.pdfchatbot.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MicroBatcherTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    void itemsWithinTheWindowShareOneCall() {
+        List<List<String>> calls = new ArrayList<>();
+        MicroBatcher<String, String> batcher = new MicroBatcher<>("test", 50, 100, items -> {
+            calls.add(List.copyOf(items));
+            return Mono.just(items.stream().map(item -> item.toUpperCase(Locale.ROOT)).toList());
+        });
+
+        List<String> results = Mono.zip(batcher.submit("a"), batcher.submit("b"), batcher.submit("c"))
+                .map(t -> List.of(t.getT1(), t.getT2(), t.getT3()))
+                .block(TIMEOUT);
+
+        assertEquals(List.of("A", "B", "C"), results);
+        assertEquals(List.of(List.of("a", "b", "c")), calls);
+        assertEquals(1L, batcher.getStats().get("batches"));
+    }
+
+    @Test
+    void fullBatchIsSentWithoutWaitingForTheWindow() {
+        AtomicInteger calls = new AtomicInteger();
+        MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", 60_000, 2, items -> {
+            calls.incrementAndGet();
+            return Mono.just(items.stream().map(item -> item * 10).toList());
+        });
+
+        assertEquals(List.of(10, 20), Mono.zip(batcher.submit(1), batcher.submit(2))
+                .map(t -> List.of(t.getT1(), t.getT2()))
+                .block(TIMEOUT));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void wrongResultCountFailsEveryItem() {
+        MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", 60_000, 2,
+                items -> Mono.just(List.of(1)));
+
+        Mono<Integer> first = batcher.submit(1).cache();
+        first.subscribe(value -> { }, error -> { });
+        assertThrows(IllegalStateException.class, () -> batcher.submit(2).block(TIMEOUT));
+        assertThrows(IllegalStateException.class, () -> first.block(TIMEOUT));
+    }
+}
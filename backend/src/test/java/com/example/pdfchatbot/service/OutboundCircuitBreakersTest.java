@@ -0,0 +1,106 @@
+package com.example.pdfchatbot.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OutboundCircuitBreakersTest {
+    private static final String DESTINATION = OutboundConcurrencyLimiter.PDF_VECTOR;
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private OutboundCircuitBreakers breakers;
+
+    @BeforeEach
+    void setUp() {
+        breakers = new OutboundCircuitBreakers();
+        ReflectionTestUtils.setField(breakers, "environment", new MockEnvironment()
+                .withProperty("outbound.circuit.minimumCalls", "4")
+                .withProperty("outbound.circuit.failureRateThreshold", "0.5")
+                .withProperty("outbound.circuit.slowCallMs", "200")
+                .withProperty("outbound.circuit.openMs", "100")
+                .withProperty("outbound.circuit.halfOpenProbes", "1"));
+    }
+
+    @Test
+    void opensOnFailureRateAndRejects() {
+        open();
+        assertEquals(OutboundCircuitBreakers.State.OPEN, breakers.state(DESTINATION));
+        assertNull(breakers.tryAcquire(DESTINATION));
+        assertFalse(breakers.isCallPermitted(DESTINATION));
+    }
+
+    @Test
+    void fastCancellationsDoNotCount() {
+        for (int i = 0; i < 10; i++) {
+            breakers.onCancel(acquire(), FAST);
+        }
+        assertEquals(OutboundCircuitBreakers.State.CLOSED, breakers.state(DESTINATION));
+    }
+
+    @Test
+    void slowCancellationsCountAsFailures() {
+        for (int i = 0; i < 4; i++) {
+            breakers.onCancel(acquire(), SLOW);
+        }
+        assertEquals(OutboundCircuitBreakers.State.OPEN, breakers.state(DESTINATION));
+    }
+
+    @Test
+    void halfOpenProbeClosesOnSuccessAndCancelFreesTheProbe() throws InterruptedException {
+        open();
+        Thread.sleep(150);
+
+        OutboundCircuitBreakers.Permit probe = acquire();
+        assertEquals(OutboundCircuitBreakers.State.HALF_OPEN, breakers.state(DESTINATION));
+        assertNull(breakers.tryAcquire(DESTINATION));
+        breakers.onCancel(probe, FAST);
+
+        breakers.onSuccess(acquire(), FAST);
+        assertEquals(OutboundCircuitBreakers.State.CLOSED, breakers.state(DESTINATION));
+    }
+
+    @Test
+    void callsAdmittedBeforeHalfOpenDoNotActAsProbes() throws InterruptedException {
+        List<OutboundCircuitBreakers.Permit> leftovers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            leftovers.add(acquire());
+        }
+        open();
+        Thread.sleep(150);
+
+        OutboundCircuitBreakers.Permit probe = acquire();
+        // Calls from the closed period finishing now neither close the breaker nor free the probe slot.
+        breakers.onSuccess(leftovers.get(0), FAST);
+        breakers.onCancel(leftovers.get(1), FAST);
+        assertEquals(OutboundCircuitBreakers.State.HALF_OPEN, breakers.state(DESTINATION));
+        assertNull(breakers.tryAcquire(DESTINATION));
+        breakers.onFailure(leftovers.get(2), FAST);
+        assertEquals(OutboundCircuitBreakers.State.HALF_OPEN, breakers.state(DESTINATION));
+
+        breakers.onSuccess(probe, FAST);
+        assertEquals(OutboundCircuitBreakers.State.CLOSED, breakers.state(DESTINATION));
+    }
+
+    private OutboundCircuitBreakers.Permit acquire() {
+        OutboundCircuitBreakers.Permit permit = breakers.tryAcquire(DESTINATION);
+        assertNotNull(permit);
+        return permit;
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breakers.onFailure(acquire(), FAST);
+        }
+    }
+}
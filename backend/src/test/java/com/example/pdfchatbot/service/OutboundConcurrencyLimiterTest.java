@@ -0,0 +1,49 @@
+package com.example.pdfchatbot.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OutboundConcurrencyLimiterTest {
+    private OutboundConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new OutboundConcurrencyLimiter();
+        ReflectionTestUtils.setField(limiter, "environment",
+                new MockEnvironment().withProperty("outbound.llm.maxConcurrent", "1"));
+    }
+
+    @Test
+    void tryCallSkipsWhenNoPermitIsFree() {
+        Sinks.One<String> slow = Sinks.one();
+        limiter.tryCallReactive(OutboundConcurrencyLimiter.LLM, slow::asMono).subscribe();
+
+        AtomicBoolean called = new AtomicBoolean();
+        String result = limiter.tryCallReactive(OutboundConcurrencyLimiter.LLM, () -> {
+            called.set(true);
+            return Mono.just("second");
+        }).block();
+        assertNull(result);
+        assertFalse(called.get());
+
+        slow.tryEmitValue("first");
+        assertEquals("second", limiter.tryCallReactive(OutboundConcurrencyLimiter.LLM, () -> Mono.just("second")).block());
+    }
+
+    @Test
+    void cancelledCallReleasesItsPermit() {
+        limiter.tryCallReactive(OutboundConcurrencyLimiter.LLM, Mono::<String>never).subscribe().dispose();
+        assertEquals("ok", limiter.call(OutboundConcurrencyLimiter.LLM, () -> "ok"));
+        assertEquals("ok", limiter.tryCallReactive(OutboundConcurrencyLimiter.LLM, () -> Mono.just("ok")).block());
+    }
+}
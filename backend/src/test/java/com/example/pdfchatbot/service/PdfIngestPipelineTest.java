@@ -0,0 +1,173 @@
+package com.example.pdfchatbot.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfIngestPipelineTest {
+
+    @TempDir
+    Path dir;
+
+    private PdfService pdfService;
+    private PdfIngestPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        pdfService = new PdfService();
+        ReflectionTestUtils.setField(pdfService, "extractThreads", 2);
+        ReflectionTestUtils.setField(pdfService, "maxInFlightMb", 1);
+        ReflectionTestUtils.setField(pdfService, "tempFileThresholdMb", 16);
+
+        pipeline = new PdfIngestPipeline();
+        ReflectionTestUtils.setField(pipeline, "pdfService", pdfService);
+        ReflectionTestUtils.setField(pipeline, "textChunkService", new TextChunkService());
+        ReflectionTestUtils.setField(pipeline, "pagesPerBatch", 1);
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 1);
+        ReflectionTestUtils.setField(pipeline, "batchSize", 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pdfService.shutdown();
+    }
+
+    /**
+     * Each file needs more than half the byte budget and produces more chunks than its queue
+     * holds, so a later document taking budget before an earlier one used to hang the run.
+     * The budget is held back at the start of each run so every waiting extraction races for
+     * it at once.
+     */
+    @Test
+    void budgetIsGrantedInDocumentOrder() throws IOException {
+        List<File> files = List.of(pdf("a", 600), pdf("b", 600), pdf("c", 600));
+        ReflectionTestUtils.invokeMethod(pdfService, "extractPool");
+        Semaphore budget = (Semaphore) ReflectionTestUtils.getField(pdfService, "inFlightBudget");
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            for (int run = 0; run < 30; run++) {
+                int held = budget.drainPermits();
+                List<Integer> order = new CopyOnWriteArrayList<>();
+                CompletableFuture<PdfIngestPipeline.Result> result = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return pipeline.run(files, null, batch -> {
+                            for (int i = 0; i < batch.getChunks().size(); i++) {
+                                order.add(batch.getDocument(i));
+                            }
+                        });
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                Thread.sleep(50);
+                budget.release(held);
+
+                assertEquals(0, result.get().failedCount());
+                assertFalse(order.isEmpty());
+                for (int i = 1; i < order.size(); i++) {
+                    assertFalse(order.get(i) < order.get(i - 1), "batches out of document order");
+                }
+            }
+        });
+    }
+
+    @Test
+    void documentFailingPartWayReachesNoSink() throws IOException {
+        List<File> files = List.of(pdf("a", 10), pdf("broken", 10), pdf("c", 10));
+        PdfService failing = new PdfService() {
+            @Override
+            public void extractPages(File pdfFile, int pagesPerBatch, PageConsumer onPages)
+                    throws IOException, InterruptedException {
+                if (!pdfFile.getName().equals("broken.pdf")) {
+                    super.extractPages(pdfFile, pagesPerBatch, onPages);
+                    return;
+                }
+                onPages.accept("First page of the broken document. It has a couple of sentences.");
+                throw new IOException("damaged xref on page 2");
+            }
+        };
+        ReflectionTestUtils.setField(failing, "extractThreads", 2);
+        ReflectionTestUtils.setField(failing, "maxInFlightMb", 1);
+        ReflectionTestUtils.setField(failing, "tempFileThresholdMb", 16);
+        ReflectionTestUtils.setField(pipeline, "pdfService", failing);
+        List<String> embedded = new CopyOnWriteArrayList<>();
+        List<Integer> appended = new CopyOnWriteArrayList<>();
+        try {
+            PdfIngestPipeline.Result result = pipeline.run(files, chunks -> {
+                embedded.addAll(chunks);
+                return chunks.stream().map(chunk -> new float[]{1f}).toList();
+            }, batch -> {
+                for (int i = 0; i < batch.getChunks().size(); i++) {
+                    appended.add(batch.getDocument(i));
+                }
+            });
+
+            assertTrue(result.isFailed(1));
+            assertEquals(0, result.getChunkCount(1));
+            assertEquals(result.totalChunks(), appended.size());
+            assertFalse(appended.contains(1));
+            assertTrue(appended.contains(0) && appended.contains(2));
+            assertTrue(embedded.stream().noneMatch(chunk -> chunk.contains("broken document")));
+        } finally {
+            failing.shutdown();
+        }
+    }
+
+    /**
+     * A three-page PDF padded with trailing comment lines to about {@code sizeKb}.
+     */
+    private File pdf(String name, int sizeKb) throws IOException {
+        Path path = dir.resolve(name + ".pdf");
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int page = 0; page < 3; page++) {
+                PDPage pdPage = new PDPage();
+                document.addPage(pdPage);
+                try (PDPageContentStream content = new PDPageContentStream(document, pdPage)) {
+                    content.beginText();
+                    content.setFont(font, 10);
+                    content.newLineAtOffset(40, 750);
+                    for (int line = 0; line < 40; line++) {
+                        content.showText("Document " + name + " page " + page + " line " + line
+                                + " has some words to chunk.");
+                        content.newLineAtOffset(0, -14);
+                    }
+                    content.endText();
+                }
+            }
+            document.save(path.toFile());
+        }
+        StringBuilder padding = new StringBuilder();
+        String line = "%" + "x".repeat(1022) + "\n";
+        while (Files.size(path) + padding.length() < sizeKb * 1024L) {
+            padding.append(line);
+        }
+        Files.write(path, padding.toString().getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+        return path.toFile();
+    }
+}
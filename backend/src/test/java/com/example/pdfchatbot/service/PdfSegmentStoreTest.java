@@ -0,0 +1,98 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.model.SegmentManifest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfSegmentStoreTest {
+    private static final int DIMENSION = 16;
+
+    @TempDir
+    Path dir;
+
+    private PdfSegmentStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new PdfSegmentStore();
+        ReflectionTestUtils.setField(store, "indexDir", dir.toString());
+    }
+
+    @Test
+    void committedSegmentRoundTrips() throws IOException {
+        List<String> chunks = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        HnswIndex index = new HnswIndex(DIMENSION, 8, 50, 100);
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i++) {
+            chunks.add("chunk " + i + " é中");
+            float[] vector = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = random.nextFloat() - 0.5f;
+            }
+            vector = HnswIndex.normalize(vector);
+            vectors.add(vector);
+            index.add(vector);
+        }
+
+        store.write(new SegmentManifest(), chunks, vectors, index);
+        PdfSegment segment = store.openCurrent().orElseThrow();
+
+        assertEquals(100, segment.chunkCount());
+        assertEquals(chunks, new ArrayList<>(segment.chunks()));
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(vectors.get(i), segment.vector(i));
+        }
+        HnswIndex loaded = segment.loadIndex();
+        assertEquals(42, loaded.search(vectors.get(42), 1, 32).get(0).getId());
+    }
+
+    @Test
+    void newSegmentReplacesOldAndStagingIsRemoved() throws IOException {
+        HnswIndex first = new HnswIndex(DIMENSION, 8, 50, 1);
+        first.add(HnswIndex.normalize(unit(0)));
+        store.write(new SegmentManifest(), List.of("old"), List.of(HnswIndex.normalize(unit(0))), first);
+
+        HnswIndex second = new HnswIndex(DIMENSION, 8, 50, 1);
+        second.add(HnswIndex.normalize(unit(1)));
+        store.write(new SegmentManifest(), List.of("new"), List.of(HnswIndex.normalize(unit(1))), second);
+
+        assertEquals(List.of("new"), new ArrayList<>(store.openCurrent().orElseThrow().chunks()));
+        try (var entries = Files.list(dir)) {
+            List<String> names = entries.map(p -> p.getFileName().toString()).toList();
+            assertEquals(1, names.stream().filter(n -> n.startsWith("segment-")).count());
+            assertFalse(names.stream().anyMatch(n -> n.endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    void uncommittedWriterLeavesNothingBehind() throws IOException {
+        try (PdfSegmentStore.SegmentWriter writer = store.openWriter()) {
+            writer.append("never committed", unit(0));
+        }
+        assertTrue(store.openCurrent().isEmpty());
+        try (var entries = Files.list(dir)) {
+            assertEquals(0, entries.count());
+        }
+    }
+
+    private static float[] unit(int axis) {
+        float[] vector = new float[DIMENSION];
+        vector[axis] = 1f;
+        return vector;
+    }
+}
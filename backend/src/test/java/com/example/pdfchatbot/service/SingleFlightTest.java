@@ -0,0 +1,110 @@
+package com.example.pdfchatbot.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> callers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                callers.add(pool.submit(() -> flights.call("key", () -> {
+                    executions.incrementAndGet();
+                    await(release);
+                    return 42;
+                })));
+            }
+            waitForShared(flights, 3);
+            release.countDown();
+            for (Future<Integer> caller : callers) {
+                assertEquals(42, caller.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, executions.get());
+        assertEquals(0, flights.getStats().get("inFlight"));
+    }
+
+    @Test
+    void failureReachesEveryCallerAndIsNotRemembered() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Integer>> callers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                callers.add(pool.submit(() -> flights.call("key", () -> {
+                    await(release);
+                    throw new IllegalStateException("down");
+                })));
+            }
+            waitForShared(flights, 1);
+            release.countDown();
+            for (Future<Integer> caller : callers) {
+                ExecutionException failure = assertThrows(ExecutionException.class,
+                        () -> caller.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalStateException.class, failure.getCause());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(7, flights.call("key", () -> 7));
+    }
+
+    @Test
+    void reactiveCallersShareWorkAndCancellingOneKeepsItForOthers() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger subscriptions = new AtomicInteger();
+        Sinks.One<String> response = Sinks.one();
+        Mono<String> work = response.asMono().doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+        Disposable abandoned = flights.run("key", () -> work).subscribe();
+        CompletableFuture<String> second = flights.run("key", () -> work).toFuture();
+        abandoned.dispose();
+        response.tryEmitValue("answer");
+
+        assertEquals("answer", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, subscriptions.get());
+    }
+
+    private static void waitForShared(SingleFlight<?, ?> flights, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((long) flights.getStats().get("shared") < expected) {
+            assertTrue(System.nanoTime() < deadline, "callers did not join the flight");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.pdfchatbot.service;
+
+import com.example.pdfchatbot.benchmark.LegacyTextChunker;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class TextChunkServiceTest {
+    private final TextChunkService service = new TextChunkService();
+
+    @Test
+    void matchesRegexChunkerOnPdfShapedText() {
+        for (long seed = 0; seed < 20; seed++) {
+            String document = sampleDocument(16 * 1024, seed);
+            List<String> expected = LegacyTextChunker.chunkText(document);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, service.chunkText(document), "seed " + seed);
+        }
+    }
+
+    @Test
+    void matchesRegexChunkerOnWhitespaceAndPunctuationNoise() {
+        // Dense runs of mixed whitespace, CR/CRLF endings and sentence marks hit the
+        // paragraph-break and sentence-split edge cases far more often than prose does.
+        String alphabet = "ab  \n\n\r\t\f\u000B..!?";
+        Random random = new Random(11);
+        for (int run = 0; run < 500; run++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(1500);
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String document = text.toString();
+            assertEquals(LegacyTextChunker.chunkText(document), service.chunkText(document), "run " + run);
+        }
+    }
+
+    @Test
+    void streamedPiecesMatchWholeDocument() {
+        Random random = new Random(5);
+        for (long seed = 0; seed < 10; seed++) {
+            String document = sampleDocument(8 * 1024, seed);
+            List<String> streamed = new ArrayList<>();
+            TextChunkService.Chunker chunker = service.newChunker(streamed::add);
+            int at = 0;
+            while (at < document.length()) {
+                int end = Math.min(document.length(), at + 1 + random.nextInt(300));
+                chunker.accept(document.substring(at, end));
+                at = end;
+            }
+            chunker.finish();
+            assertEquals(service.chunkText(document), streamed, "seed " + seed);
+        }
+    }
+
+    /**
+     * Text shaped like PDFBox output, as in {@code TextChunkBenchmark}: wrapped lines, blank
+     * lines between paragraphs, CRLF endings, double spaces and some long paragraphs.
+     */
+    private static String sampleDocument(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(length + 1024);
+        while (text.length() < length) {
+            int sentences = random.nextInt(10) < 2 ? 20 + random.nextInt(20) : 1 + random.nextInt(6);
+            String newline = random.nextInt(10) == 0 ? "\r\n" : "\n";
+            int column = 0;
+            for (int s = 0; s < sentences; s++) {
+                int words = 4 + random.nextInt(18);
+                for (int w = 0; w < words; w++) {
+                    int wordLength = 1 + random.nextInt(10);
+                    for (int c = 0; c < wordLength; c++) {
+                        char letter = (char) ('a' + random.nextInt(26));
+                        text.append(w == 0 && c == 0 ? Character.toUpperCase(letter) : letter);
+                    }
+                    column += wordLength + 1;
+                    if (w == words - 1) {
+                        text.append(".!?".charAt(random.nextInt(10) < 8 ? 0 : 1 + random.nextInt(2)));
+                    }
+                    if (column > 80) {
+                        text.append(newline);
+                        column = 0;
+                    } else {
+                        text.append(random.nextInt(20) == 0 ? "  " : " ");
+                    }
+                }
+            }
+            text.append(newline).append(random.nextInt(4) == 0 ? " \t" : "").append(newline);
+        }
+        return text.toString();
+    }
+}
@@ -114,7 +114,7 @@ PY
 if [ "$SERVICE_READY" = "ready" ]; then
     echo "✓ PDF vector service already running on port ${PDF_VECTOR_PORT}"
 else
-    "${PY_BIN}/uvicorn" catalog_pipeline.pdf_vector_service:app --app-dir "${APP_ROOT}" --host 0.0.0.0 --port ${PDF_VECTOR_PORT} --access-log false &
+    "${PY_BIN}/uvicorn" catalog_pipeline.pdf_vector_service:app --app-dir "${APP_ROOT}" --host 0.0.0.0 --port ${PDF_VECTOR_PORT} --timeout-keep-alive 75 --access-log false &
     PDF_VECTOR_PID=$!
     echo "✓ PDF vector service started on port ${PDF_VECTOR_PORT} (pid ${PDF_VECTOR_PID})"
 
@@ -178,7 +178,7 @@ PY
                 kill ${EXISTING_PID} 2>/dev/null || true
             fi
         fi
-        "${PY_BIN}/uvicorn" catalog_pipeline.vector_service:app --app-dir "${APP_ROOT}" --host 0.0.0.0 --port ${CATALOG_VECTOR_PORT} --access-log false &
+        "${PY_BIN}/uvicorn" catalog_pipeline.vector_service:app --app-dir "${APP_ROOT}" --host 0.0.0.0 --port ${CATALOG_VECTOR_PORT} --timeout-keep-alive 75 --access-log false &
         CATALOG_VECTOR_PID=$!
         echo "✓ Catalog vector service started on port ${CATALOG_VECTOR_PORT} (pid ${CATALOG_VECTOR_PID})"
 
@@ -1,5 +1,6 @@
 import os
-from typing import List, Optional
+import threading
+from typing import Dict, List, Optional
 
 import faiss
 import numpy as np
@@ -12,11 +13,24 @@ class IndexRequest(BaseModel):
     chunks: List[str]
     model: str = "text-embedding-3-small"
     batch_size: int = 128
+    stage: bool = False
+    append: bool = False
+    generation: Optional[int] = None
+
+
+class CommitRequest(BaseModel):
+    generation: Optional[int] = None
 
 
 class QueryRequest(BaseModel):
     query: str
     top_k: int = 5
+    generation: Optional[int] = None
+
+
+# Committed generations kept queryable: the live one and the one before it, which the
+# backend keeps querying until it has published the new generation on its side.
+RETAINED_GENERATIONS = 2
 
 
 class PdfVectorService:
@@ -24,6 +38,13 @@ class PdfVectorService:
         self.index = None
         self.chunks: List[str] = []
         self.embedding_model = "text-embedding-3-small"
+        # Staging index built by a streaming reload; swapped in whole by commit()
+        self.staging = None
+        self.staging_chunks: List[str] = []
+        self.staging_model = self.embedding_model
+        self.staging_generation: Optional[int] = None
+        self.generations: Dict[int, tuple] = {}
+        self.swap_lock = threading.Lock()
 
     def _api_key(self) -> str:
         return (
@@ -73,19 +94,56 @@ class PdfVectorService:
         self.chunks = chunks
         self.embedding_model = model
 
-    def query(self, query: str, top_k: int) -> (List[str], List[float]):
-        if self.index is None or not self.chunks:
+    def stage_chunks(self, chunks: List[str], model: str, batch_size: int, append: bool,
+                     generation: Optional[int] = None) -> None:
+        if not append:
+            self.staging = None
+            self.staging_chunks = []
+            self.staging_generation = generation
+        if not chunks:
+            return
+        matrix = self._embed_texts(chunks, model, batch_size)
+        if matrix.size == 0:
+            raise RuntimeError("Embedding returned empty vectors")
+        if self.staging is None:
+            self.staging = faiss.IndexFlatIP(matrix.shape[1])
+        self.staging.add(matrix)
+        self.staging_chunks.extend(chunks)
+        self.staging_model = model
+
+    def commit(self, generation: Optional[int] = None) -> None:
+        if self.staging is None:
+            raise RuntimeError("Nothing staged")
+        if generation is not None and generation != self.staging_generation:
+            raise RuntimeError(f"Staged generation is {self.staging_generation}, not {generation}")
+        # Swapped under the lock so a query sees either the old index or the new one
+        with self.swap_lock:
+            self.index, self.chunks, self.embedding_model = self.staging, self.staging_chunks, self.staging_model
+            if generation is not None:
+                self.generations[generation] = (self.index, self.chunks, self.embedding_model)
+                for old in sorted(self.generations)[:-RETAINED_GENERATIONS]:
+                    del self.generations[old]
+        self.staging = None
+        self.staging_chunks = []
+        self.staging_generation = None
+
+    def query(self, query: str, top_k: int, generation: Optional[int] = None) -> (List[str], List[float]):
+        with self.swap_lock:
+            # Unknown generations (e.g. after a sidecar restart) fall back to the live index
+            index, chunks, model = self.generations.get(
+                generation, (self.index, self.chunks, self.embedding_model))
+        if index is None or not chunks:
             return [], []
-        vec = self._embed_texts([query], self.embedding_model, 1)
+        vec = self._embed_texts([query], model, 1)
         if vec.size == 0:
             return [], []
-        scores, indices = self.index.search(vec, top_k)
+        scores, indices = index.search(vec, top_k)
         documents = []
         score_list = []
         for score, idx in zip(scores[0], indices[0]):
-            if idx < 0 or idx >= len(self.chunks):
+            if idx < 0 or idx >= len(chunks):
                 continue
-            documents.append(self.chunks[idx])
+            documents.append(chunks[idx])
             score_list.append(float(score))
         return documents, score_list
 
@@ -107,16 +165,28 @@ def status():
 @app.post("/index")
 def index(req: IndexRequest):
     try:
+        if req.stage:
+            SERVICE.stage_chunks(req.chunks, req.model, req.batch_size, req.append, req.generation)
+            return {"status": "ok", "staged": len(SERVICE.staging_chunks)}
         SERVICE.index_chunks(req.chunks, req.model, req.batch_size)
         return {"status": "ok", "chunks": len(SERVICE.chunks)}
     except Exception as exc:
         raise HTTPException(status_code=500, detail=str(exc))
 
 
+@app.post("/commit")
+def commit(req: Optional[CommitRequest] = None):
+    try:
+        SERVICE.commit(req.generation if req else None)
+        return {"status": "ok", "chunks": len(SERVICE.chunks)}
+    except Exception as exc:
+        raise HTTPException(status_code=500, detail=str(exc))
+
+
 @app.post("/query")
 def query(req: QueryRequest):
     try:
-        documents, scores = SERVICE.query(req.query, req.top_k)
+        documents, scores = SERVICE.query(req.query, req.top_k, req.generation)
         return {"documents": documents, "scores": scores}
     except Exception as exc:
         raise HTTPException(status_code=500, detail=str(exc))
@@ -76,27 +76,64 @@ export default function Home() {
     setInput('');
     setLoading(true);
 
+    // Placeholder assistant message that is filled in as tokens stream back
+    setMessages(prev => [...prev, { role: 'assistant', content: '' }]);
+    const updateAssistant = (update: (msg: Message) => Message) => {
+      setMessages(prev => {
+        const next = [...prev];
+        next[next.length - 1] = update(next[next.length - 1]);
+        return next;
+      });
+    };
+
     try {
       // Use relative URL since we're served from the same server
-      const res = await fetch('/api/chat', {
+      const res = await fetch('/api/chat/stream', {
         method: 'POST',
-        headers: { 'Content-Type': 'application/json' },
+        headers: { 'Content-Type': 'application/json', Accept: 'text/event-stream' },
         body: JSON.stringify({ question: userMessage.content })
       });
       
-      if (!res.ok) {
+      if (!res.ok || !res.body) {
         throw new Error('Failed to get response');
       }
-      
-      const data = await res.json();
-      const assistantMessage: Message = { role: 'assistant', content: data.answer, images: data.images };
-      setMessages(prev => [...prev, assistantMessage]);
+
+      const reader = res.body.getReader();
+      const decoder = new TextDecoder();
+      let buffer = '';
+      while (true) {
+        const { done, value } = await reader.read();
+        if (done) break;
+        buffer += decoder.decode(value, { stream: true });
+
+        // SSE events are separated by a blank line
+        let boundary = buffer.indexOf('\n\n');
+        while (boundary !== -1) {
+          const rawEvent = buffer.slice(0, boundary);
+          buffer = buffer.slice(boundary + 2);
+          boundary = buffer.indexOf('\n\n');
+
+          let eventName = 'message';
+          let data = '';
+          for (const line of rawEvent.split('\n')) {
+            if (line.startsWith('event:')) eventName = line.slice(6).trim();
+            else if (line.startsWith('data:')) data += line.slice(5);
+          }
+          if (!data) continue;
+          const payload = JSON.parse(data);
+
+          if (eventName === 'token') {
+            updateAssistant(msg => ({ ...msg, content: msg.content + payload.text }));
+          } else if (eventName === 'done' || eventName === 'error') {
+            updateAssistant(msg => ({ ...msg, content: payload.answer, images: payload.images }));
+          }
+        }
+      }
     } catch (error) {
-      const errorMessage: Message = { 
+      updateAssistant(() => ({
         role: 'assistant', 
         content: 'Sorry, I encountered an error. Please make sure the backend is running and PDFs are indexed.' 
-      };
-      setMessages(prev => [...prev, errorMessage]);
+      }));
     } finally {
       setLoading(false);
     }
@@ -116,12 +153,23 @@ export default function Home() {
         method: 'POST',
         headers: { 'Content-Type': 'application/json' }
       });
-      if (res.ok) {
-        const data = await res.json();
-        alert(`PDFs reindexed successfully! Indexed ${data.chunks || 0} text chunks.`);
-      } else {
-        const data = await res.json();
-        alert(`Failed to reindex PDFs: ${data.status || 'Unknown error'}`);
+      if (!res.ok) {
+        alert('Failed to start reindexing PDFs.');
+        return;
+      }
+      const { statusUrl } = await res.json();
+      // Reindexing runs in the background; poll the job until it finishes
+      while (true) {
+        await new Promise((resolve) => setTimeout(resolve, 1000));
+        const job = await (await fetch(statusUrl)).json();
+        if (job.status === 'SUCCEEDED') {
+          alert(`PDFs reindexed successfully! Indexed ${job.chunksIndexed || 0} text chunks.`);
+          return;
+        }
+        if (job.status === 'FAILED') {
+          alert(`Failed to reindex PDFs: ${job.error || 'Unknown error'}`);
+          return;
+        }
       }
     } catch (error) {
       alert('Failed to reindex PDFs. Make sure the backend is running on port 8080.');
@@ -210,7 +258,7 @@ export default function Home() {
           </div>
         )}
         
-        {messages.map((msg, idx) => (
+        {messages.map((msg, idx) => msg.role === 'assistant' && !msg.content ? null : (
           <div
             key={idx}
             style={{
@@ -238,7 +286,7 @@ export default function Home() {
           </div>
         ))}
         
-        {loading && (
+        {loading && !messages[messages.length - 1]?.content && (
           <div style={{ ...styles.message, ...styles.assistantMessage }}>
             <div style={styles.messageContent}>
               <strong>Assistant:</strong>
@@ -21,6 +21,7 @@ python3 -m uvicorn catalog_pipeline.pdf_vector_service:app \
   --app-dir "${APP_ROOT}" \
   --host 0.0.0.0 \
   --port "${PDF_VECTOR_PORT}" \
+  --timeout-keep-alive 75 \
   --access-log false &
 PDF_VECTOR_PID=$!
 
@@ -68,6 +69,7 @@ if [ "${CATALOG_ENABLED}" = "true" ]; then
       --app-dir "${APP_ROOT}" \
       --host 0.0.0.0 \
       --port "${CATALOG_VECTOR_PORT}" \
+      --timeout-keep-alive 75 \
       --access-log false &
     echo $! > /tmp/catalog_vector.pid
   ) &